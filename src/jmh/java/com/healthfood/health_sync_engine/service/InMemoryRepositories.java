@@ -0,0 +1,74 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.repository.HealthMetricRollupRepository;
+import com.healthfood.health_sync_engine.repository.OutboxEventRepository;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repositories for the persistence benchmarks that keep nothing: reads find no stored
+ * rows and writes only report how many rows they were given, so every op measures the
+ * write path for new days. Each repository method is served by the method of the same
+ * signature below; Mockito stubs would cost several times the code under measurement.
+ */
+final class InMemoryRepositories {
+    private final Map<Method, Method> targets = new ConcurrentHashMap<>();
+
+    HealthMetricDailyRepository daily() {
+        return view(HealthMetricDailyRepository.class);
+    }
+
+    HealthMetricRollupRepository rollups() {
+        return view(HealthMetricRollupRepository.class);
+    }
+
+    OutboxEventRepository outbox() {
+        return view(OutboxEventRepository.class);
+    }
+
+    // HealthMetricDailyRepository and HealthMetricRollupRepository
+
+    Map<LocalDateTime, HealthMetricDaily> findStoredRows(String userId, UserHealthConnection.HealthProvider provider,
+                                                         LocalDateTime from, LocalDateTime to) {
+        return Map.of();
+    }
+
+    int upsertAll(List<?> rows) {
+        return rows.size();
+    }
+
+    void lock(String userId, UserHealthConnection.HealthProvider provider) {
+    }
+
+    List<HealthMetricRollup> findRange(String userId, UserHealthConnection.HealthProvider provider, LocalDate from, LocalDate to) {
+        return List.of();
+    }
+
+    // OutboxEventRepository
+
+    void enqueue(String topic, String key, String payload) {
+    }
+
+    private <T> T view(Class<T> repository) {
+        return repository.cast(Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository},
+                (proxy, method, args) -> targets.computeIfAbsent(method, this::target).invoke(this, args)));
+    }
+
+    private Method target(Method method) {
+        try {
+            return InMemoryRepositories.class.getDeclaredMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-sync persistence step (fingerprint and seal every row, one upsert call, and the
+ * weekly/monthly rollup adjustment) for a window of {@code days} rows, none of which are
+ * stored yet. The repositories are {@link InMemoryRepositories} that store nothing, so this
+ * measures the CPU side of the write path, not the database round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MetricPersistenceBenchmark {
+    private static final String USER_ID = "bench-user";
+
+    @Param({"1", "30"})
+    public int days;
+
+    private MetricPersistenceService metricPersistenceService;
+    private LocalDate firstDay;
+
+    @Setup
+    public void setUp() {
+        InMemoryRepositories repositories = new InMemoryRepositories();
+        HealthMetricDailyRepository repository = repositories.daily();
+        MetricPayloadCodec codec = new MetricPayloadCodec(new EncryptionUtil("benchmark-secret-key-that-is-32-chars!!"));
+        metricPersistenceService = new MetricPersistenceService(repository, codec, repositories.outbox(),
+                new MetricRollupService(repositories.rollups(), repository, codec), new SyncMetrics(new SimpleMeterRegistry()));
+        firstDay = LocalDate.of(2025, 9, 13);
+    }
+
+    /** Rows are rebuilt per op because persisting clears their plaintext fields. */
+    @Benchmark
+    public List<LocalDate> sealAndUpsert() {
+        List<HealthMetricDaily> metrics = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            HealthMetricDaily metric = new HealthMetricDaily();
+            metric.setUserId(USER_ID);
+            metric.setDate(firstDay.plusDays(i).atStartOfDay());
+            metric.setSourceProvider(UserHealthConnection.HealthProvider.GOOGLE_FIT);
+            metric.setSteps(String.valueOf(8000 + i));
+            metric.setCalories("2311.5");
+            metric.setDistance("6120.4");
+            metric.setActiveMinutes("42");
+            metric.setHeartRate("63.0");
+            metric.setBloodOxygen("97.0");
+            metrics.add(metric);
+        }
+        return metricPersistenceService.persist(USER_ID, UserHealthConnection.HealthProvider.GOOGLE_FIT, metrics);
+    }
+}
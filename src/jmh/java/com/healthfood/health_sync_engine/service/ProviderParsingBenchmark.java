@@ -0,0 +1,67 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.fitness.model.AggregateResponse;
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider response parsing on canned payloads: a 30-day Google Fit aggregate
+ * (one op = the whole window) and a single Fitbit daily summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProviderParsingBenchmark {
+    private static final String USER_ID = "bench-user";
+    private static final LocalDate DATE = LocalDate.of(2025, 10, 12);
+
+    private GoogleFitSyncService googleFitSyncService;
+    private FitbitSyncService fitbitSyncService;
+    private String aggregateJson;
+    private AggregateResponse aggregateResponse;
+    private String dailySummaryJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        ProviderRateLimiter rateLimiter = new ProviderRateLimiter(150, 150000, 15000, 3600, 360000, 36000, 0.5, 0.1);
+        SyncMetrics syncMetrics = new SyncMetrics(new SimpleMeterRegistry());
+        ProviderCircuitBreaker circuitBreaker = new ProviderCircuitBreaker(20, 10, 0.5, 30, 3, syncMetrics);
+        googleFitSyncService = new GoogleFitSyncService(null, rateLimiter, circuitBreaker, syncMetrics);
+        fitbitSyncService = new FitbitSyncService(rateLimiter, circuitBreaker, syncMetrics);
+
+        aggregateJson = Fixtures.load("google-fit-aggregate.json");
+        aggregateResponse = GsonFactory.getDefaultInstance().fromString(aggregateJson, AggregateResponse.class);
+        dailySummaryJson = Fixtures.load("fitbit-daily-summary.json");
+    }
+
+    /** Bucket loop only; the response is already deserialized. */
+    @Benchmark
+    public List<HealthMetricDaily> googleFitBuckets() {
+        return googleFitSyncService.parseBuckets(aggregateResponse, USER_ID);
+    }
+
+    /** Response deserialization plus the bucket loop, as done per sync. */
+    @Benchmark
+    public List<HealthMetricDaily> googleFitResponse() throws IOException {
+        AggregateResponse response = GsonFactory.getDefaultInstance().fromString(aggregateJson, AggregateResponse.class);
+        return googleFitSyncService.parseBuckets(response, USER_ID);
+    }
+
+    @Benchmark
+    public HealthMetricDaily fitbitDailySummary() throws IOException {
+        return fitbitSyncService.parseDailySummary(dailySummaryJson, DATE, USER_ID);
+    }
+}
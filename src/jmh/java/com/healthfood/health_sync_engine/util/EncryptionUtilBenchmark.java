@@ -0,0 +1,80 @@
+package com.healthfood.health_sync_engine.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation of the metric/token crypto path. The {@code baseline*}
+ * benchmarks reproduce the previous per-call implementation so both can be compared
+ * in one run (see gc.alloc.rate.norm for bytes per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncryptionUtilBenchmark {
+    private static final String SECRET = "benchmark-secret-key-that-is-32-chars!!";
+    private static final String METRIC_VALUE = "10432";
+
+    private EncryptionUtil encryptionUtil;
+    private byte[] baselineKey;
+    private String ciphertext;
+
+    @Setup
+    public void setUp() throws Exception {
+        encryptionUtil = new EncryptionUtil(SECRET);
+        baselineKey = MessageDigest.getInstance("SHA-256").digest(SECRET.getBytes(StandardCharsets.UTF_8));
+        ciphertext = encryptionUtil.encrypt(METRIC_VALUE);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptionUtil.encrypt(METRIC_VALUE);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptionUtil.decrypt(ciphertext);
+    }
+
+    @Benchmark
+    public String baselineEncrypt() throws Exception {
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(baselineKey, "AES"), new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(METRIC_VALUE.getBytes(StandardCharsets.UTF_8));
+        byte[] authTag = new byte[16];
+        byte[] encryptedData = new byte[encrypted.length - 16];
+        System.arraycopy(encrypted, encrypted.length - 16, authTag, 0, 16);
+        System.arraycopy(encrypted, 0, encryptedData, 0, encryptedData.length);
+        return HexFormat.of().formatHex(iv) + ":" + HexFormat.of().formatHex(authTag) + ":" + HexFormat.of().formatHex(encryptedData);
+    }
+
+    @Benchmark
+    public String baselineDecrypt() throws Exception {
+        String[] parts = ciphertext.split(":");
+        byte[] iv = HexFormat.of().parseHex(parts[0]);
+        byte[] authTag = HexFormat.of().parseHex(parts[1]);
+        byte[] encryptedData = HexFormat.of().parseHex(parts[2]);
+        byte[] combined = new byte[encryptedData.length + authTag.length];
+        System.arraycopy(encryptedData, 0, combined, 0, encryptedData.length);
+        System.arraycopy(authTag, 0, combined, encryptedData.length, authTag.length);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(baselineKey, "AES"), new GCMParameterSpec(128, iv));
+        return new String(cipher.doFinal(combined), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,327 @@
+package com.healthfood.health_sync_engine.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.HealthSyncEngineApplication;
+import com.healthfood.health_sync_engine.consumer.SyncLane;
+import com.healthfood.health_sync_engine.consumer.SyncRequest;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives simulated users through the real Kafka listener and persistence path:
+ * an embedded Kafka broker, an embedded PostgreSQL server (or {@code --jdbc-url} for a
+ * local one) and the {@link ProviderSimulator} in place of Google Fit and Fitbit.
+ * Seeds {@code --users} connections, publishes one initial sync request per user and
+ * waits until each has finished, then reports syncs/sec, the p50/p99 sync duration
+ * (from {@code health.sync.duration}) and the p50/p99 time from request to
+ * {@code health.data.ingested} event. With {@code --periodic-backlog=N}, N more users
+ * are queued on the periodic topic first, to show the interactive lane isn't held up
+ * behind them; the figures above then cover the interactive lane only.
+ * <p>
+ * Run with {@code gradle loadTest -PloadTestArgs="--users=5000 --latency-ms=120 --error-rate=0.02"};
+ * see {@link ProviderSimulator.Settings} for the fault options.
+ */
+public class LoadTestHarness {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final Set<String> UNFINISHED_OUTCOMES = Set.of("deferred", "coalesced", "retrying");
+    private static final String MEASURED_LANE = SyncLane.INTERACTIVE.tag();
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> args = parseArgs(argv);
+        int users = Integer.parseInt(args.getOrDefault("users", "2000"));
+        int periodicBacklog = Integer.parseInt(args.getOrDefault("periodic-backlog", "0"));
+        double fitbitShare = Double.parseDouble(args.getOrDefault("fitbit-share", "0.5"));
+        int partitions = Integer.parseInt(args.getOrDefault("partitions", "6"));
+        Duration timeout = Duration.ofSeconds(Long.parseLong(args.getOrDefault("timeout-seconds", "900")));
+
+        EmbeddedKafkaKraftBroker kafka = null;
+        EmbeddedPostgres postgres = null;
+        ConfigurableApplicationContext context = null;
+        try (ProviderSimulator simulator = ProviderSimulator.start(0, ProviderSimulator.Settings.from(args))) {
+            kafka = new EmbeddedKafkaKraftBroker(1, partitions, "health.sync.requested", "health.sync.periodic", "health.sync.failed", "health.data.ingested");
+            kafka.afterPropertiesSet();
+
+            String jdbcUrl = args.get("jdbc-url");
+            String jdbcUser = args.getOrDefault("jdbc-user", "postgres");
+            String jdbcPassword = args.getOrDefault("jdbc-password", "");
+            if (jdbcUrl == null) {
+                postgres = EmbeddedPostgres.builder().start();
+                jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+            }
+            jdbcUrl += (jdbcUrl.contains("?") ? "&" : "?") + "stringtype=unspecified&reWriteBatchedInserts=true";
+
+            List<String> properties = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--spring.datasource.url=" + jdbcUrl,
+                    "--spring.datasource.username=" + jdbcUser,
+                    "--spring.datasource.password=" + jdbcPassword,
+                    "--spring.jpa.show-sql=false",
+                    "--spring.kafka.bootstrap-servers=" + kafka.getBrokersAsString(),
+                    "--app.google-fit.root-url=" + simulator.googleRootUrl(),
+                    "--app.google-fit.token-url=" + simulator.googleTokenUrl(),
+                    "--app.fitbit.api-url=" + simulator.fitbitApiUrl(),
+                    "--google.client.id=loadtest",
+                    "--google.client.secret=loadtest",
+                    // Only the requests published below; the minute-slot scheduler would add its own
+                    "--app.health.sync.periodic.cron=-",
+                    "--logging.level.com.healthfood=WARN",
+                    "--logging.level.org.apache.kafka=WARN"));
+            // Anything else is passed to the application, e.g. --app.health.sync.worker.threads=16
+            args.forEach((key, value) -> {
+                if (key.contains(".")) properties.add("--" + key + "=" + value);
+            });
+            context = new SpringApplicationBuilder(HealthSyncEngineApplication.class).run(properties.toArray(new String[0]));
+
+            new LoadTestHarness(context).run(users, periodicBacklog, fitbitShare, timeout, simulator);
+        } finally {
+            if (context != null) context.close();
+            if (kafka != null) kafka.destroy();
+            if (postgres != null) postgres.close();
+        }
+    }
+
+    private final ConfigurableApplicationContext context;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Long> requestedAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> ingestedAfter = new ConcurrentHashMap<>();
+
+    @Value("${app.health.sync.topic}")
+    private String syncTopic;
+
+    @Value("${app.health.sync.periodic.topic}")
+    private String periodicTopic;
+
+    @Value("${app.health.ingested.topic}")
+    private String ingestedTopic;
+
+    private LoadTestHarness(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.meterRegistry = context.getBean(MeterRegistry.class);
+        context.getAutowireCapableBeanFactory().autowireBean(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(int users, int periodicBacklog, double fitbitShare, Duration timeout, ProviderSimulator simulator) throws Exception {
+        List<SyncRequest> requests = seedConnections("user", users, fitbitShare, true);
+        List<SyncRequest> backlog = seedConnections("periodic", periodicBacklog, fitbitShare, false);
+        KafkaTemplate<String, String> kafkaTemplate = context.getBean(KafkaTemplate.class);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread eventReader = new Thread(() -> readIngestedEvents(running), "loadtest-ingested-reader");
+        eventReader.start();
+
+        if (!backlog.isEmpty()) {
+            logger.warn("Publishing {} periodic sync requests", backlog.size());
+            for (SyncRequest request : backlog) {
+                kafkaTemplate.send(periodicTopic, request.userId(), request.toMessage(objectMapper));
+            }
+            kafkaTemplate.flush();
+        }
+
+        logger.warn("Publishing {} sync requests", requests.size());
+        long started = System.nanoTime();
+        for (SyncRequest request : requests) {
+            requestedAt.put(request.userId(), System.nanoTime());
+            kafkaTemplate.send(syncTopic, request.userId(), request.toMessage(objectMapper));
+        }
+        kafkaTemplate.flush();
+
+        long deadline = started + timeout.toNanos();
+        long finished;
+        while ((finished = finishedSyncs()) < users && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+        // Give the outbox relay time to publish the last events
+        Thread.sleep(2000);
+        running.set(false);
+        eventReader.join();
+
+        report(users, finished, elapsedSeconds, simulator);
+    }
+
+    /** Inserts one connected user per request, tokens encrypted as the application stores them. */
+    private List<SyncRequest> seedConnections(String label, int users, double fitbitShare, boolean initialSync) {
+        if (users == 0) return List.of();
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        EncryptionUtil encryptionUtil = context.getBean(EncryptionUtil.class);
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        List<SyncRequest> requests = new ArrayList<>(users);
+        List<Object[]> rows = new ArrayList<>(users);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < users; i++) {
+            String userId = String.format("loadtest-%s-%s-%06d", runId, label, i);
+            UserHealthConnection.HealthProvider provider = i < users * fitbitShare
+                    ? UserHealthConnection.HealthProvider.FITBIT : UserHealthConnection.HealthProvider.GOOGLE_FIT;
+            rows.add(new Object[]{UUID.randomUUID().toString(), userId, provider.name(),
+                    encryptionUtil.encrypt("access." + userId), encryptionUtil.encrypt("refresh." + userId), now, now});
+            requests.add(new SyncRequest(userId, provider, initialSync));
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO user_health_connections
+                    (id, user_id, provider, access_token, refresh_token, status, sync_status, sync_retry_count, created_at, updated_at)
+                VALUES (?, ?, ?, ?, ?, 'CONNECTED', 'IDLE', 0, ?, ?)
+                """, rows);
+        logger.warn("Seeded {} {} connections ({} Fitbit)", users, label, requests.stream()
+                .filter(request -> request.provider() == UserHealthConnection.HealthProvider.FITBIT).count());
+        // Interleave providers so both are in flight at once
+        List<SyncRequest> interleaved = new ArrayList<>(requests.size());
+        int fitbit = (int) Math.ceil(users * fitbitShare);
+        for (int i = 0, j = fitbit; i < fitbit || j < users; i++, j++) {
+            if (i < fitbit) interleaved.add(requests.get(i));
+            if (j < users) interleaved.add(requests.get(j));
+        }
+        return interleaved;
+    }
+
+    /** Records, per user, the time from publishing the request to its first ingested event. */
+    private void readIngestedEvents(AtomicBoolean running) {
+        Map<String, Object> config = Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, context.getEnvironment().getProperty("spring.kafka.bootstrap-servers"),
+                ConsumerConfig.GROUP_ID_CONFIG, "loadtest-" + UUID.randomUUID(),
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(config, new StringDeserializer(), new StringDeserializer())) {
+            consumer.subscribe(List.of(ingestedTopic));
+            while (running.get()) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(200))) {
+                    long receivedAt = System.nanoTime();
+                    try {
+                        JsonNode event = objectMapper.readTree(record.value());
+                        Long sentAt = requestedAt.get(event.path("userId").asText());
+                        if (sentAt != null) {
+                            ingestedAfter.putIfAbsent(event.path("userId").asText(), receivedAt - sentAt);
+                        }
+                    } catch (Exception e) {
+                        logger.error("Unreadable ingested event: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Interactive syncs that reached a final outcome; deferred ones are re-queued and
+     * counted when they finish, transient failures when their retry succeeds or runs
+     * out of attempts.
+     */
+    private long finishedSyncs() {
+        double finished = 0;
+        for (String lane : new String[]{MEASURED_LANE, SyncLane.RETRY.tag()}) {
+            for (Counter counter : meterRegistry.find("health.sync.outcomes").tag("lane", lane).counters()) {
+                if (!UNFINISHED_OUTCOMES.contains(counter.getId().getTag("outcome"))) {
+                    finished += counter.count();
+                }
+            }
+        }
+        for (Counter counter : meterRegistry.find("health.sync.retries").tag("result", "exhausted").counters()) {
+            finished += counter.count();
+        }
+        return (long) finished;
+    }
+
+    private void report(int users, long finished, double elapsedSeconds, ProviderSimulator simulator) {
+        Map<String, Double> outcomes = new TreeMap<>();
+        for (Counter counter : meterRegistry.find("health.sync.outcomes").counters()) {
+            outcomes.merge(counter.getId().getTag("lane") + "/" + counter.getId().getTag("provider") + "/"
+                    + counter.getId().getTag("outcome"), counter.count(), Double::sum);
+        }
+        Map<String, Double> retries = new TreeMap<>();
+        for (Counter counter : meterRegistry.find("health.sync.retries").counters()) {
+            retries.merge(counter.getId().getTag("result"), counter.count(), Double::sum);
+        }
+        long[] endToEnd = ingestedAfter.values().stream().mapToLong(Long::longValue).sorted().toArray();
+
+        StringBuilder out = new StringBuilder("\n=== Sync load test ===\n");
+        out.append(String.format(Locale.ROOT, "users: %d, finished: %d%s%n", users, finished,
+                finished < users ? " (timed out)" : ""));
+        out.append(String.format(Locale.ROOT, "elapsed: %.1f s, throughput: %.1f syncs/s%n", elapsedSeconds, finished / elapsedSeconds));
+        out.append(String.format(Locale.ROOT, "sync duration: p50 <= %s, p99 <= %s (histogram bucket bounds)%n",
+                millis(syncDurationPercentile(0.50)), millis(syncDurationPercentile(0.99))));
+        if (endToEnd.length > 0) {
+            out.append(String.format(Locale.ROOT, "request -> ingested event (%d users): p50 %s, p99 %s, max %s%n", endToEnd.length,
+                    millis(percentile(endToEnd, 0.50)), millis(percentile(endToEnd, 0.99)), millis(endToEnd[endToEnd.length - 1])));
+        }
+        for (Timer lag : meterRegistry.find("health.sync.listener.lag").timers()) {
+            out.append(String.format(Locale.ROOT, "listener lag (%s, %d requests): mean %.0f ms%n", lag.getId().getTag("lane"),
+                    lag.count(), lag.mean(TimeUnit.MILLISECONDS)));
+        }
+        out.append("outcomes: ").append(outcomes).append('\n');
+        out.append("retries: ").append(retries).append('\n');
+        out.append("simulator responses by status: ").append(simulator.responseCounts()).append('\n');
+        logger.warn(out.toString());
+    }
+
+    /**
+     * Percentile across the interactive {@code health.sync.duration} timers, from their merged
+     * histogram buckets; the result is the upper bound of the bucket it falls in.
+     */
+    private double syncDurationPercentile(double quantile) {
+        Map<Double, Double> cumulative = new TreeMap<>();
+        double total = 0;
+        for (Timer timer : meterRegistry.find("health.sync.duration").tag("lane", MEASURED_LANE).timers()) {
+            if (UNFINISHED_OUTCOMES.contains(timer.getId().getTag("outcome"))) continue;
+            total += timer.count();
+            for (CountAtBucket bucket : timer.takeSnapshot().histogramCounts()) {
+                cumulative.merge(bucket.bucket(TimeUnit.NANOSECONDS), bucket.count(), Double::sum);
+            }
+        }
+        for (Map.Entry<Double, Double> bucket : cumulative.entrySet()) {
+            if (bucket.getValue() >= quantile * total) {
+                return bucket.getKey();
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static String millis(double nanos) {
+        return Double.isNaN(nanos) ? "n/a" : String.format(Locale.ROOT, "%.0f ms", nanos / 1e6);
+    }
+
+    private static Map<String, String> parseArgs(String[] argv) {
+        Map<String, String> args = new TreeMap<>();
+        Arrays.stream(argv)
+                .filter(arg -> arg.startsWith("--") && arg.contains("="))
+                .forEach(arg -> args.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1)));
+        return args;
+    }
+}
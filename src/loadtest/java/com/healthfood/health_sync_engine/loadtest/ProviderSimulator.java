@@ -0,0 +1,444 @@
+package com.healthfood.health_sync_engine.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the Google Fit and Fitbit APIs, serving generated aggregate, time-series
+ * and daily-summary payloads on the same paths as the real services:
+ * <ul>
+ *   <li>{@code POST /fitness/v1/users/me/dataset:aggregate} and {@code POST /oauth2/token}</li>
+ *   <li>{@code GET /1/user/-/activities/{resource}/date/{from}/{to}.json}</li>
+ *   <li>{@code GET /1/user/-/activities/date/{date}.json}</li>
+ * </ul>
+ * Access tokens have the form {@code access.<userId>} (refresh tokens {@code refresh.<userId>})
+ * and values are derived from the user and day, so repeated runs return the same data.
+ * Every response is delayed by the configured latency; faults are injected per request.
+ */
+public class ProviderSimulator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderSimulator.class);
+
+    private static final Pattern FITBIT_RANGE = Pattern.compile("/1/user/-/activities/([A-Za-z]+)/date/([0-9-]+)/([0-9-]+)\\.json");
+    private static final Pattern FITBIT_DAY = Pattern.compile("/1/user/-/activities/date/([0-9-]+)\\.json");
+    private static final String GOOGLE_AGGREGATE = "/fitness/v1/users/me/dataset:aggregate";
+    private static final String GOOGLE_TOKEN = "/oauth2/token";
+    // Data type a restricted Google Fit user has not granted, and the Fitbit resource they can't read
+    private static final String RESTRICTED_GOOGLE_TYPE = "com.google.distance.delta";
+    private static final String RESTRICTED_FITBIT_RESOURCE = "heart";
+
+    /**
+     * Fault and latency settings. Rates are per request, except {@code forbiddenRate},
+     * the share of users missing one permission (Google Fit answers 403 naming the data
+     * type, Fitbit answers 403 on the heart series).
+     */
+    public record Settings(Duration latency,
+                           Duration jitter,
+                           double errorRate,
+                           double unauthorizedRate,
+                           double throttleRate,
+                           double forbiddenRate,
+                           int fitbitHourlyQuota,
+                           int retryAfterSeconds) {
+
+        public static Settings from(Map<String, String> args) {
+            return new Settings(
+                    Duration.ofMillis(Long.parseLong(args.getOrDefault("latency-ms", "80"))),
+                    Duration.ofMillis(Long.parseLong(args.getOrDefault("jitter-ms", "40"))),
+                    Double.parseDouble(args.getOrDefault("error-rate", "0.01")),
+                    Double.parseDouble(args.getOrDefault("unauthorized-rate", "0.005")),
+                    Double.parseDouble(args.getOrDefault("throttle-rate", "0.005")),
+                    Double.parseDouble(args.getOrDefault("forbidden-rate", "0.05")),
+                    Integer.parseInt(args.getOrDefault("fitbit-hourly-quota", "150")),
+                    Integer.parseInt(args.getOrDefault("retry-after-seconds", "2")));
+        }
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> fitbitCalls = new ConcurrentHashMap<>();
+    private volatile long fitbitQuotaHour;
+
+    private ProviderSimulator(Settings settings, HttpServer server, ExecutorService executor) {
+        this.settings = settings;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Starts a simulator on {@code port} (0 for any free port). */
+    public static ProviderSimulator start(int port, Settings settings) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        // Handlers sleep for the simulated latency, so threads are not pooled to a fixed size
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ProviderSimulator simulator = new ProviderSimulator(settings, server, executor);
+        server.createContext("/", simulator::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Provider simulator listening on {} with {}", simulator.baseUrl(), settings);
+        return simulator;
+    }
+
+    public String googleRootUrl() {
+        return baseUrl() + "/";
+    }
+
+    public String googleTokenUrl() {
+        return baseUrl() + GOOGLE_TOKEN;
+    }
+
+    public String fitbitApiUrl() {
+        return baseUrl() + "/1";
+    }
+
+    /** Responses served so far, by status code. */
+    public Map<Integer, Long> responseCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        responses.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sleep(settings.latency().toMillis()
+                    + (settings.jitter().isZero() ? 0 : ThreadLocalRandom.current().nextLong(settings.jitter().toMillis() + 1)));
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals(GOOGLE_TOKEN)) {
+                handleToken(exchange);
+            } else if (path.equals(GOOGLE_AGGREGATE)) {
+                handleGoogleAggregate(exchange);
+            } else if (path.startsWith("/1/")) {
+                handleFitbit(exchange, path);
+            } else {
+                respond(exchange, 404, Map.of(), "{}");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Simulator failed to handle {}: {}", exchange.getRequestURI(), e.getMessage());
+        }
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parseForm(readBody(exchange));
+        String refreshToken = form.getOrDefault("refresh_token", "");
+        if (!refreshToken.startsWith("refresh.")) {
+            respond(exchange, 400, Map.of(), "{\"error\":\"invalid_grant\"}");
+            return;
+        }
+        ObjectNode token = objectMapper.createObjectNode()
+                .put("access_token", "access." + userOf(refreshToken))
+                .put("token_type", "Bearer")
+                .put("expires_in", 3600);
+        respond(exchange, 200, Map.of(), token.toString());
+    }
+
+    private void handleGoogleAggregate(HttpExchange exchange) throws IOException {
+        String userId = authenticatedUser(exchange);
+        JsonNode request = objectMapper.readTree(readBody(exchange));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (userId == null || random.nextDouble() < settings.unauthorizedRate()) {
+            respond(exchange, 401, Map.of(), googleError(401, "Request had invalid authentication credentials.", "authError"));
+            return;
+        }
+        if (random.nextDouble() < settings.throttleRate()) {
+            respond(exchange, 429, Map.of("Retry-After", String.valueOf(settings.retryAfterSeconds())),
+                    googleError(429, "Quota exceeded for quota metric 'Read requests'.", "rateLimitExceeded"));
+            return;
+        }
+        if (random.nextDouble() < settings.errorRate()) {
+            respond(exchange, 503, Map.of(), googleError(503, "The service is currently unavailable.", "backendError"));
+            return;
+        }
+
+        List<String> types = request.path("aggregateBy").findValuesAsText("dataTypeName");
+        if (isRestricted(userId) && types.contains(RESTRICTED_GOOGLE_TYPE)) {
+            respond(exchange, 403, Map.of(), googleError(403,
+                    "No permission to read data for this data source: derived:" + RESTRICTED_GOOGLE_TYPE, "forbidden"));
+            return;
+        }
+
+        long start = request.path("startTimeMillis").asLong();
+        long end = request.path("endTimeMillis").asLong();
+        long bucketMillis = request.path("bucketByTime").path("durationMillis").asLong(Duration.ofDays(1).toMillis());
+        respond(exchange, 200, Map.of(), googleAggregate(userId, types, start, end, bucketMillis));
+    }
+
+    private void handleFitbit(HttpExchange exchange, String path) throws IOException {
+        String userId = authenticatedUser(exchange);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (userId == null || random.nextDouble() < settings.unauthorizedRate()) {
+            respond(exchange, 401, Map.of(), fitbitError("expired_token", "Access token expired"));
+            return;
+        }
+
+        // Per-user hourly quota, reported on every response like the real API
+        long hour = Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond();
+        if (hour != fitbitQuotaHour) {
+            fitbitQuotaHour = hour;
+            fitbitCalls.clear();
+        }
+        int used = fitbitCalls.computeIfAbsent(userId, k -> new AtomicInteger()).incrementAndGet();
+        long reset = hour + 3600 - Instant.now().getEpochSecond();
+        boolean exhausted = used > settings.fitbitHourlyQuota();
+        Map<String, String> quotaHeaders = Map.of(
+                "Fitbit-Rate-Limit-Limit", String.valueOf(settings.fitbitHourlyQuota()),
+                "Fitbit-Rate-Limit-Remaining", String.valueOf(Math.max(0, settings.fitbitHourlyQuota() - used)),
+                "Fitbit-Rate-Limit-Reset", String.valueOf(reset));
+        if (exhausted || random.nextDouble() < settings.throttleRate()) {
+            Map<String, String> headers = new TreeMap<>(quotaHeaders);
+            headers.put("Retry-After", String.valueOf(exhausted ? reset : settings.retryAfterSeconds()));
+            respond(exchange, 429, headers, fitbitError("system", "Too Many Requests"));
+            return;
+        }
+        if (random.nextDouble() < settings.errorRate()) {
+            respond(exchange, 500, quotaHeaders, fitbitError("system", "An unexpected error occurred"));
+            return;
+        }
+
+        Matcher range = FITBIT_RANGE.matcher(path);
+        if (range.matches()) {
+            String resource = range.group(1);
+            if (isRestricted(userId) && resource.equals(RESTRICTED_FITBIT_RESOURCE)) {
+                respond(exchange, 403, quotaHeaders, fitbitError("insufficient_scope", "Missing heartrate scope"));
+                return;
+            }
+            respond(exchange, 200, quotaHeaders,
+                    fitbitSeries(userId, resource, LocalDate.parse(range.group(2)), LocalDate.parse(range.group(3))));
+            return;
+        }
+        Matcher day = FITBIT_DAY.matcher(path);
+        if (day.matches()) {
+            respond(exchange, 200, quotaHeaders, fitbitSummary(userId, LocalDate.parse(day.group(1))));
+            return;
+        }
+        respond(exchange, 404, quotaHeaders, fitbitError("not_found", "Unknown resource"));
+    }
+
+    private String googleAggregate(String userId, List<String> types, long start, long end, long bucketMillis) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode buckets = response.putArray("bucket");
+        for (long bucketStart = start; bucketStart < end; bucketStart += bucketMillis) {
+            long bucketEnd = Math.min(bucketStart + bucketMillis, end);
+            DayValues day = DayValues.of(userId, Instant.ofEpochMilli(bucketStart).atZone(ZoneId.systemDefault()).toLocalDate());
+            ObjectNode bucket = buckets.addObject()
+                    .put("startTimeMillis", String.valueOf(bucketStart))
+                    .put("endTimeMillis", String.valueOf(bucketEnd));
+            ArrayNode datasets = bucket.putArray("dataset");
+            for (String type : types) {
+                String aggregateType = switch (type) {
+                    case "com.google.heart_rate.bpm" -> "com.google.heart_rate.summary";
+                    case "com.google.oxygen_saturation" -> "com.google.oxygen_saturation.summary";
+                    default -> type;
+                };
+                ObjectNode point = datasets.addObject()
+                        .put("dataSourceId", "derived:" + aggregateType + ":com.google.android.gms:aggregated")
+                        .putArray("point").addObject()
+                        .put("startTimeNanos", String.valueOf(bucketStart * 1_000_000))
+                        .put("endTimeNanos", String.valueOf(bucketEnd * 1_000_000))
+                        .put("dataTypeName", aggregateType);
+                ArrayNode value = point.putArray("value");
+                switch (type) {
+                    case "com.google.step_count.delta" -> value.addObject().put("intVal", day.steps());
+                    case "com.google.calories.expended" -> value.addObject().put("fpVal", day.calories());
+                    case "com.google.distance.delta" -> value.addObject().put("fpVal", day.distanceKm() * 1000);
+                    case "com.google.active_minutes" -> value.addObject().put("intVal", day.activeMinutes());
+                    case "com.google.heart_rate.bpm" -> {
+                        value.addObject().put("fpVal", day.heartRate());
+                        value.addObject().put("fpVal", day.heartRate() + 60);
+                        value.addObject().put("fpVal", day.heartRate() - 8);
+                    }
+                    case "com.google.oxygen_saturation" -> {
+                        value.addObject().put("fpVal", day.bloodOxygen());
+                        value.addObject().put("fpVal", 99.0);
+                        value.addObject().put("fpVal", day.bloodOxygen() - 2);
+                    }
+                    default -> value.addObject().put("intVal", 0);
+                }
+            }
+        }
+        return response.toString();
+    }
+
+    private String fitbitSeries(String userId, String resource, LocalDate from, LocalDate to) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode series = response.putArray("activities-" + resource);
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            DayValues day = DayValues.of(userId, date);
+            ObjectNode entry = series.addObject().put("dateTime", date.toString());
+            switch (resource) {
+                case "steps" -> entry.put("value", String.valueOf(day.steps()));
+                case "calories" -> entry.put("value", String.valueOf((int) day.calories()));
+                case "distance" -> entry.put("value", String.valueOf(day.distanceKm()));
+                case "minutesVeryActive" -> entry.put("value", String.valueOf(day.activeMinutes() / 3));
+                case "minutesFairlyActive" -> entry.put("value", String.valueOf(day.activeMinutes() - day.activeMinutes() / 3));
+                case "heart" -> entry.putObject("value")
+                        .put("restingHeartRate", (int) day.heartRate())
+                        .putArray("heartRateZones");
+                default -> entry.put("value", "0");
+            }
+        }
+        return response.toString();
+    }
+
+    private String fitbitSummary(String userId, LocalDate date) {
+        DayValues day = DayValues.of(userId, date);
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putArray("activities");
+        ObjectNode summary = response.putObject("summary")
+                .put("steps", day.steps())
+                .put("caloriesOut", (int) day.calories())
+                .put("veryActiveMinutes", day.activeMinutes() / 3)
+                .put("fairlyActiveMinutes", day.activeMinutes() - day.activeMinutes() / 3)
+                .put("lightlyActiveMinutes", 180)
+                .put("sedentaryMinutes", 720);
+        summary.putArray("distances").addObject()
+                .put("activity", "total")
+                .put("distance", day.distanceKm());
+        if (!isRestricted(userId)) {
+            summary.put("restingHeartRate", (int) day.heartRate());
+        }
+        return response.toString();
+    }
+
+    /** One user's values for one day, derived from both so every run serves the same data. */
+    private record DayValues(int steps, double calories, double distanceKm, int activeMinutes,
+                             double heartRate, double bloodOxygen) {
+
+        static DayValues of(String userId, LocalDate date) {
+            long seed = userId.hashCode() * 31L + date.toEpochDay();
+            Random random = new Random(seed);
+            int steps = 2000 + random.nextInt(12000);
+            return new DayValues(
+                    steps,
+                    1600 + random.nextInt(1400),
+                    Math.round(steps * 0.00075 * 100) / 100.0,
+                    random.nextInt(90),
+                    55 + random.nextInt(20),
+                    95 + random.nextInt(4));
+        }
+    }
+
+    private boolean isRestricted(String userId) {
+        return Math.floorMod(userId.hashCode() * 31 + 7, 10_000) < settings.forbiddenRate() * 10_000;
+    }
+
+    private static String authenticatedUser(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer access.")) {
+            return null;
+        }
+        return userOf(authorization.substring("Bearer ".length()));
+    }
+
+    private static String userOf(String token) {
+        return token.substring(token.indexOf('.') + 1);
+    }
+
+    private String googleError(int code, String message, String reason) {
+        ObjectNode body = objectMapper.createObjectNode();
+        ObjectNode error = body.putObject("error").put("code", code).put("message", message);
+        error.putArray("errors").addObject()
+                .put("message", message)
+                .put("domain", "global")
+                .put("reason", reason);
+        return body.toString();
+    }
+
+    private String fitbitError(String type, String message) {
+        ObjectNode body = objectMapper.createObjectNode().put("success", false);
+        body.putArray("errors").addObject().put("errorType", type).put("message", message);
+        return body.toString();
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new TreeMap<>();
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, String> headers, String body) throws IOException {
+        responses.computeIfAbsent(status, k -> new LongAdder()).increment();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        headers.forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
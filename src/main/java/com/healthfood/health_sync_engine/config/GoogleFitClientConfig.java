@@ -0,0 +1,33 @@
+package com.healthfood.health_sync_engine.config;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class GoogleFitClientConfig {
+
+    /**
+     * Single pooled transport shared by every Google Fit call. Building a transport
+     * per request reloads the trust store and throws away warm TLS connections, so
+     * the per-user part is limited to the credential bound on top of this.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public HttpTransport googleFitHttpTransport(
+            @Value("${app.google-fit.http.max-connections:200}") int maxConnections,
+            @Value("${app.google-fit.http.max-connections-per-route:100}") int maxConnectionsPerRoute,
+            @Value("${app.google-fit.http.keep-alive-seconds:60}") long keepAliveSeconds) {
+        CloseableHttpClient httpClient = ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(keepAliveSeconds))
+                .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS)
+                .build();
+        return new ApacheHttpTransport(httpClient);
+    }
+}
@@ -0,0 +1,29 @@
+package com.healthfood.health_sync_engine.config;
+
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+@Configuration
+public class MetricCacheConfig {
+
+    /**
+     * Container factory for the read-cache invalidation listener. Its consumer group is
+     * random per instance and always starts from the latest offset, so committed offsets
+     * would never be read again and would only pile up on the broker until they expire.
+     * With manual acks and a listener that never acknowledges, nothing is committed.
+     */
+    @Bean
+    @SuppressWarnings("unchecked")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> metricCacheInvalidationContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<?, ?> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, (ConsumerFactory<Object, Object>) consumerFactory);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
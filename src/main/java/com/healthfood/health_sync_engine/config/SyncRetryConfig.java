@@ -0,0 +1,29 @@
+package com.healthfood.health_sync_engine.config;
+
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+@Configuration
+public class SyncRetryConfig {
+
+    /**
+     * Container factory for the retry lane. Same settings as the default factory, but with
+     * record listeners: the retry topics delay a record by pausing its partition until the
+     * record is due, which only works one record at a time. The batch lanes are unaffected.
+     */
+    @Bean
+    @SuppressWarnings("unchecked")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> syncRetryContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<?, ?> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, (ConsumerFactory<Object, Object>) consumerFactory);
+        factory.setBatchListener(false);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        return factory;
+    }
+}
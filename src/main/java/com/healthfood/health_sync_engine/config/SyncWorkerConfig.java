@@ -0,0 +1,90 @@
+package com.healthfood.health_sync_engine.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class SyncWorkerConfig {
+
+    /**
+     * Bounded pool that processes the records of one interactive listener batch in parallel.
+     * When the queue is full the listener thread runs the work itself, which
+     * naturally slows down polling instead of buffering without limit.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor syncWorkerExecutor(
+            @Value("${app.health.sync.worker.threads:8}") int threads,
+            @Value("${app.health.sync.worker.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("health-sync-worker-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Same as {@link #syncWorkerExecutor} for the periodic lane. Kept separate so the
+     * hourly backlog can saturate it without taking threads from interactive syncs.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor periodicSyncExecutor(
+            @Value("${app.health.sync.periodic.worker.threads:8}") int threads,
+            @Value("${app.health.sync.periodic.worker.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("health-sync-periodic-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Runs manually triggered sync jobs off the HTTP request threads. Rejects work once
+     * the queue is full so the API can answer 429 instead of tying up Tomcat threads.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor syncJobExecutor(
+            @Value("${app.health.sync.jobs.threads:4}") int threads,
+            @Value("${app.health.sync.jobs.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("health-sync-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Runs backfill chunks. Small and at low thread priority so imports of old history
+     * yield to regular syncs; the tick waits for its chunks, so the queue stays short.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor backfillExecutor(
+            @Value("${app.health.backfill.threads:2}") int threads,
+            @Value("${app.health.backfill.batch-size:4}") int batchSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(batchSize);
+        executor.setThreadNamePrefix("health-backfill-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -3,232 +3,499 @@ package com.healthfood.health_sync_engine.consumer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.healthfood.health_sync_engine.model.HealthMetricDaily;
 import com.healthfood.health_sync_engine.model.UserHealthConnection;
-import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
 import com.healthfood.health_sync_engine.repository.UserHealthConnectionRepository;
+import com.healthfood.health_sync_engine.service.BackfillService;
 import com.healthfood.health_sync_engine.service.GoogleFitSyncService;
+import com.healthfood.health_sync_engine.service.ConnectionCache;
 import com.healthfood.health_sync_engine.service.FitbitSyncService;
+import com.healthfood.health_sync_engine.service.MetricPersistenceService;
+import com.healthfood.health_sync_engine.service.MetricQueryService;
+import com.healthfood.health_sync_engine.service.ProviderBudget;
+import com.healthfood.health_sync_engine.service.ProviderCircuitBreaker;
+import com.healthfood.health_sync_engine.service.ProviderException;
+import com.healthfood.health_sync_engine.service.ProviderRateLimitException;
+import com.healthfood.health_sync_engine.service.ProviderRateLimiter;
+import com.healthfood.health_sync_engine.service.SyncDeferralService;
+import com.healthfood.health_sync_engine.service.SyncMetrics;
+import com.healthfood.health_sync_engine.service.SyncRetryService;
+import com.healthfood.health_sync_engine.service.SyncWindow;
+import com.healthfood.health_sync_engine.service.SyncWindowPolicy;
 import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class HealthSyncConsumer {
     private static final Logger logger = LoggerFactory.getLogger(HealthSyncConsumer.class);
     private final UserHealthConnectionRepository connectionRepository;
-    private final HealthMetricDailyRepository metricRepository;
     private final GoogleFitSyncService googleFitSyncService;
     private final FitbitSyncService fitbitSyncService;
-    private final KafkaTemplate<String, String> kafkaTemplate;
     private final EncryptionUtil encryptionUtil;
+    private final ThreadPoolTaskExecutor syncWorkerExecutor;
+    private final ThreadPoolTaskExecutor periodicSyncExecutor;
+    private final ProviderRateLimiter rateLimiter;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final SyncRetryService syncRetryService;
+    private final SyncDeferralService syncDeferralService;
+    private final SyncWindowPolicy syncWindowPolicy;
+    private final MetricPersistenceService metricPersistenceService;
+    private final MetricQueryService metricQueryService;
+    private final ConnectionCache connectionCache;
+    private final SyncCoalescer syncCoalescer;
+    private final SyncMetrics syncMetrics;
+    private final BackfillService backfillService;
+    private final TransactionTemplate transactionTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    @Value("${app.health.ingested.topic}")
-    private String ingestedTopic;
-
     public HealthSyncConsumer(UserHealthConnectionRepository connectionRepository,
-                              HealthMetricDailyRepository metricRepository,
                               GoogleFitSyncService googleFitSyncService,
                               FitbitSyncService fitbitSyncService,
-                              KafkaTemplate<String, String> kafkaTemplate,
-                              EncryptionUtil encryptionUtil) {
+                              EncryptionUtil encryptionUtil,
+                              @Qualifier("syncWorkerExecutor") ThreadPoolTaskExecutor syncWorkerExecutor,
+                              @Qualifier("periodicSyncExecutor") ThreadPoolTaskExecutor periodicSyncExecutor,
+                              ProviderRateLimiter rateLimiter,
+                              ProviderCircuitBreaker circuitBreaker,
+                              SyncRetryService syncRetryService,
+                              SyncDeferralService syncDeferralService,
+                              SyncWindowPolicy syncWindowPolicy,
+                              MetricPersistenceService metricPersistenceService,
+                              MetricQueryService metricQueryService,
+                              ConnectionCache connectionCache,
+                              SyncCoalescer syncCoalescer,
+                              SyncMetrics syncMetrics,
+                              BackfillService backfillService,
+                              TransactionTemplate transactionTemplate) {
         this.connectionRepository = connectionRepository;
-        this.metricRepository = metricRepository;
         this.googleFitSyncService = googleFitSyncService;
         this.fitbitSyncService = fitbitSyncService;
-        this.kafkaTemplate = kafkaTemplate;
         this.encryptionUtil = encryptionUtil;
+        this.syncWorkerExecutor = syncWorkerExecutor;
+        this.periodicSyncExecutor = periodicSyncExecutor;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.syncRetryService = syncRetryService;
+        this.syncDeferralService = syncDeferralService;
+        this.syncWindowPolicy = syncWindowPolicy;
+        this.metricPersistenceService = metricPersistenceService;
+        this.metricQueryService = metricQueryService;
+        this.connectionCache = connectionCache;
+        this.syncCoalescer = syncCoalescer;
+        this.syncMetrics = syncMetrics;
+        this.backfillService = backfillService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Interactive lane: requests from other services, including initial syncs. Runs in
+     * its own container and worker pool, so it never waits behind the periodic backlog.
+     */
+    @KafkaListener(id = "health-sync-interactive", idIsGroup = false,
+            topics = "${app.health.sync.topic}", groupId = "${spring.kafka.consumer.group-id}")
+    public void consumeBatch(List<ConsumerRecord<String, String>> records) {
+        consumeBatch(records, SyncLane.INTERACTIVE, syncWorkerExecutor);
+    }
+
+    /** Periodic lane: the hourly fan-out, with its own consumer group, container and pool. */
+    @KafkaListener(id = "health-sync-periodic", idIsGroup = false,
+            topics = "${app.health.sync.periodic.topic}", groupId = "${app.health.sync.periodic.group-id}",
+            concurrency = "${app.health.sync.periodic.listener.concurrency:3}")
+    public void consumePeriodicBatch(List<ConsumerRecord<String, String>> records) {
+        consumeBatch(records, SyncLane.PERIODIC, periodicSyncExecutor);
+    }
+
+    /**
+     * Retry lane: syncs that failed transiently in another lane, one record at a time on
+     * its own container. A record waits in its partition until due (30s, then 2m, 8m and
+     * 32m with the defaults) without blocking any thread; a sync that fails transiently
+     * again moves on to the next retry topic and, after the last, to the dead-letter topic.
+     */
+    @RetryableTopic(
+            attempts = "${app.health.sync.retry.attempts:4}",
+            backoff = @Backoff(
+                    delayExpression = "#{${app.health.sync.retry.initial-delay-ms:30000} * ${app.health.sync.retry.multiplier:4}}",
+                    multiplierExpression = "${app.health.sync.retry.multiplier:4}",
+                    maxDelayExpression = "${app.health.sync.retry.max-delay-ms:3600000}"),
+            numPartitions = "${app.health.sync.retry.partitions:6}",
+            include = SyncRetryException.class,
+            kafkaTemplate = "kafkaTemplate")
+    @KafkaListener(id = "health-sync-retry", idIsGroup = false,
+            topics = "${app.health.sync.retry.topic}", groupId = "${app.health.sync.retry.group-id}",
+            containerFactory = "syncRetryContainerFactory",
+            concurrency = "${app.health.sync.retry.listener.concurrency:2}")
+    public void consumeRetry(ConsumerRecord<String, String> record) {
+        SyncRequest request = parseRequest(record.value());
+        if (request == null) {
+            return;
+        }
+        SyncOutcome outcome = process(request, SyncLane.RETRY);
+        if (outcome.failure() == ProviderException.Kind.TRANSIENT) {
+            throw new SyncRetryException(outcome.error());
+        }
+    }
+
+    /**
+     * Dead-letter topic: retries that ran out of attempts and permanent failures. The
+     * records stay on the topic for inspection and replay; here they are only counted.
+     */
+    @DltHandler
+    public void consumeDeadLetter(ConsumerRecord<String, String> record) {
+        try {
+            SyncRequest request = SyncRequest.parse(objectMapper, record.value());
+            if (record.headers().lastHeader(SyncRetryService.FAILURE_HEADER) == null) {
+                syncMetrics.retry(request.provider(), "exhausted");
+                logger.error("Sync for user {} and provider {} failed after all retries: {}", request.userId(),
+                        request.provider(), header(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+            } else {
+                logger.warn("Sync for user {} and provider {} dead-lettered: {}", request.userId(),
+                        request.provider(), header(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+            }
+        } catch (Exception e) {
+            logger.error("Invalid dead-lettered sync request {}: {}", record.value(), e.getMessage());
+        }
+    }
+
+    /**
+     * Batch entry point. Requests are first registered with the coalescer on the listener
+     * thread, so duplicates of a queued or running sync never reach a worker. The rest are
+     * grouped by userId: each user's requests keep their partition order on a single worker,
+     * while different users run in parallel on the lane's bounded worker pool. The method only
+     * returns once every group has finished, so the container commits the batch offsets
+     * after all work is done.
+     */
+    private void consumeBatch(List<ConsumerRecord<String, String>> records, SyncLane lane, ThreadPoolTaskExecutor executor) {
+        logger.info("Received batch of {} {} sync requests", records.size(), lane.tag());
+
+        Map<String, List<SyncRequest>> requestsByUser = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            syncMetrics.listenerLag(lane, record.timestamp());
+            SyncRequest request = parseRequest(record.value());
+            if (request != null && syncCoalescer.offer(request)) {
+                requestsByUser.computeIfAbsent(request.userId(), k -> new ArrayList<>()).add(request);
+            }
+        }
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(requestsByUser.size());
+        for (List<SyncRequest> requests : requestsByUser.values()) {
+            tasks.add(CompletableFuture.runAsync(() -> requests.forEach(request -> runCoalesced(request, lane)), executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
     }
 
-    @KafkaListener(topics = "${app.health.sync.topic}", groupId = "${spring.kafka.consumer.group-id}")
     public void consume(String message) {
+        SyncRequest request = parseRequest(message);
+        if (request != null) {
+            process(request, SyncLane.INTERACTIVE);
+        }
+    }
+
+    /**
+     * Runs one request on the calling thread, unless a sync for the same user and
+     * provider is already in flight, in which case the request is merged into it.
+     */
+    public SyncOutcome process(SyncRequest request, SyncLane lane) {
+        if (!syncCoalescer.offer(request)) {
+            logger.info("Sync for user {} and provider {} already in flight; request merged", request.userId(), request.provider());
+            return SyncOutcome.of(SyncOutcome.Status.COALESCED);
+        }
+        return runCoalesced(request, lane);
+    }
+
+    /** Whether server-side sync is implemented for the provider. */
+    public boolean supports(UserHealthConnection.HealthProvider provider) {
+        return provider == UserHealthConnection.HealthProvider.GOOGLE_FIT
+                || provider == UserHealthConnection.HealthProvider.FITBIT;
+    }
+
+    private SyncRequest parseRequest(String message) {
         logger.info("Received sync request: {}", message);
         try {
-            logger.info("Processing Kafka message: {}", message);
-            Map<String, Object> payload = objectMapper.readValue(message, Map.class);
-            String userId = (String) payload.get("userId");
-            String providerName = (String) payload.get("provider");
-            Boolean isInitialSync = (Boolean) payload.get("isInitialSync");
+            SyncRequest request = SyncRequest.parse(objectMapper, message);
+            logger.info("Sync Details - User: {}, Provider: {}, Initial: {}", request.userId(), request.provider(), request.initialSync());
+            if (!supports(request.provider())) {
+                logger.warn("Provider {} does not support server-side sync", request.provider());
+                return null;
+            }
+            return request;
+        } catch (Exception e) {
+            logger.error("Invalid sync request {}: {}", message, e.getMessage());
+            return null;
+        }
+    }
 
-            logger.info("Sync Details - User: {}, Provider: {}, Initial: {}", userId, providerName, isInitialSync);
+    /**
+     * Runs a flight owned by this thread, plus any follow-up run merged into it meanwhile.
+     * Returns the outcome of the last run.
+     */
+    private SyncOutcome runCoalesced(SyncRequest request, SyncLane lane) {
+        boolean finished = false;
+        try {
+            SyncOutcome outcome = null;
+            Boolean initialSync = syncCoalescer.start(request);
+            while (initialSync != null) {
+                outcome = sync(new SyncRequest(request.userId(), request.provider(), initialSync), lane);
+                initialSync = syncCoalescer.finish(request);
+            }
+            finished = true;
+            return outcome;
+        } finally {
+            if (!finished) syncCoalescer.abandon(request);
+        }
+    }
 
-            UserHealthConnection.HealthProvider provider = UserHealthConnection.HealthProvider.valueOf(providerName);
-            Optional<UserHealthConnection> connectionOpt = connectionRepository.findByUserIdAndProvider(userId, provider);
+    /** Runs one sync, recording its duration, outcome and the in-flight gauge. */
+    private SyncOutcome sync(SyncRequest request, SyncLane lane) {
+        long startNanos = System.nanoTime();
+        syncMetrics.syncStarted(request.provider());
+        SyncOutcome outcome = null;
+        try {
+            outcome = syncOnce(request, lane);
+            return outcome;
+        } finally {
+            syncMetrics.syncFinished(request.provider(), lane, outcomeTag(outcome), System.nanoTime() - startNanos);
+        }
+    }
 
-            if (connectionOpt.isEmpty() || connectionOpt.get().getStatus() != UserHealthConnection.ConnectionStatus.CONNECTED) {
+    private SyncOutcome syncOnce(SyncRequest request, SyncLane lane) {
+        String userId = request.userId();
+        UserHealthConnection.HealthProvider provider = request.provider();
+        ConnectionCache.CachedConnection connection = null;
+        try {
+            Optional<ConnectionCache.CachedConnection> connectionOpt = syncMetrics.time(SyncMetrics.Stage.CONNECTION_LOOKUP, provider,
+                    () -> connectionCache.get(userId, provider));
+            if (connectionOpt.isEmpty() || connectionOpt.get().status() != UserHealthConnection.ConnectionStatus.CONNECTED) {
                 logger.warn("No active connection found for user {} and provider {}", userId, provider);
-                return;
+                return SyncOutcome.of(SyncOutcome.Status.SKIPPED);
+            }
+
+            connection = connectionOpt.get();
+
+            // While the provider is failing, don't add to its load; a periodic sync is
+            // simply dropped, since the next one resumes from the same watermark
+            Duration unavailable = circuitBreaker.checkAvailable(provider);
+            if (!unavailable.isZero()) {
+                if (lane == SyncLane.PERIODIC) {
+                    logger.debug("{} circuit open; skipping periodic sync for user {}", provider, userId);
+                    return SyncOutcome.of(SyncOutcome.Status.SKIPPED);
+                }
+                syncDeferralService.defer(userId, request.toMessage(objectMapper), unavailable, lane);
+                return SyncOutcome.of(SyncOutcome.Status.DEFERRED);
+            }
+
+            // Defer instead of calling the provider when its quota can't cover this sync;
+            // periodic syncs leave a share of the app quota to the other lanes
+            int permits = expectedProviderCalls(provider);
+            Duration wait = lane == SyncLane.PERIODIC
+                    ? rateLimiter.tryAcquirePeriodic(provider, userId, permits)
+                    : rateLimiter.tryAcquire(provider, userId, permits);
+            if (!wait.isZero()) {
+                syncDeferralService.defer(userId, request.toMessage(objectMapper), wait, lane);
+                return SyncOutcome.of(SyncOutcome.Status.DEFERRED);
             }
 
-            UserHealthConnection connection = connectionOpt.get();
             long startTime = System.currentTimeMillis();
-            
+
             // Update status to SYNCING
-            connection.setSyncStatus(UserHealthConnection.HealthSyncStatus.SYNCING);
-            connectionRepository.save(connection);
-
-            // Decrypt tokens
-            String decryptedToken = encryptionUtil.decrypt(connection.getAccessToken());
-            String decryptedRefreshToken = connection.getRefreshToken() != null ? 
-                    encryptionUtil.decrypt(connection.getRefreshToken()) : null;
-
-            logger.debug("Decrypted Access Token for user {}: {}...", userId, decryptedToken.substring(0, Math.min(10, decryptedToken.length())));
-
-            LocalDateTime end = LocalDateTime.now();
-            LocalDateTime start = isInitialSync != null && isInitialSync ? end.minusDays(30) : end.minusDays(1);
-
-            if (provider == UserHealthConnection.HealthProvider.GOOGLE_FIT) {
-                logger.info("Calling Google Fit API for user {} from {} to {}", userId, start, end);
-                GoogleFitSyncService.SyncResult result = googleFitSyncService.fetchActivity(decryptedToken, decryptedRefreshToken, start, end, userId);
-                List<HealthMetricDaily> metrics = result.getMetrics();
-                logger.info("Received {} daily metric buckets from Google Fit", metrics.size());
-
-                // Update tokens if refreshed
-                boolean tokensUpdated = false;
-                if (result.getNewAccessToken() != null && !result.getNewAccessToken().equals(decryptedToken)) {
-                    logger.info("Updating refreshed Access Token for user {}", userId);
-                    connection.setAccessToken(encryptionUtil.encrypt(result.getNewAccessToken()));
-                    tokensUpdated = true;
-                }
-                if (result.getNewRefreshToken() != null && !result.getNewRefreshToken().equals(decryptedRefreshToken)) {
-                    logger.info("Updating refreshed Refresh Token for user {}", userId);
-                    connection.setRefreshToken(encryptionUtil.encrypt(result.getNewRefreshToken()));
-                    tokensUpdated = true;
-                }
-                if (tokensUpdated) {
-                    connection.setUpdatedAt(LocalDateTime.now());
-                    connectionRepository.save(connection);
-                }
+            connectionRepository.updateSyncStatus(connection.id(), UserHealthConnection.HealthSyncStatus.SYNCING);
 
-                for (HealthMetricDaily metric : metrics) {
-                    // Encrypt metrics before saving
-                    metric.setSteps(encryptionUtil.encrypt(metric.getSteps()));
-                    metric.setCalories(encryptionUtil.encrypt(metric.getCalories()));
-                    metric.setDistance(encryptionUtil.encrypt(metric.getDistance()));
-                    metric.setActiveMinutes(encryptionUtil.encrypt(metric.getActiveMinutes()));
-                    if (metric.getHeartRate() != null) metric.setHeartRate(encryptionUtil.encrypt(metric.getHeartRate()));
-                    if (metric.getBloodOxygen() != null) metric.setBloodOxygen(encryptionUtil.encrypt(metric.getBloodOxygen()));
-                    if (metric.getSleepHours() != null) metric.setSleepHours(encryptionUtil.encrypt(metric.getSleepHours()));
-
-                    Optional<HealthMetricDaily> existing = metricRepository.findByUserIdAndDateAndSourceProvider(
-                            userId, metric.getDate(), provider);
-                    
-                    if (existing.isPresent()) {
-                        HealthMetricDaily m = existing.get();
-                        logger.info("Updating existing record for user {} on {}: Encrypting and saving.", 
-                            userId, metric.getDate());
-                        m.setSteps(metric.getSteps());
-                        m.setCalories(metric.getCalories());
-                        m.setDistance(metric.getDistance());
-                        m.setActiveMinutes(metric.getActiveMinutes());
-                        m.setHeartRate(metric.getHeartRate());
-                        m.setBloodOxygen(metric.getBloodOxygen());
-                        m.setSleepHours(metric.getSleepHours());
-                        m.setUpdatedAt(LocalDateTime.now());
-                        metricRepository.save(m);
-                    } else {
-                        logger.info("Creating new record for user {} on {}: Enriched and Encrypted.", 
-                            userId, metric.getDate());
-                        metricRepository.save(metric);
-                    }
-                }
-                
-                long duration = System.currentTimeMillis() - startTime;
-                connection.setLastSyncedAt(LocalDateTime.now());
-                connection.setSyncStatus(UserHealthConnection.HealthSyncStatus.SUCCESS);
-                connection.setLastSyncDuration((int) duration);
-                connection.setErrorMessage(null);
-                connection.setSyncRetryCount(0);
-                connectionRepository.save(connection);
-
-                // Notify data ingested
-                kafkaTemplate.send(ingestedTopic, objectMapper.writeValueAsString(Map.of(
-                        "userId", userId,
-                        "date", LocalDateTime.now().toString()
-                )));
-                
-                logger.info("Sync completed for user {} and provider {}", userId, provider);
-            } else if (provider == UserHealthConnection.HealthProvider.FITBIT) {
-                logger.info("Calling Fitbit API for user {} from {} to {}", userId, start, end);
-                List<HealthMetricDaily> metrics = fitbitSyncService.fetchActivity(decryptedToken, start, end, userId);
-                logger.info("Received {} daily metric buckets from Fitbit", metrics.size());
-
-                for (HealthMetricDaily metric : metrics) {
-                    // Encrypt metrics before saving
-                    metric.setSteps(encryptionUtil.encrypt(metric.getSteps()));
-                    metric.setCalories(encryptionUtil.encrypt(metric.getCalories()));
-                    metric.setDistance(encryptionUtil.encrypt(metric.getDistance()));
-                    metric.setActiveMinutes(encryptionUtil.encrypt(metric.getActiveMinutes()));
-                    if (metric.getHeartRate() != null) metric.setHeartRate(encryptionUtil.encrypt(metric.getHeartRate()));
-                    // Fitbit doesn't always provide SpO2 in summary, but if it does:
-                    if (metric.getBloodOxygen() != null) metric.setBloodOxygen(encryptionUtil.encrypt(metric.getBloodOxygen()));
-                    if (metric.getSleepHours() != null) metric.setSleepHours(encryptionUtil.encrypt(metric.getSleepHours()));
-
-                    Optional<HealthMetricDaily> existing = metricRepository.findByUserIdAndDateAndSourceProvider(
-                            userId, metric.getDate(), provider);
-                    
-                    if (existing.isPresent()) {
-                        HealthMetricDaily m = existing.get();
-                        logger.info("Updating existing record for user {} on {}: Encrypting and saving.", 
-                            userId, metric.getDate());
-                        m.setSteps(metric.getSteps());
-                        m.setCalories(metric.getCalories());
-                        m.setDistance(metric.getDistance());
-                        m.setActiveMinutes(metric.getActiveMinutes());
-                        m.setHeartRate(metric.getHeartRate());
-                        m.setBloodOxygen(metric.getBloodOxygen());
-                        m.setSleepHours(metric.getSleepHours());
-                        m.setUpdatedAt(LocalDateTime.now());
-                        metricRepository.save(m);
+            SyncWindow window = syncWindowPolicy.windowFor(connection.lastSyncedAt(),
+                    request.initialSync(), LocalDateTime.now());
+            LocalDateTime end = window.end();
+
+            ConnectionCache.CachedConnection active = connection;
+            // Calls beyond the expected ones come out of the same lane's share
+            ProviderBudget budget = lane == SyncLane.PERIODIC
+                    ? extra -> rateLimiter.tryAcquirePeriodic(provider, userId, extra)
+                    : extra -> rateLimiter.tryAcquire(provider, userId, extra);
+            List<HealthMetricDaily> metrics = syncMetrics.time(SyncMetrics.Stage.PROVIDER_FETCH, provider,
+                    () -> fetch(active, window, budget));
+
+            // Metric rows, rollups, the outbox event and the new watermark commit together,
+            // so a sync costs one commit and the watermark never runs ahead of the data
+            List<LocalDate> changedDates = transactionTemplate.execute(status -> {
+                List<LocalDate> changed = metricPersistenceService.persist(userId, provider, metrics);
+                // Watermark is the end of the fetched window, not the completion time
+                connectionRepository.markSyncSucceeded(active.id(), end, (int) (System.currentTimeMillis() - startTime));
+                return changed;
+            });
+            if (!changedDates.isEmpty()) {
+                // Committed by now, so the next read reloads the new values
+                metricQueryService.invalidate(userId);
+            }
+            connectionCache.recordSynced(userId, provider, end);
+
+            logger.info("Sync completed for user {} and provider {}: {} of {} days changed", userId, provider, changedDates.size(), metrics.size());
+            if (request.initialSync()) {
+                backfillService.startAfterInitialSync(userId, provider, window.start().toLocalDate());
+            }
+            return new SyncOutcome(SyncOutcome.Status.SUCCEEDED, changedDates.size(), null);
+        } catch (ProviderRateLimitException e) {
+            logger.warn("Provider quota exhausted during sync: {}", e.getMessage());
+            // Not a failure: re-queue after the reset and don't count it as a retry
+            try {
+                syncDeferralService.defer(userId, request.toMessage(objectMapper), e.getRetryAfter(), lane);
+                connectionRepository.updateSyncStatus(connection.id(), UserHealthConnection.HealthSyncStatus.IDLE);
+            } catch (Exception ex) {
+                logger.error("Failed to defer rate-limited sync: {}", ex.getMessage());
+            }
+            return SyncOutcome.of(SyncOutcome.Status.DEFERRED);
+        } catch (Exception e) {
+            ProviderException.Kind failure = ProviderException.classify(e);
+            logger.error("Error processing health sync ({}): {}", failure, e.getMessage());
+            // Update error status if the connection was resolved before the failure
+            if (connection != null) {
+                try {
+                    if (failure == ProviderException.Kind.AUTH) {
+                        connectionCache.invalidate(userId, provider);
+                        if (connectionRepository.markAuthRevoked(connection.id(), connection.accessCiphertext(), e.getMessage()) == 0) {
+                            // Reconnected since the cached tokens were read; retry with the new ones
+                            logger.info("Tokens of user {} on {} changed during the sync; retrying", userId, provider);
+                            failure = ProviderException.Kind.TRANSIENT;
+                        }
                     } else {
-                        logger.info("Creating new record for user {} on {}: Enriched and Encrypted.", 
-                            userId, metric.getDate());
-                        metricRepository.save(metric);
+                        connectionRepository.markSyncFailed(connection.id(), e.getMessage());
                     }
+                } catch (Exception ex) {
+                    logger.error("Failed to update sync error state: {}", ex.getMessage());
                 }
-                
-                long duration = System.currentTimeMillis() - startTime;
-                connection.setLastSyncedAt(LocalDateTime.now());
-                connection.setSyncStatus(UserHealthConnection.HealthSyncStatus.SUCCESS);
-                connection.setLastSyncDuration((int) duration);
-                connection.setErrorMessage(null);
-                connection.setSyncRetryCount(0);
-                connectionRepository.save(connection);
-
-                // Notify data ingested
-                kafkaTemplate.send(ingestedTopic, objectMapper.writeValueAsString(Map.of(
-                        "userId", userId,
-                        "date", LocalDateTime.now().toString()
-                )));
-                
-                logger.info("Sync completed for user {} and provider {}", userId, provider);
             }
+            routeFailure(request, lane, failure, e.getMessage());
+            return SyncOutcome.failed(failure, e.getMessage());
+        }
+    }
 
+    /**
+     * Transient failures go to the retry topics (the retry lane re-throws its own instead),
+     * permanent ones to the dead-letter topic. Auth failures wait for the user to reconnect.
+     */
+    private void routeFailure(SyncRequest request, SyncLane lane, ProviderException.Kind failure, String error) {
+        try {
+            if (failure == ProviderException.Kind.TRANSIENT && lane != SyncLane.RETRY) {
+                syncRetryService.retry(request.userId(), request.provider(), request.toMessage(objectMapper), error);
+            } else if (failure == ProviderException.Kind.PERMANENT) {
+                syncRetryService.deadLetter(request.userId(), request.provider(), request.toMessage(objectMapper), failure, error);
+            }
         } catch (Exception e) {
-            logger.error("Error processing health sync: {}", e.getMessage());
-            // Update error status if possible
-            try {
-                Map<String, Object> payload = objectMapper.readValue(message, Map.class);
-                String userId = (String) payload.get("userId");
-                String providerName = (String) payload.get("provider");
-                UserHealthConnection.HealthProvider provider = UserHealthConnection.HealthProvider.valueOf(providerName);
-                connectionRepository.findByUserIdAndProvider(userId, provider).ifPresent(conn -> {
-                    conn.setSyncStatus(UserHealthConnection.HealthSyncStatus.FAILED);
-                    conn.setErrorMessage(e.getMessage());
-                    conn.setSyncRetryCount(conn.getSyncRetryCount() + 1);
-                    connectionRepository.save(conn);
-                });
-            } catch (Exception ex) {
-                logger.error("Failed to update sync error state: {}", ex.getMessage());
+            logger.error("Failed to hand off failed sync for user {}: {}", request.userId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches and stores one explicit window, for a backfill chunk. Unlike a sync it
+     * leaves the connection's watermark and sync status alone; the provider budget for
+     * the chunk's expected calls is the caller's to check, extra calls are charged to
+     * the backfill budget here.
+     */
+    public SyncOutcome importWindow(String userId, UserHealthConnection.HealthProvider provider, SyncWindow window) {
+        Optional<ConnectionCache.CachedConnection> connection = connectionCache.get(userId, provider);
+        if (connection.isEmpty() || connection.get().status() != UserHealthConnection.ConnectionStatus.CONNECTED) {
+            return SyncOutcome.of(SyncOutcome.Status.SKIPPED);
+        }
+        try {
+            ProviderBudget budget = extra -> rateLimiter.tryAcquireBackfill(provider, userId, extra);
+            List<LocalDate> changedDates = metricPersistenceService.persist(userId, provider, fetch(connection.get(), window, budget));
+            if (!changedDates.isEmpty()) {
+                metricQueryService.invalidate(userId);
             }
+            return new SyncOutcome(SyncOutcome.Status.SUCCEEDED, changedDates.size(), null);
+        } catch (ProviderRateLimitException e) {
+            return SyncOutcome.deferred(e.getRetryAfter());
+        } catch (Exception e) {
+            logger.error("Error importing {} to {} for user {} and provider {}: {}",
+                    window.start(), window.end(), userId, provider, e.getMessage());
+            return SyncOutcome.failed(ProviderException.classify(e), e.getMessage());
         }
     }
+
+    /**
+     * Calls the connection's provider for the window and keeps the days inside it.
+     * Tokens refreshed by Google Fit are stored before returning. Provider calls beyond
+     * {@link #expectedProviderCalls} are charged to {@code budget}.
+     */
+    private List<HealthMetricDaily> fetch(ConnectionCache.CachedConnection connection, SyncWindow window, ProviderBudget budget) {
+        String userId = connection.userId();
+        UserHealthConnection.HealthProvider provider = connection.provider();
+        LocalDateTime start = window.start();
+        LocalDateTime end = window.end();
+
+        // Tokens are already decrypted by the connection cache
+        String decryptedToken = connection.accessToken();
+        String decryptedRefreshToken = connection.refreshToken();
+
+        logger.debug("Decrypted Access Token for user {}: {}...", userId, decryptedToken.substring(0, Math.min(10, decryptedToken.length())));
+
+        if (provider == UserHealthConnection.HealthProvider.GOOGLE_FIT) {
+            logger.info("Calling Google Fit API for user {} from {} to {}", userId, start, end);
+            GoogleFitSyncService.SyncResult result = googleFitSyncService.fetchActivity(decryptedToken, decryptedRefreshToken, start, end, userId, budget);
+            List<HealthMetricDaily> metrics = inWindow(result.getMetrics(), window);
+            logger.info("Received {} daily metric buckets from Google Fit", metrics.size());
+
+            // Update tokens if refreshed; unchanged tokens are passed as null and left as they are
+            String newAccessToken = result.getNewAccessToken() != null && !result.getNewAccessToken().equals(decryptedToken)
+                    ? result.getNewAccessToken() : null;
+            String newRefreshToken = result.getNewRefreshToken() != null && !result.getNewRefreshToken().equals(decryptedRefreshToken)
+                    ? result.getNewRefreshToken() : null;
+            if (newAccessToken != null || newRefreshToken != null) {
+                logger.info("Updating refreshed tokens for user {}", userId);
+                connectionRepository.updateTokens(connection.id(),
+                        newAccessToken != null ? encryptionUtil.encrypt(newAccessToken) : null,
+                        newRefreshToken != null ? encryptionUtil.encrypt(newRefreshToken) : null,
+                        LocalDateTime.now());
+                connectionCache.invalidate(userId, provider);
+            }
+            return metrics;
+        }
+
+        logger.info("Calling Fitbit API for user {} from {} to {}", userId, start, end);
+        List<HealthMetricDaily> metrics = inWindow(fitbitSyncService.fetchActivity(decryptedToken, start, end, userId, budget), window);
+        logger.info("Received {} daily metric buckets from Fitbit", metrics.size());
+        return metrics;
+    }
+
+    /** Outcome tag for the sync meters; successful syncs that wrote nothing (no data or no changes) are counted apart. */
+    private static String outcomeTag(SyncOutcome outcome) {
+        if (outcome == null) return "exception";
+        if (outcome.status() == SyncOutcome.Status.SUCCEEDED && outcome.metricsWritten() == 0) return "empty";
+        if (outcome.failure() == ProviderException.Kind.AUTH) return "auth_revoked";
+        if (outcome.failure() == ProviderException.Kind.TRANSIENT) return "retrying";
+        return outcome.status().name().toLowerCase(Locale.ROOT);
+    }
+
+    private int expectedProviderCalls(UserHealthConnection.HealthProvider provider) {
+        return switch (provider) {
+            case GOOGLE_FIT -> googleFitSyncService.requestsPerSync();
+            case FITBIT -> fitbitSyncService.requestsPerSync();
+            default -> 0;
+        };
+    }
+
+    private List<HealthMetricDaily> inWindow(List<HealthMetricDaily> metrics, SyncWindow window) {
+        return metrics.stream().filter(metric -> window.containsDay(metric.getDate())).toList();
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        org.apache.kafka.common.header.Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
 }
@@ -0,0 +1,50 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import com.healthfood.health_sync_engine.service.MetricQueryService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drops cached metric reads on every instance when a user's rows change, not just on the
+ * instance that ran the sync. Each instance reads {@code health.data.ingested} in a consumer
+ * group of its own, starting from the latest offset, so every event reaches every cache.
+ * The group is never resumed, so its offsets are not committed (see
+ * {@code MetricCacheConfig}); nothing is acknowledged here.
+ * A read can be stale for the outbox relay interval plus this listener's lag (well under
+ * a second normally); the cache TTL only bounds staleness while Kafka is unreachable.
+ */
+@Component
+public class MetricCacheInvalidationListener {
+    private static final Logger logger = LoggerFactory.getLogger(MetricCacheInvalidationListener.class);
+
+    private final MetricQueryService metricQueryService;
+
+    public MetricCacheInvalidationListener(MetricQueryService metricQueryService) {
+        this.metricQueryService = metricQueryService;
+    }
+
+    @KafkaListener(id = "health-metrics-read-cache", idIsGroup = false,
+            topics = "${app.health.ingested.topic}",
+            groupId = "${app.health.metrics.read-cache.invalidation.group-id-prefix}-${random.uuid}",
+            containerFactory = "metricCacheInvalidationContainerFactory",
+            concurrency = "1",
+            properties = {"auto.offset.reset=latest", "enable.auto.commit=false"})
+    public void onIngested(List<ConsumerRecord<String, String>> records) {
+        // Outbox events are keyed by user id
+        Set<String> userIds = new LinkedHashSet<>();
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.key() != null) {
+                userIds.add(record.key());
+            }
+        }
+        userIds.forEach(metricQueryService::invalidate);
+        logger.debug("Invalidated cached metric reads for {} users", userIds.size());
+    }
+}
@@ -0,0 +1,121 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight bookkeeping per (userId, provider). The first request for a key
+ * becomes the flight; requests arriving while it is queued or running are merged
+ * into it instead of running a second, overlapping sync:
+ * <ul>
+ *   <li>a request the flight already covers is dropped;</li>
+ *   <li>an initial sync arriving for a queued incremental flight widens that flight;</li>
+ *   <li>an initial sync arriving while an incremental one runs is scheduled as a
+ *       single follow-up run.</li>
+ * </ul>
+ * Flights are tracked in memory, so coalescing is per instance only. Requests are
+ * keyed by userId, but the interactive, periodic and retry lanes are separate topics
+ * consumed by separate groups, so one user's requests can run on different instances
+ * at once. That overlap is tolerated rather than prevented: daily rows are upserted
+ * on (user, date, provider) and rollups are adjusted under an advisory lock per user and provider,
+ * so it costs duplicate provider calls, not wrong data.
+ */
+@Component
+public class SyncCoalescer {
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Counter dropped;
+    private final Counter widened;
+
+    public SyncCoalescer(MeterRegistry meterRegistry) {
+        this.dropped = Counter.builder("health.sync.coalesced")
+                .description("Sync requests absorbed by an in-flight sync for the same user and provider")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        this.widened = Counter.builder("health.sync.coalesced")
+                .description("Sync requests absorbed by an in-flight sync for the same user and provider")
+                .tag("outcome", "widened")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers a request.
+     *
+     * @return true if the caller owns a new flight and must run it via {@link #start}/{@link #finish};
+     *         false if the request was merged into an existing flight
+     */
+    public boolean offer(SyncRequest request) {
+        boolean[] accepted = {false};
+        flights.compute(key(request), (key, flight) -> {
+            if (flight == null) {
+                accepted[0] = true;
+                return new Flight(request.initialSync());
+            }
+            flight.merge(request.initialSync());
+            return flight;
+        });
+        return accepted[0];
+    }
+
+    /** Marks the flight as running and returns whether it must run as an initial sync. */
+    public boolean start(SyncRequest request) {
+        Flight flight = flights.computeIfPresent(key(request), (key, existing) -> {
+            existing.running = true;
+            return existing;
+        });
+        return flight != null ? flight.initialSync : request.initialSync();
+    }
+
+    /**
+     * Completes the current run.
+     *
+     * @return the initialSync flag of a follow-up run that was merged in meanwhile, or null when the flight is over
+     */
+    public Boolean finish(SyncRequest request) {
+        Boolean[] next = {null};
+        flights.computeIfPresent(key(request), (key, flight) -> {
+            if (!flight.rerun) return null;
+            flight.rerun = false;
+            flight.initialSync = true;
+            next[0] = Boolean.TRUE;
+            return flight;
+        });
+        return next[0];
+    }
+
+    /** Drops the flight without a follow-up, e.g. when the run failed unexpectedly. */
+    public void abandon(SyncRequest request) {
+        flights.remove(key(request));
+    }
+
+    private String key(SyncRequest request) {
+        return request.userId() + ":" + request.provider();
+    }
+
+    // Mutated only inside ConcurrentHashMap.compute*, which serialises access per key
+    private final class Flight {
+        private boolean initialSync;
+        private boolean running;
+        private boolean rerun;
+
+        private Flight(boolean initialSync) {
+            this.initialSync = initialSync;
+        }
+
+        private void merge(boolean requestInitial) {
+            if (!requestInitial || initialSync) {
+                dropped.increment();
+            } else if (!running) {
+                initialSync = true;
+                widened.increment();
+            } else if (!rerun) {
+                rerun = true;
+                widened.increment();
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import java.util.Locale;
+
+/**
+ * Priority lane a sync runs in. Each lane has its own listener container or executor,
+ * so routine hourly syncs can't queue in front of a user who is waiting.
+ */
+public enum SyncLane {
+    /** health.sync.requested: syncs requested by other services, including initial syncs after a connect. */
+    INTERACTIVE,
+    /** Jobs started through the trigger endpoint. */
+    MANUAL,
+    /** health.sync.periodic: the hourly fan-out. */
+    PERIODIC,
+    /** health.sync.failed and its retry topics: transient failures of the other lanes, retried with backoff. */
+    RETRY;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    /** Value of the {@code lane} tag on the sync meters. */
+    public String tag() {
+        return tag;
+    }
+}
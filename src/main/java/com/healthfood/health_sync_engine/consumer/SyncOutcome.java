@@ -0,0 +1,44 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import com.healthfood.health_sync_engine.service.ProviderException;
+
+import java.time.Duration;
+
+/**
+ * Result of processing one sync request. {@code failure} classifies a FAILED outcome;
+ * {@code retryAfter} is how long a DEFERRED one should wait, when known.
+ */
+public record SyncOutcome(Status status, int metricsWritten, String error, ProviderException.Kind failure, Duration retryAfter) {
+
+    public enum Status {
+        /** Metrics were fetched and stored. */
+        SUCCEEDED,
+        /** Nothing to do, e.g. no active connection. */
+        SKIPPED,
+        /** Provider budget exhausted or provider unavailable; the request was re-queued for later. */
+        DEFERRED,
+        /** Merged into a sync already queued or running for the same user and provider. */
+        COALESCED,
+        FAILED
+    }
+
+    public SyncOutcome(Status status, int metricsWritten, String error, ProviderException.Kind failure) {
+        this(status, metricsWritten, error, failure, null);
+    }
+
+    public SyncOutcome(Status status, int metricsWritten, String error) {
+        this(status, metricsWritten, error, null);
+    }
+
+    public static SyncOutcome of(Status status) {
+        return new SyncOutcome(status, 0, null);
+    }
+
+    public static SyncOutcome deferred(Duration retryAfter) {
+        return new SyncOutcome(Status.DEFERRED, 0, null, null, retryAfter);
+    }
+
+    public static SyncOutcome failed(ProviderException.Kind failure, String error) {
+        return new SyncOutcome(Status.FAILED, 0, error, failure);
+    }
+}
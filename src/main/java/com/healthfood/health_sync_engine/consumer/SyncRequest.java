@@ -0,0 +1,29 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.util.Map;
+
+/**
+ * Parsed form of a health.sync.requested message.
+ */
+public record SyncRequest(String userId, UserHealthConnection.HealthProvider provider, boolean initialSync) {
+
+    public static SyncRequest parse(ObjectMapper objectMapper, String message) throws JsonProcessingException {
+        Map<?, ?> payload = objectMapper.readValue(message, Map.class);
+        String userId = (String) payload.get("userId");
+        String providerName = (String) payload.get("provider");
+        Boolean isInitialSync = (Boolean) payload.get("isInitialSync");
+        return new SyncRequest(userId, UserHealthConnection.HealthProvider.valueOf(providerName), Boolean.TRUE.equals(isInitialSync));
+    }
+
+    public String toMessage(ObjectMapper objectMapper) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(Map.of(
+                "userId", userId,
+                "provider", provider.name(),
+                "isInitialSync", initialSync
+        ));
+    }
+}
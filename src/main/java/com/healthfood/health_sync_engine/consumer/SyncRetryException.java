@@ -0,0 +1,11 @@
+package com.healthfood.health_sync_engine.consumer;
+
+/**
+ * Thrown by the retry listener for a sync that failed transiently again, so the
+ * retry topic configuration forwards it to the next retry topic or the dead-letter topic.
+ */
+public class SyncRetryException extends RuntimeException {
+    public SyncRetryException(String message) {
+        super(message);
+    }
+}
@@ -1,23 +1,61 @@
 package com.healthfood.health_sync_engine.controller;
 
 import com.healthfood.health_sync_engine.consumer.HealthSyncConsumer;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.consumer.SyncRequest;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.RollupRebuild;
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.service.BackfillService;
+import com.healthfood.health_sync_engine.service.MetricQueryService;
+import com.healthfood.health_sync_engine.service.MetricRollupService;
+import com.healthfood.health_sync_engine.service.RollupRebuildService;
+import com.healthfood.health_sync_engine.service.SyncJob;
+import com.healthfood.health_sync_engine.service.SyncJobService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/health-sync")
 public class HealthSyncController {
     private final HealthSyncConsumer healthSyncConsumer;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SyncJobService syncJobService;
+    private final MetricQueryService metricQueryService;
+    private final MetricRollupService metricRollupService;
+    private final BackfillService backfillService;
+    private final RollupRebuildService rollupRebuildService;
 
-    public HealthSyncController(HealthSyncConsumer healthSyncConsumer) {
+    @Value("${app.health.metrics.read.max-days:366}")
+    private long maxRangeDays;
+
+    public HealthSyncController(HealthSyncConsumer healthSyncConsumer,
+                                SyncJobService syncJobService,
+                                MetricQueryService metricQueryService,
+                                MetricRollupService metricRollupService,
+                                BackfillService backfillService,
+                                RollupRebuildService rollupRebuildService) {
         this.healthSyncConsumer = healthSyncConsumer;
+        this.syncJobService = syncJobService;
+        this.metricQueryService = metricQueryService;
+        this.metricRollupService = metricRollupService;
+        this.backfillService = backfillService;
+        this.rollupRebuildService = rollupRebuildService;
     }
 
     @GetMapping("/health")
@@ -25,14 +63,187 @@ public class HealthSyncController {
         return Map.of("status", "UP", "service", "health-sync-engine");
     }
 
+    /**
+     * Queues a sync and returns immediately with a job id; poll {@code /jobs/{jobId}} for the result.
+     */
     @PostMapping("/trigger")
-    public Map<String, String> triggerSync(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<Map<String, Object>> triggerSync(@RequestBody Map<String, Object> payload) {
+        SyncRequest request;
         try {
-            String message = objectMapper.writeValueAsString(payload);
-            healthSyncConsumer.consume(message);
-            return Map.of("status", "success", "message", "Sync triggered manually");
+            request = new SyncRequest((String) payload.get("userId"),
+                    UserHealthConnection.HealthProvider.valueOf((String) payload.get("provider")),
+                    Boolean.TRUE.equals(payload.get("isInitialSync")));
         } catch (Exception e) {
-            return Map.of("status", "error", "message", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Invalid sync request: " + e.getMessage()));
+        }
+        if (request.userId() == null || !healthSyncConsumer.supports(request.provider())) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Unsupported sync request"));
+        }
+
+        try {
+            SyncJob job = syncJobService.submit(request);
+            return ResponseEntity.accepted().body(Map.of(
+                    "status", "accepted",
+                    "jobId", job.getId(),
+                    "statusUrl", "/api/health-sync/jobs/" + job.getId()));
+        } catch (TaskRejectedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("status", "error", "message", "Too many sync jobs in progress, try again later"));
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<SyncJob> jobStatus(@PathVariable String jobId) {
+        return syncJobService.find(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Decrypted daily metrics for a user, {@code from} and {@code to} inclusive
+     * (default: the last 30 days), optionally for one provider.
+     */
+    @GetMapping("/users/{userId}/metrics")
+    public ResponseEntity<Map<String, Object>> userMetrics(
+            @PathVariable String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String provider) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end) || ChronoUnit.DAYS.between(start, end) >= maxRangeDays) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error",
+                    "message", "Range must be ordered and at most " + maxRangeDays + " days"));
+        }
+
+        UserHealthConnection.HealthProvider sourceProvider = null;
+        if (provider != null) {
+            try {
+                sourceProvider = UserHealthConnection.HealthProvider.valueOf(provider);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Unknown provider: " + provider));
+            }
+        }
+
+        List<MetricQueryService.DailyMetric> metrics = metricQueryService.find(userId, sourceProvider, start, end);
+        return ResponseEntity.ok(Map.of(
+                "userId", userId,
+                "from", start.toString(),
+                "to", end.toString(),
+                "metrics", metrics));
+    }
+
+    /**
+     * Weekly or monthly totals and averages for a user, for periods overlapping
+     * {@code from}..{@code to} (default: the last year), optionally for one provider.
+     */
+    @GetMapping("/users/{userId}/rollups")
+    public ResponseEntity<Map<String, Object>> userRollups(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "WEEK") String period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String provider) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Range must be ordered"));
+        }
+
+        HealthMetricRollup.Period rollupPeriod;
+        UserHealthConnection.HealthProvider sourceProvider;
+        try {
+            rollupPeriod = HealthMetricRollup.Period.valueOf(period);
+            sourceProvider = provider != null ? UserHealthConnection.HealthProvider.valueOf(provider) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Invalid period or provider"));
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "userId", userId,
+                "period", rollupPeriod.name(),
+                "rollups", metricRollupService.find(userId, sourceProvider, rollupPeriod, start, end)));
+    }
+
+    /**
+     * Queues a recomputation of a user's rollups from the daily rows, for one provider or
+     * all of them; progress can be polled with GET on the same path.
+     */
+    @PostMapping("/users/{userId}/rollups/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRollups(@PathVariable String userId,
+                                                              @RequestParam(required = false) String provider) {
+        List<UserHealthConnection.HealthProvider> providers;
+        try {
+            providers = provider != null
+                    ? List.of(UserHealthConnection.HealthProvider.valueOf(provider))
+                    : List.of(UserHealthConnection.HealthProvider.values());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Unknown provider: " + provider));
+        }
+
+        for (UserHealthConnection.HealthProvider each : providers) {
+            rollupRebuildService.enqueue(userId, each);
+        }
+        return ResponseEntity.accepted().body(Map.of("status", "accepted", "userId", userId, "providers", providers));
+    }
+
+    @GetMapping("/users/{userId}/rollups/rebuild")
+    public ResponseEntity<RollupRebuild> rollupRebuildStatus(@PathVariable String userId, @RequestParam String provider) {
+        UserHealthConnection.HealthProvider sourceProvider;
+        try {
+            sourceProvider = UserHealthConnection.HealthProvider.valueOf(provider);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return rollupRebuildService.find(userId, sourceProvider)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /** Queues a rollup rebuild for every connection, e.g. after a change to the rollup format. */
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildAllRollups() {
+        return ResponseEntity.accepted().body(Map.of("status", "accepted", "queued", rollupRebuildService.enqueueAll()));
+    }
+
+    /**
+     * Starts (or widens, or resumes) an import of the last {@code days} days of history
+     * for one provider; progress can be polled with GET on the same path.
+     */
+    @PostMapping("/users/{userId}/backfill")
+    public ResponseEntity<Map<String, Object>> startBackfill(@PathVariable String userId,
+                                                             @RequestParam String provider,
+                                                             @RequestParam(defaultValue = "365") int days) {
+        UserHealthConnection.HealthProvider sourceProvider;
+        try {
+            sourceProvider = UserHealthConnection.HealthProvider.valueOf(provider);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Unknown provider: " + provider));
+        }
+        if (!healthSyncConsumer.supports(sourceProvider)) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error", "message", "Unsupported provider: " + provider));
+        }
+        if (days < 1 || days > backfillService.maxDays()) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error",
+                    "message", "days must be between 1 and " + backfillService.maxDays()));
+        }
+
+        // Up to and including today; days already stored are skipped as unchanged
+        SyncBackfill backfill = backfillService.start(userId, sourceProvider, days, LocalDate.now().plusDays(1));
+        return ResponseEntity.accepted().body(Map.of("status", "accepted", "backfill", backfill));
+    }
+
+    @GetMapping("/users/{userId}/backfill")
+    public ResponseEntity<SyncBackfill> backfillStatus(@PathVariable String userId, @RequestParam String provider) {
+        UserHealthConnection.HealthProvider sourceProvider;
+        try {
+            sourceProvider = UserHealthConnection.HealthProvider.valueOf(provider);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+        return backfillService.find(userId, sourceProvider)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 }
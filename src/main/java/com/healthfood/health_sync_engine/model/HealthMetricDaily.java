@@ -7,7 +7,10 @@ import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
 @Entity
-@Table(name = "health_metrics_daily")
+@Table(name = "health_metrics_daily", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_health_metrics_daily_user_date_provider",
+                columnNames = {"user_id", "date", "source_provider"})
+})
 @Data
 public class HealthMetricDaily {
     @Id
@@ -41,6 +44,18 @@ public class HealthMetricDaily {
     @Column(name = "sleep_hours")
     private String sleepHours;
 
+    /**
+     * All metric values sealed as one record (see MetricPayloadCodec). When set, the
+     * per-field columns above are null; rows written before the payload format only
+     * have the per-field columns.
+     */
+    @Column(name = "payload")
+    private byte[] payload;
+
+    /** Keyed hash of the plaintext values; a sync skips days whose hash is unchanged. */
+    @Column(name = "content_hash")
+    private byte[] contentHash;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -0,0 +1,64 @@
+package com.healthfood.health_sync_engine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * Weekly or monthly totals of a user's daily metrics for one provider, sealed like
+ * the daily rows (see MetricPayloadCodec#sealTotals).
+ */
+@Entity
+@Table(name = "health_metric_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_health_metric_rollups_user_provider_period",
+                columnNames = {"user_id", "source_provider", "period", "period_start"})
+})
+@Data
+public class HealthMetricRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source_provider", nullable = false)
+    @JdbcTypeCode(SqlTypes.NAMED_ENUM)
+    private UserHealthConnection.HealthProvider sourceProvider;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Period period;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Column(nullable = false)
+    private byte[] payload;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public enum Period {
+        /** ISO week, starting Monday. */
+        WEEK,
+        MONTH;
+
+        public LocalDate startOf(LocalDate day) {
+            return this == WEEK
+                    ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    : day.withDayOfMonth(1);
+        }
+
+        /** First day after the period starting on {@code start}. */
+        public LocalDate nextStart(LocalDate start) {
+            return this == WEEK ? start.plusWeeks(1) : start.plusMonths(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.healthfood.health_sync_engine.model;
+
+/**
+ * Running sums over a set of days, per metric field, with the number of days that
+ * reported each field so averages skip missing values. Days can be added and
+ * removed, which lets rollups be adjusted by the change of a single day.
+ */
+public final class MetricTotals {
+    /** Fields in {@link MetricValues} component order. */
+    public static final int FIELDS = 7;
+
+    private int days;
+    private final double[] sums = new double[FIELDS];
+    private final int[] counts = new int[FIELDS];
+
+    public MetricTotals() {
+    }
+
+    public MetricTotals(int days, double[] sums, int[] counts) {
+        this.days = days;
+        System.arraycopy(sums, 0, this.sums, 0, FIELDS);
+        System.arraycopy(counts, 0, this.counts, 0, FIELDS);
+    }
+
+    public void add(MetricValues values) {
+        apply(values, 1);
+    }
+
+    public void remove(MetricValues values) {
+        apply(values, -1);
+    }
+
+    public void add(MetricTotals other) {
+        days += other.days;
+        for (int i = 0; i < FIELDS; i++) {
+            sums[i] += other.sums[i];
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public int days() {
+        return days;
+    }
+
+    public double sum(int field) {
+        return sums[field];
+    }
+
+    public int count(int field) {
+        return counts[field];
+    }
+
+    /** Sums of each field, null where no day reported it. */
+    public MetricValues sums() {
+        return new MetricValues(
+                counts[0] > 0 ? Math.round(sums[0]) : null,
+                sumOrNull(1), sumOrNull(2),
+                counts[3] > 0 ? Math.round(sums[3]) : null,
+                sumOrNull(4), sumOrNull(5), sumOrNull(6));
+    }
+
+    /** Per-day averages over the days that reported each field. */
+    public MetricValues averages() {
+        return new MetricValues(
+                counts[0] > 0 ? Math.round(sums[0] / counts[0]) : null,
+                averageOrNull(1), averageOrNull(2),
+                counts[3] > 0 ? Math.round(sums[3] / counts[3]) : null,
+                averageOrNull(4), averageOrNull(5), averageOrNull(6));
+    }
+
+    private void apply(MetricValues values, int sign) {
+        days += sign;
+        accumulate(0, values.steps(), sign);
+        accumulate(1, values.calories(), sign);
+        accumulate(2, values.distance(), sign);
+        accumulate(3, values.activeMinutes(), sign);
+        accumulate(4, values.heartRate(), sign);
+        accumulate(5, values.bloodOxygen(), sign);
+        accumulate(6, values.sleepHours(), sign);
+    }
+
+    private void accumulate(int field, Number value, int sign) {
+        if (value == null) return;
+        sums[field] += sign * value.doubleValue();
+        counts[field] += sign;
+    }
+
+    private Double sumOrNull(int field) {
+        return counts[field] > 0 ? sums[field] : null;
+    }
+
+    private Double averageOrNull(int field) {
+        return counts[field] > 0 ? sums[field] / counts[field] : null;
+    }
+}
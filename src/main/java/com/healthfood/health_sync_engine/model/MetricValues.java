@@ -0,0 +1,40 @@
+package com.healthfood.health_sync_engine.model;
+
+/**
+ * Plaintext, typed values of one daily metric row. Fields are null when the
+ * provider did not report them.
+ */
+public record MetricValues(Long steps,
+                           Double calories,
+                           Double distance,
+                           Long activeMinutes,
+                           Double heartRate,
+                           Double bloodOxygen,
+                           Double sleepHours) {
+
+    /** Reads the plaintext string fields the provider services fill in. */
+    public static MetricValues of(HealthMetricDaily metric) {
+        return new MetricValues(
+                parseLong(metric.getSteps()),
+                parseDouble(metric.getCalories()),
+                parseDouble(metric.getDistance()),
+                parseLong(metric.getActiveMinutes()),
+                parseDouble(metric.getHeartRate()),
+                parseDouble(metric.getBloodOxygen()),
+                parseDouble(metric.getSleepHours()));
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Math.round(Double.parseDouble(value));
+        }
+    }
+
+    private static Double parseDouble(String value) {
+        if (value == null || value.isEmpty()) return null;
+        return Double.parseDouble(value);
+    }
+}
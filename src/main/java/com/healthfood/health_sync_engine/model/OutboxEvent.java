@@ -0,0 +1,31 @@
+package com.healthfood.health_sync_engine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * A Kafka message written in the same transaction as the data it announces and
+ * published later by the outbox relay. Rows are deleted once the broker has
+ * acknowledged them.
+ */
+@Entity
+@Table(name = "outbox_events")
+@Data
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(name = "message_key")
+    private String messageKey;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
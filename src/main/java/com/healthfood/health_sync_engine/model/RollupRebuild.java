@@ -0,0 +1,62 @@
+package com.healthfood.health_sync_engine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * A queued recomputation of one connection's rollups from its daily rows. Rows are
+ * leased by the instance running them, so a rebuild interrupted by a crash is picked up
+ * again once its lease expires.
+ */
+@Entity
+@Table(name = "rollup_rebuilds", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollup_rebuilds_user_provider", columnNames = {"user_id", "provider"})
+})
+@Data
+public class RollupRebuild {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.NAMED_ENUM)
+    private UserHealthConnection.HealthProvider provider;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    /** Rollups written by the last completed run. */
+    @Column(nullable = false)
+    private int rollups;
+
+    /** Consecutive failed runs; reset when the rebuild is queued again. */
+    @Column(nullable = false)
+    private int failures;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "next_run_at", nullable = false)
+    private LocalDateTime nextRunAt = LocalDateTime.now();
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public enum Status {
+        PENDING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,75 @@
+package com.healthfood.health_sync_engine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * Progress of a historical import for one connection. The import walks backwards from
+ * {@code cursorDate} to {@code oldestDate} one chunk at a time; the cursor is saved
+ * after every chunk, so an interrupted backfill resumes with the next chunk.
+ */
+@Entity
+@Table(name = "sync_backfills", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_sync_backfills_user_provider", columnNames = {"user_id", "provider"})
+})
+@Data
+public class SyncBackfill {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.NAMED_ENUM)
+    private UserHealthConnection.HealthProvider provider;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.ACTIVE;
+
+    /** Earliest day to import. */
+    @Column(name = "oldest_date", nullable = false)
+    private LocalDate oldestDate;
+
+    /** Days before this one are still to be imported. */
+    @Column(name = "cursor_date", nullable = false)
+    private LocalDate cursorDate;
+
+    @Column(name = "chunks_done", nullable = false)
+    private int chunksDone;
+
+    /** Days whose stored values were added or changed by the import. */
+    @Column(name = "days_changed", nullable = false)
+    private int daysChanged;
+
+    /** Consecutive failed chunks; reset by a successful one. */
+    @Column(nullable = false)
+    private int failures;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "next_run_at", nullable = false)
+    private LocalDateTime nextRunAt = LocalDateTime.now();
+
+    /** Set while an instance works on a chunk; an expired lease makes the backfill claimable again. */
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public enum Status {
+        ACTIVE, COMPLETED, FAILED
+    }
+}
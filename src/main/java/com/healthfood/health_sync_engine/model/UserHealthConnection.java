@@ -3,11 +3,14 @@ package com.healthfood.health_sync_engine.model;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
+// Entity updates write only the changed columns, not the token TEXT columns every time
 @Entity
 @Table(name = "user_health_connections")
+@DynamicUpdate
 @Data
 public class UserHealthConnection {
     @Id
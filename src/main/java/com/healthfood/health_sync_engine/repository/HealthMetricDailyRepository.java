@@ -5,10 +5,19 @@ import com.healthfood.health_sync_engine.model.UserHealthConnection;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface HealthMetricDailyRepository extends JpaRepository<HealthMetricDaily, String> {
+public interface HealthMetricDailyRepository extends JpaRepository<HealthMetricDaily, String>, HealthMetricDailyRepositoryCustom {
     Optional<HealthMetricDaily> findByUserIdAndDateAndSourceProvider(
             String userId, LocalDateTime date, UserHealthConnection.HealthProvider provider);
+
+    // Range reads are served by the (user_id, date, source_provider) unique index
+
+    List<HealthMetricDaily> findByUserIdAndDateBetweenOrderByDateAscSourceProviderAsc(
+            String userId, LocalDateTime from, LocalDateTime to);
+
+    List<HealthMetricDaily> findByUserIdAndSourceProviderAndDateBetweenOrderByDateAsc(
+            String userId, UserHealthConnection.HealthProvider provider, LocalDateTime from, LocalDateTime to);
 }
@@ -0,0 +1,51 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface HealthMetricDailyRepositoryCustom {
+    /**
+     * Inserts or updates all given rows in a single JDBC batch, keyed on
+     * (user_id, date, source_provider). Values are written as-is, so callers
+     * must encrypt them beforehand. An existing row whose {@code content_hash}
+     * equals the new one is left untouched.
+     *
+     * @return number of rows sent to the database
+     */
+    int upsertAll(List<HealthMetricDaily> metrics);
+
+    /**
+     * Stored rows by day for one user and provider, {@code from} and {@code to} inclusive,
+     * with only the id, content hash and (still encrypted) value columns filled in.
+     */
+    Map<LocalDateTime, HealthMetricDaily> findStoredRows(String userId, UserHealthConnection.HealthProvider provider,
+                                                         LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Creates the monthly partition for the month of {@code month} if it is missing.
+     *
+     * @return whether a partition was created
+     */
+    boolean ensurePartition(LocalDate month);
+
+    /**
+     * Detaches the monthly partitions ending on or before {@code cutoff} and moves them
+     * to the {@code health_archive} schema.
+     *
+     * @return number of partitions archived
+     */
+    int archivePartitionsBefore(LocalDate cutoff);
+
+    /**
+     * First day after the newest partition in the {@code health_archive} schema, i.e. the
+     * live table holds every day from here on.
+     *
+     * @return the cutoff, or null if nothing has been archived
+     */
+    LocalDate archivedBefore();
+}
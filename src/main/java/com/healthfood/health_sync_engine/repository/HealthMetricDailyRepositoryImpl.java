@@ -0,0 +1,139 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class HealthMetricDailyRepositoryImpl implements HealthMetricDailyRepositoryCustom {
+    private static final int BATCH_SIZE = 100;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO health_metrics_daily
+                (id, user_id, date, source_provider, payload, content_hash, steps, calories, distance,
+                 active_minutes, heart_rate, blood_oxygen, sleep_hours, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (user_id, date, source_provider) DO UPDATE SET
+                payload = EXCLUDED.payload,
+                content_hash = EXCLUDED.content_hash,
+                steps = EXCLUDED.steps,
+                calories = EXCLUDED.calories,
+                distance = EXCLUDED.distance,
+                active_minutes = EXCLUDED.active_minutes,
+                heart_rate = EXCLUDED.heart_rate,
+                blood_oxygen = EXCLUDED.blood_oxygen,
+                sleep_hours = EXCLUDED.sleep_hours,
+                updated_at = EXCLUDED.updated_at
+            WHERE health_metrics_daily.content_hash IS DISTINCT FROM EXCLUDED.content_hash
+            """;
+
+    private static final String STORED_ROWS_SQL = """
+            SELECT id, date, content_hash, payload, steps, calories, distance, active_minutes,
+                   heart_rate, blood_oxygen, sleep_hours
+            FROM health_metrics_daily
+            WHERE user_id = ? AND source_provider = ? AND date BETWEEN ? AND ?
+            """;
+
+    // Functions created by the V3 migration
+    private static final String ENSURE_PARTITION_SQL = "SELECT ensure_health_metrics_daily_partition(?)";
+    private static final String ARCHIVE_PARTITIONS_SQL = "SELECT archive_health_metrics_daily_partitions(?)";
+    private static final String ARCHIVED_BEFORE_SQL = """
+            SELECT max(to_date(substr(c.relname, 22), 'YYYY_MM')) + interval '1 month'
+            FROM pg_class c
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            WHERE n.nspname = 'health_archive'
+              AND c.relkind = 'r'
+              AND c.relname ~ '^health_metrics_daily_[0-9]{4}_[0-9]{2}$'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HealthMetricDailyRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int upsertAll(List<HealthMetricDaily> metrics) {
+        if (metrics.isEmpty()) return 0;
+
+        // A multi-row ON CONFLICT statement may not touch the same key twice, so keep the last value per key
+        Map<String, HealthMetricDaily> unique = new LinkedHashMap<>();
+        for (HealthMetricDaily metric : metrics) {
+            unique.put(metric.getUserId() + "|" + metric.getDate() + "|" + metric.getSourceProvider(), metric);
+        }
+        List<HealthMetricDaily> rows = new ArrayList<>(unique.values());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, BATCH_SIZE, (ps, metric) -> {
+            ps.setString(1, metric.getId() != null ? metric.getId() : UUID.randomUUID().toString());
+            ps.setString(2, metric.getUserId());
+            ps.setTimestamp(3, Timestamp.valueOf(metric.getDate()));
+            ps.setString(4, metric.getSourceProvider().name());
+            ps.setBytes(5, metric.getPayload());
+            ps.setBytes(6, metric.getContentHash());
+            ps.setString(7, metric.getSteps());
+            ps.setString(8, metric.getCalories());
+            ps.setString(9, metric.getDistance());
+            ps.setString(10, metric.getActiveMinutes());
+            ps.setString(11, metric.getHeartRate());
+            ps.setString(12, metric.getBloodOxygen());
+            ps.setString(13, metric.getSleepHours());
+            ps.setTimestamp(14, metric.getCreatedAt() != null ? Timestamp.valueOf(metric.getCreatedAt()) : now);
+            ps.setTimestamp(15, now);
+        });
+        return rows.size();
+    }
+
+    @Override
+    public Map<LocalDateTime, HealthMetricDaily> findStoredRows(String userId, UserHealthConnection.HealthProvider provider,
+                                                                LocalDateTime from, LocalDateTime to) {
+        Map<LocalDateTime, HealthMetricDaily> rows = new HashMap<>();
+        jdbcTemplate.query(STORED_ROWS_SQL,
+                rs -> {
+                    HealthMetricDaily row = new HealthMetricDaily();
+                    row.setId(rs.getString("id"));
+                    row.setUserId(userId);
+                    row.setDate(rs.getTimestamp("date").toLocalDateTime());
+                    row.setSourceProvider(provider);
+                    row.setContentHash(rs.getBytes("content_hash"));
+                    row.setPayload(rs.getBytes("payload"));
+                    row.setSteps(rs.getString("steps"));
+                    row.setCalories(rs.getString("calories"));
+                    row.setDistance(rs.getString("distance"));
+                    row.setActiveMinutes(rs.getString("active_minutes"));
+                    row.setHeartRate(rs.getString("heart_rate"));
+                    row.setBloodOxygen(rs.getString("blood_oxygen"));
+                    row.setSleepHours(rs.getString("sleep_hours"));
+                    rows.put(row.getDate(), row);
+                },
+                userId, provider.name(), Timestamp.valueOf(from), Timestamp.valueOf(to));
+        return rows;
+    }
+
+    @Override
+    public boolean ensurePartition(LocalDate month) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(ENSURE_PARTITION_SQL, Boolean.class, Date.valueOf(month)));
+    }
+
+    @Override
+    public int archivePartitionsBefore(LocalDate cutoff) {
+        Integer archived = jdbcTemplate.queryForObject(ARCHIVE_PARTITIONS_SQL, Integer.class, Date.valueOf(cutoff));
+        return archived != null ? archived : 0;
+    }
+
+    @Override
+    public LocalDate archivedBefore() {
+        Timestamp cutoff = jdbcTemplate.queryForObject(ARCHIVED_BEFORE_SQL, Timestamp.class);
+        return cutoff != null ? cutoff.toLocalDateTime().toLocalDate() : null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface HealthMetricRollupRepository extends JpaRepository<HealthMetricRollup, String>, HealthMetricRollupRepositoryCustom {
+    List<HealthMetricRollup> findByUserIdAndPeriodAndPeriodStartBetweenOrderByPeriodStartAscSourceProviderAsc(
+            String userId, HealthMetricRollup.Period period, LocalDate from, LocalDate to);
+
+    List<HealthMetricRollup> findByUserIdAndSourceProviderAndPeriodAndPeriodStartBetweenOrderByPeriodStartAsc(
+            String userId, UserHealthConnection.HealthProvider provider, HealthMetricRollup.Period period,
+            LocalDate from, LocalDate to);
+}
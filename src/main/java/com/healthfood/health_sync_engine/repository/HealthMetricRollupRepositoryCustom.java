@@ -0,0 +1,28 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface HealthMetricRollupRepositoryCustom {
+    /**
+     * Serializes daily writes and rollup maintenance for one user and provider, across
+     * instances, until the caller's transaction ends.
+     */
+    void lock(String userId, UserHealthConnection.HealthProvider provider);
+
+    /** Rollups of one user and provider starting between {@code from} and {@code to} inclusive. */
+    List<HealthMetricRollup> findRange(String userId, UserHealthConnection.HealthProvider provider,
+                                       LocalDate from, LocalDate to);
+
+    /** Inserts or replaces the payload of each rollup in one JDBC batch. */
+    int upsertAll(List<HealthMetricRollup> rollups);
+
+    /** Removes all rollups of one user and provider. */
+    int deleteForUser(String userId, UserHealthConnection.HealthProvider provider);
+
+    /** Removes the rollups of one user and provider starting on or after {@code from}. */
+    int deleteForUser(String userId, UserHealthConnection.HealthProvider provider, LocalDate from);
+}
@@ -0,0 +1,89 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public class HealthMetricRollupRepositoryImpl implements HealthMetricRollupRepositoryCustom {
+    private static final int BATCH_SIZE = 100;
+
+    // Transaction-scoped; released on commit or rollback
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext(?))";
+
+    private static final String FIND_RANGE_SQL = """
+            SELECT id, period, period_start, payload FROM health_metric_rollups
+            WHERE user_id = ? AND source_provider = ? AND period_start BETWEEN ? AND ?
+            """;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO health_metric_rollups (id, user_id, source_provider, period, period_start, payload, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (user_id, source_provider, period, period_start) DO UPDATE SET
+                payload = EXCLUDED.payload,
+                updated_at = EXCLUDED.updated_at
+            """;
+
+    private static final String DELETE_SQL =
+            "DELETE FROM health_metric_rollups WHERE user_id = ? AND source_provider = ?";
+    private static final String DELETE_FROM_SQL =
+            "DELETE FROM health_metric_rollups WHERE user_id = ? AND source_provider = ? AND period_start >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HealthMetricRollupRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void lock(String userId, UserHealthConnection.HealthProvider provider) {
+        jdbcTemplate.query(LOCK_SQL, rs -> { }, "rollup|" + userId + "|" + provider.name());
+    }
+
+    @Override
+    public List<HealthMetricRollup> findRange(String userId, UserHealthConnection.HealthProvider provider,
+                                              LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(FIND_RANGE_SQL, (rs, rowNum) -> {
+            HealthMetricRollup rollup = new HealthMetricRollup();
+            rollup.setId(rs.getString("id"));
+            rollup.setUserId(userId);
+            rollup.setSourceProvider(provider);
+            rollup.setPeriod(HealthMetricRollup.Period.valueOf(rs.getString("period")));
+            rollup.setPeriodStart(rs.getDate("period_start").toLocalDate());
+            rollup.setPayload(rs.getBytes("payload"));
+            return rollup;
+        }, userId, provider.name(), Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public int upsertAll(List<HealthMetricRollup> rollups) {
+        if (rollups.isEmpty()) return 0;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rollups, BATCH_SIZE, (ps, rollup) -> {
+            ps.setString(1, rollup.getId() != null ? rollup.getId() : UUID.randomUUID().toString());
+            ps.setString(2, rollup.getUserId());
+            ps.setString(3, rollup.getSourceProvider().name());
+            ps.setString(4, rollup.getPeriod().name());
+            ps.setDate(5, Date.valueOf(rollup.getPeriodStart()));
+            ps.setBytes(6, rollup.getPayload());
+            ps.setTimestamp(7, now);
+        });
+        return rollups.size();
+    }
+
+    @Override
+    public int deleteForUser(String userId, UserHealthConnection.HealthProvider provider) {
+        return jdbcTemplate.update(DELETE_SQL, userId, provider.name());
+    }
+
+    @Override
+    public int deleteForUser(String userId, UserHealthConnection.HealthProvider provider, LocalDate from) {
+        return jdbcTemplate.update(DELETE_FROM_SQL, userId, provider.name(), Date.valueOf(from));
+    }
+}
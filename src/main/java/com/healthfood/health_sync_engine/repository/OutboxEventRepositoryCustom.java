@@ -0,0 +1,20 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.OutboxEvent;
+
+import java.util.List;
+
+public interface OutboxEventRepositoryCustom {
+    /** Adds a message to the outbox; joins the caller's transaction. */
+    void enqueue(String topic, String key, String payload);
+
+    /**
+     * Locks up to {@code limit} of the oldest events for the current transaction.
+     * Rows locked by another relay are skipped, so several instances can drain
+     * the outbox concurrently.
+     */
+    List<OutboxEvent> lockBatch(int limit);
+
+    /** Deletes published events in one statement. */
+    int deletePublished(List<Long> ids);
+}
@@ -0,0 +1,53 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.OutboxEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class OutboxEventRepositoryImpl implements OutboxEventRepositoryCustom {
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (topic, message_key, payload, created_at) VALUES (?, ?, ?, ?)";
+
+    private static final String LOCK_BATCH_SQL = """
+            SELECT id, topic, message_key, payload, created_at FROM outbox_events
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private static final String DELETE_SQL = "DELETE FROM outbox_events WHERE id = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OutboxEventRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void enqueue(String topic, String key, String payload) {
+        jdbcTemplate.update(INSERT_SQL, topic, key, payload, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    @Override
+    public List<OutboxEvent> lockBatch(int limit) {
+        return jdbcTemplate.query(LOCK_BATCH_SQL, (rs, rowNum) -> {
+            OutboxEvent event = new OutboxEvent();
+            event.setId(rs.getLong("id"));
+            event.setTopic(rs.getString("topic"));
+            event.setMessageKey(rs.getString("message_key"));
+            event.setPayload(rs.getString("payload"));
+            event.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+            return event;
+        }, limit);
+    }
+
+    @Override
+    public int deletePublished(List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        return jdbcTemplate.update(DELETE_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+}
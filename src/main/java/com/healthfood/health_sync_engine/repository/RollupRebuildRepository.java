@@ -0,0 +1,51 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.RollupRebuild;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RollupRebuildRepository extends JpaRepository<RollupRebuild, String>, RollupRebuildRepositoryCustom {
+    Optional<RollupRebuild> findByUserIdAndProvider(String userId, UserHealthConnection.HealthProvider provider);
+
+    // Updates by id that also end the lease taken by claimDue. Both only apply to the run
+    // that holds the lease, so a rebuild queued again meanwhile stays pending.
+
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE RollupRebuild r
+            SET r.status = com.healthfood.health_sync_engine.model.RollupRebuild.Status.COMPLETED,
+                r.rollups = :rollups, r.failures = 0, r.errorMessage = null,
+                r.leaseUntil = null, r.updatedAt = :now
+            WHERE r.id = :id AND r.leaseUntil = :leaseUntil
+            """)
+    int complete(@Param("id") String id,
+                 @Param("leaseUntil") LocalDateTime leaseUntil,
+                 @Param("rollups") int rollups,
+                 @Param("now") LocalDateTime now);
+
+    /** Records a failed run; it is retried at {@code nextRunAt} unless {@code status} ends it. */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE RollupRebuild r
+            SET r.status = :status, r.failures = r.failures + 1, r.errorMessage = :errorMessage,
+                r.nextRunAt = :nextRunAt, r.leaseUntil = null, r.updatedAt = :now
+            WHERE r.id = :id AND r.leaseUntil = :leaseUntil
+            """)
+    int recordFailure(@Param("id") String id,
+                      @Param("leaseUntil") LocalDateTime leaseUntil,
+                      @Param("status") RollupRebuild.Status status,
+                      @Param("errorMessage") String errorMessage,
+                      @Param("nextRunAt") LocalDateTime nextRunAt,
+                      @Param("now") LocalDateTime now);
+}
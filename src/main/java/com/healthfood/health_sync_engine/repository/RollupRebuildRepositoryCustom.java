@@ -0,0 +1,25 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.RollupRebuild;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.Duration;
+import java.util.List;
+
+public interface RollupRebuildRepositoryCustom {
+    /**
+     * Leases up to {@code limit} pending rebuilds that are due, oldest first. Rows leased
+     * by another instance are skipped until their lease expires.
+     */
+    List<RollupRebuild> claimDue(int limit, Duration lease);
+
+    /** Queues a rebuild of one connection, restarting a completed or failed one. */
+    void enqueue(String userId, UserHealthConnection.HealthProvider provider);
+
+    /**
+     * Queues a rebuild of every connection in one statement.
+     *
+     * @return number of rebuilds queued
+     */
+    int enqueueAll();
+}
@@ -0,0 +1,78 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.RollupRebuild;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+public class RollupRebuildRepositoryImpl implements RollupRebuildRepositoryCustom {
+    private static final String CLAIM_SQL = """
+            UPDATE rollup_rebuilds SET lease_until = ?
+            WHERE id IN (
+                SELECT id FROM rollup_rebuilds
+                WHERE status = 'PENDING' AND next_run_at <= ? AND (lease_until IS NULL OR lease_until < ?)
+                ORDER BY next_run_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING id, user_id, provider, failures
+            """;
+
+    // Clearing the lease makes the run in progress, if any, leave the row pending, so
+    // days written while it ran are picked up by another run
+    private static final String ENQUEUE_SQL = """
+            INSERT INTO rollup_rebuilds (id, user_id, provider, status, rollups, failures, next_run_at, created_at, updated_at)
+            VALUES (?, ?, ?, 'PENDING', 0, 0, ?, ?, ?)
+            ON CONFLICT (user_id, provider) DO UPDATE SET
+                status = 'PENDING', failures = 0, error_message = NULL, lease_until = NULL,
+                next_run_at = EXCLUDED.next_run_at, updated_at = EXCLUDED.updated_at
+            """;
+
+    private static final String ENQUEUE_ALL_SQL = """
+            INSERT INTO rollup_rebuilds (id, user_id, provider, status, rollups, failures, next_run_at, created_at, updated_at)
+            SELECT gen_random_uuid()::text, user_id, provider, 'PENDING', 0, 0, ?, ?, ?
+            FROM user_health_connections
+            ON CONFLICT (user_id, provider) DO UPDATE SET
+                status = 'PENDING', failures = 0, error_message = NULL, lease_until = NULL,
+                next_run_at = EXCLUDED.next_run_at, updated_at = EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RollupRebuildRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<RollupRebuild> claimDue(int limit, Duration lease) {
+        // Stored with microsecond precision; the lease is compared again when the run ends
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> {
+            RollupRebuild rebuild = new RollupRebuild();
+            rebuild.setId(rs.getString("id"));
+            rebuild.setUserId(rs.getString("user_id"));
+            rebuild.setProvider(UserHealthConnection.HealthProvider.valueOf(rs.getString("provider")));
+            rebuild.setFailures(rs.getInt("failures"));
+            rebuild.setLeaseUntil(now.plus(lease));
+            return rebuild;
+        }, Timestamp.valueOf(now.plus(lease)), nowTs, nowTs, limit);
+    }
+
+    @Override
+    public void enqueue(String userId, UserHealthConnection.HealthProvider provider) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(ENQUEUE_SQL, UUID.randomUUID().toString(), userId, provider.name(), now, now, now);
+    }
+
+    @Override
+    public int enqueueAll() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(ENQUEUE_ALL_SQL, now, now, now);
+    }
+}
@@ -0,0 +1,61 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SyncBackfillRepository extends JpaRepository<SyncBackfill, String>, SyncBackfillRepositoryCustom {
+    Optional<SyncBackfill> findByUserIdAndProvider(String userId, UserHealthConnection.HealthProvider provider);
+
+    // Updates by id that also end the lease taken by claimDue
+
+    /** Saves the cursor after a chunk; completes the backfill once the cursor reaches the oldest day. */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE SyncBackfill b
+            SET b.cursorDate = :cursorDate,
+                b.status = CASE WHEN :cursorDate <= b.oldestDate
+                    THEN com.healthfood.health_sync_engine.model.SyncBackfill.Status.COMPLETED
+                    ELSE b.status END,
+                b.chunksDone = b.chunksDone + 1, b.daysChanged = b.daysChanged + :daysChanged,
+                b.failures = 0, b.errorMessage = null,
+                b.nextRunAt = :now, b.leaseUntil = null, b.updatedAt = :now
+            WHERE b.id = :id
+            """)
+    int checkpoint(@Param("id") String id,
+                   @Param("cursorDate") LocalDate cursorDate,
+                   @Param("daysChanged") int daysChanged,
+                   @Param("now") LocalDateTime now);
+
+    /** Hands the backfill back without progress, e.g. while the budget is exhausted. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncBackfill b SET b.nextRunAt = :nextRunAt, b.leaseUntil = null WHERE b.id = :id")
+    int release(@Param("id") String id, @Param("nextRunAt") LocalDateTime nextRunAt);
+
+    /** Records a failed chunk; the backfill is retried at {@code nextRunAt} unless {@code status} ends it. */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE SyncBackfill b
+            SET b.status = :status, b.failures = b.failures + 1, b.errorMessage = :errorMessage,
+                b.nextRunAt = :nextRunAt, b.leaseUntil = null, b.updatedAt = :now
+            WHERE b.id = :id
+            """)
+    int recordFailure(@Param("id") String id,
+                      @Param("status") SyncBackfill.Status status,
+                      @Param("errorMessage") String errorMessage,
+                      @Param("nextRunAt") LocalDateTime nextRunAt,
+                      @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,22 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+
+import java.time.Duration;
+import java.util.List;
+
+public interface SyncBackfillRepositoryCustom {
+    /**
+     * Leases up to {@code limit} active backfills that are due, oldest first. Rows leased
+     * by another instance are skipped until their lease expires.
+     */
+    List<SyncBackfill> claimDue(int limit, Duration lease);
+
+    /**
+     * Inserts a new backfill unless the connection already has one, which a concurrent
+     * start may have just created. The id is generated here.
+     *
+     * @return whether the row was inserted
+     */
+    boolean insertIfAbsent(SyncBackfill backfill);
+}
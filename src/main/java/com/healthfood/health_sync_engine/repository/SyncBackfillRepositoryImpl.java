@@ -0,0 +1,68 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public class SyncBackfillRepositoryImpl implements SyncBackfillRepositoryCustom {
+    private static final String CLAIM_SQL = """
+            UPDATE sync_backfills SET lease_until = ?
+            WHERE id IN (
+                SELECT id FROM sync_backfills
+                WHERE status = 'ACTIVE' AND next_run_at <= ? AND (lease_until IS NULL OR lease_until < ?)
+                ORDER BY next_run_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING id, user_id, provider, oldest_date, cursor_date, chunks_done, days_changed, failures
+            """;
+
+    private static final String INSERT_IF_ABSENT_SQL = """
+            INSERT INTO sync_backfills (id, user_id, provider, status, oldest_date, cursor_date,
+                                        chunks_done, days_changed, failures, next_run_at, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, 0, 0, 0, ?, ?, ?)
+            ON CONFLICT (user_id, provider) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SyncBackfillRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<SyncBackfill> claimDue(int limit, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> {
+            SyncBackfill backfill = new SyncBackfill();
+            backfill.setId(rs.getString("id"));
+            backfill.setUserId(rs.getString("user_id"));
+            backfill.setProvider(UserHealthConnection.HealthProvider.valueOf(rs.getString("provider")));
+            backfill.setOldestDate(rs.getDate("oldest_date").toLocalDate());
+            backfill.setCursorDate(rs.getDate("cursor_date").toLocalDate());
+            backfill.setChunksDone(rs.getInt("chunks_done"));
+            backfill.setDaysChanged(rs.getInt("days_changed"));
+            backfill.setFailures(rs.getInt("failures"));
+            backfill.setLeaseUntil(now.plus(lease));
+            return backfill;
+        }, Timestamp.valueOf(now.plus(lease)), nowTs, nowTs, limit);
+    }
+
+    @Override
+    public boolean insertIfAbsent(SyncBackfill backfill) {
+        backfill.setId(UUID.randomUUID().toString());
+        int inserted = jdbcTemplate.update(INSERT_IF_ABSENT_SQL, backfill.getId(), backfill.getUserId(),
+                backfill.getProvider().name(), backfill.getStatus().name(),
+                Date.valueOf(backfill.getOldestDate()), Date.valueOf(backfill.getCursorDate()),
+                Timestamp.valueOf(backfill.getNextRunAt()), Timestamp.valueOf(backfill.getCreatedAt()),
+                Timestamp.valueOf(backfill.getUpdatedAt()));
+        return inserted > 0;
+    }
+}
@@ -2,11 +2,104 @@ package com.healthfood.health_sync_engine.repository;
 
 import com.healthfood.health_sync_engine.model.UserHealthConnection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
-public interface UserHealthConnectionRepository extends JpaRepository<UserHealthConnection, String> {
+public interface UserHealthConnectionRepository extends JpaRepository<UserHealthConnection, String>,
+        UserHealthConnectionRepositoryCustom {
     Optional<UserHealthConnection> findByUserIdAndProvider(String userId, UserHealthConnection.HealthProvider provider);
     java.util.List<UserHealthConnection> findByStatus(UserHealthConnection.ConnectionStatus status);
+
+    /**
+     * Keyset page of connected users in periodic sync {@code slot}, the minute of the hour
+     * their userId hashes to (sync_slot, generated by V5). Only the columns needed to emit a
+     * sync request are read; token columns stay on disk.
+     */
+    @Query(value = """
+            SELECT id, user_id AS userId, CAST(provider AS text) AS provider
+            FROM user_health_connections
+            WHERE status = 'CONNECTED'
+              AND sync_slot = :slot
+              AND id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            """, nativeQuery = true)
+    java.util.List<SyncTarget> findConnectedInSlot(@Param("slot") int slot,
+                                                   @Param("afterId") String afterId,
+                                                   @Param("limit") int limit);
+
+    // Targeted updates by id, so sync bookkeeping works from cached state without loading the entity
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserHealthConnection c SET c.syncStatus = :status WHERE c.id = :id")
+    int updateSyncStatus(@Param("id") String id, @Param("status") UserHealthConnection.HealthSyncStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE UserHealthConnection c
+            SET c.syncStatus = com.healthfood.health_sync_engine.model.UserHealthConnection.HealthSyncStatus.SUCCESS,
+                c.lastSyncedAt = :lastSyncedAt, c.lastSyncDuration = :duration,
+                c.errorMessage = null, c.syncRetryCount = 0
+            WHERE c.id = :id
+            """)
+    int markSyncSucceeded(@Param("id") String id,
+                          @Param("lastSyncedAt") LocalDateTime lastSyncedAt,
+                          @Param("duration") int duration);
+
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE UserHealthConnection c
+            SET c.syncStatus = com.healthfood.health_sync_engine.model.UserHealthConnection.HealthSyncStatus.FAILED,
+                c.errorMessage = :errorMessage, c.syncRetryCount = COALESCE(c.syncRetryCount, 0) + 1
+            WHERE c.id = :id
+            """)
+    int markSyncFailed(@Param("id") String id, @Param("errorMessage") String errorMessage);
+
+    /**
+     * Takes the connection out of periodic syncs until the user reconnects. Only applies
+     * while the stored access token is still {@code accessToken}, the one that was
+     * rejected, so a reconnect made since the sync read it is not undone.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE UserHealthConnection c
+            SET c.status = com.healthfood.health_sync_engine.model.UserHealthConnection.ConnectionStatus.ERROR,
+                c.syncStatus = com.healthfood.health_sync_engine.model.UserHealthConnection.HealthSyncStatus.FAILED,
+                c.errorMessage = :errorMessage, c.syncRetryCount = COALESCE(c.syncRetryCount, 0) + 1
+            WHERE c.id = :id AND c.accessToken = :accessToken
+            """)
+    int markAuthRevoked(@Param("id") String id,
+                        @Param("accessToken") String accessToken,
+                        @Param("errorMessage") String errorMessage);
+
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE UserHealthConnection c
+            SET c.accessToken = COALESCE(:accessToken, c.accessToken),
+                c.refreshToken = COALESCE(:refreshToken, c.refreshToken),
+                c.updatedAt = :updatedAt
+            WHERE c.id = :id
+            """)
+    int updateTokens(@Param("id") String id,
+                     @Param("accessToken") String accessToken,
+                     @Param("refreshToken") String refreshToken,
+                     @Param("updatedAt") LocalDateTime updatedAt);
+
+    interface SyncTarget {
+        String getId();
+        String getUserId();
+        String getProvider();
+    }
 }
@@ -0,0 +1,15 @@
+package com.healthfood.health_sync_engine.repository;
+
+import java.time.LocalDateTime;
+
+public interface UserHealthConnectionRepositoryCustom {
+    /** Last minute whose periodic sync slot was emitted, or null before the first run. */
+    LocalDateTime periodicSyncEmittedThrough();
+
+    /**
+     * Moves the periodic sync cursor from {@code expected} to {@code minute}.
+     *
+     * @return false if another instance moved it first
+     */
+    boolean advancePeriodicSync(LocalDateTime expected, LocalDateTime minute);
+}
@@ -0,0 +1,36 @@
+package com.healthfood.health_sync_engine.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+
+public class UserHealthConnectionRepositoryImpl implements UserHealthConnectionRepositoryCustom {
+    private static final String EMITTED_THROUGH_SQL = "SELECT emitted_through FROM periodic_sync_cursor WHERE id = 1";
+
+    private static final String ADVANCE_SQL = """
+            UPDATE periodic_sync_cursor SET emitted_through = ?
+            WHERE id = 1 AND emitted_through IS NOT DISTINCT FROM ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserHealthConnectionRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public LocalDateTime periodicSyncEmittedThrough() {
+        Timestamp emittedThrough = jdbcTemplate.queryForObject(EMITTED_THROUGH_SQL, Timestamp.class);
+        return emittedThrough == null ? null : emittedThrough.toLocalDateTime();
+    }
+
+    @Override
+    public boolean advancePeriodicSync(LocalDateTime expected, LocalDateTime minute) {
+        // Typed explicitly, since the driver cannot infer the type of a null comparison
+        return jdbcTemplate.update(ADVANCE_SQL, Timestamp.valueOf(minute),
+                new SqlParameterValue(Types.TIMESTAMP, expected == null ? null : Timestamp.valueOf(expected))) == 1;
+    }
+}
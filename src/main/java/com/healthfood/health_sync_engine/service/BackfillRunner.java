@@ -0,0 +1,170 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.consumer.HealthSyncConsumer;
+import com.healthfood.health_sync_engine.consumer.SyncOutcome;
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.SyncBackfillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Advances active backfills one chunk at a time, newest chunk first. Each tick leases a
+ * few due backfills, so many imports progress side by side, and runs their next chunk
+ * on the low-priority backfill pool within the backfill budget of
+ * {@link ProviderRateLimiter}. The cursor is saved after every chunk.
+ */
+@Service
+public class BackfillRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BackfillRunner.class);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(6);
+
+    private final SyncBackfillRepository backfillRepository;
+    private final HealthSyncConsumer healthSyncConsumer;
+    private final GoogleFitSyncService googleFitSyncService;
+    private final FitbitSyncService fitbitSyncService;
+    private final ProviderRateLimiter rateLimiter;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final ThreadPoolTaskExecutor backfillExecutor;
+    private final SyncMetrics syncMetrics;
+
+    @Value("${app.health.backfill.chunk-days:30}")
+    private int chunkDays;
+
+    @Value("${app.health.backfill.batch-size:4}")
+    private int batchSize;
+
+    @Value("${app.health.backfill.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${app.health.backfill.max-failures:5}")
+    private int maxFailures;
+
+    @Value("${app.health.backfill.retry-delay-seconds:60}")
+    private long retryDelaySeconds;
+
+    public BackfillRunner(SyncBackfillRepository backfillRepository,
+                          HealthSyncConsumer healthSyncConsumer,
+                          GoogleFitSyncService googleFitSyncService,
+                          FitbitSyncService fitbitSyncService,
+                          ProviderRateLimiter rateLimiter,
+                          ProviderCircuitBreaker circuitBreaker,
+                          @Qualifier("backfillExecutor") ThreadPoolTaskExecutor backfillExecutor,
+                          SyncMetrics syncMetrics) {
+        this.backfillRepository = backfillRepository;
+        this.healthSyncConsumer = healthSyncConsumer;
+        this.googleFitSyncService = googleFitSyncService;
+        this.fitbitSyncService = fitbitSyncService;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.backfillExecutor = backfillExecutor;
+        this.syncMetrics = syncMetrics;
+    }
+
+    @Scheduled(fixedDelayString = "${app.health.backfill.interval-ms:2000}")
+    public void runDue() {
+        List<SyncBackfill> due = backfillRepository.claimDue(batchSize, Duration.ofSeconds(leaseSeconds));
+        if (due.isEmpty()) {
+            return;
+        }
+        CompletableFuture.allOf(due.stream()
+                .map(backfill -> CompletableFuture.runAsync(() -> runChunk(backfill), backfillExecutor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void runChunk(SyncBackfill backfill) {
+        UserHealthConnection.HealthProvider provider = backfill.getProvider();
+        try {
+            SyncWindow window = nextChunk(backfill);
+            Duration wait = circuitBreaker.checkAvailable(provider);
+            if (wait.isZero()) {
+                wait = rateLimiter.tryAcquireBackfill(provider, backfill.getUserId(), requestsPerChunk(provider));
+            }
+            if (!wait.isZero()) {
+                backfillRepository.release(backfill.getId(), LocalDateTime.now().plus(wait));
+                syncMetrics.backfillChunk(provider, "deferred", 0);
+                return;
+            }
+
+            SyncOutcome outcome = healthSyncConsumer.importWindow(backfill.getUserId(), provider, window);
+            LocalDateTime now = LocalDateTime.now();
+            switch (outcome.status()) {
+                case SUCCEEDED -> {
+                    LocalDate cursor = window.start().toLocalDate();
+                    backfillRepository.checkpoint(backfill.getId(), cursor, outcome.metricsWritten(), now);
+                    if (!cursor.isAfter(backfill.getOldestDate())) {
+                        logger.info("Backfill for user {} and provider {} completed after {} chunks",
+                                backfill.getUserId(), provider, backfill.getChunksDone() + 1);
+                    }
+                }
+                // Throttled mid-chunk or the extra calls didn't fit the budget; wait that out
+                case DEFERRED -> backfillRepository.release(backfill.getId(),
+                        outcome.retryAfter() != null ? now.plus(outcome.retryAfter()) : now);
+                case SKIPPED -> backfillRepository.recordFailure(backfill.getId(), SyncBackfill.Status.FAILED,
+                        "Connection is not active", now, now);
+                // Retrying a revoked grant can't succeed until the user reconnects
+                default -> {
+                    if (outcome.failure() == ProviderException.Kind.AUTH) {
+                        backfillRepository.recordFailure(backfill.getId(), SyncBackfill.Status.FAILED, outcome.error(), now, now);
+                    } else {
+                        recordFailure(backfill, outcome.error(), now);
+                    }
+                }
+            }
+            syncMetrics.backfillChunk(provider, outcome.status().name().toLowerCase(Locale.ROOT), outcome.metricsWritten());
+        } catch (Exception e) {
+            logger.error("Backfill chunk failed for user {} and provider {}: {}", backfill.getUserId(), provider, e.getMessage());
+            recordFailure(backfill, e.getMessage(), LocalDateTime.now());
+            syncMetrics.backfillChunk(provider, "failed", 0);
+        }
+    }
+
+    /** The chunk just before the cursor, clamped to the oldest day and the provider's window limit. */
+    private SyncWindow nextChunk(SyncBackfill backfill) {
+        int days = Math.max(1, Math.min(chunkDays, maxWindowDays(backfill.getProvider())));
+        LocalDate start = backfill.getCursorDate().minusDays(days);
+        if (start.isBefore(backfill.getOldestDate())) {
+            start = backfill.getOldestDate();
+        }
+        return new SyncWindow(start.atStartOfDay(), backfill.getCursorDate().atStartOfDay().minusNanos(1));
+    }
+
+    /** Retries with exponential backoff; gives up after {@code max-failures} consecutive failures. */
+    private void recordFailure(SyncBackfill backfill, String error, LocalDateTime now) {
+        int failures = backfill.getFailures() + 1;
+        boolean exhausted = failures >= maxFailures;
+        Duration delay = Duration.ofSeconds(retryDelaySeconds).multipliedBy(1L << Math.min(failures - 1, 16));
+        if (delay.compareTo(MAX_RETRY_DELAY) > 0) {
+            delay = MAX_RETRY_DELAY;
+        }
+        backfillRepository.recordFailure(backfill.getId(),
+                exhausted ? SyncBackfill.Status.FAILED : SyncBackfill.Status.ACTIVE,
+                error, now.plus(delay), now);
+        if (exhausted) {
+            logger.warn("Backfill for user {} and provider {} failed {} times, giving up: {}",
+                    backfill.getUserId(), backfill.getProvider(), failures, error);
+        }
+    }
+
+    private int maxWindowDays(UserHealthConnection.HealthProvider provider) {
+        return provider == UserHealthConnection.HealthProvider.GOOGLE_FIT
+                ? googleFitSyncService.maxWindowDays() : fitbitSyncService.maxWindowDays();
+    }
+
+    private int requestsPerChunk(UserHealthConnection.HealthProvider provider) {
+        return provider == UserHealthConnection.HealthProvider.GOOGLE_FIT
+                ? googleFitSyncService.requestsPerSync() : fitbitSyncService.requestsPerSync();
+    }
+}
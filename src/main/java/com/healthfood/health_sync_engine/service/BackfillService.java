@@ -0,0 +1,116 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.SyncBackfillRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Starts and looks up historical imports. The chunks themselves are run by
+ * {@link BackfillRunner}.
+ */
+@Service
+public class BackfillService {
+    private static final Logger logger = LoggerFactory.getLogger(BackfillService.class);
+
+    private final SyncBackfillRepository backfillRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.health.backfill.initial-days:365}")
+    private int initialDays;
+
+    @Value("${app.health.backfill.max-days:1095}")
+    private int maxDays;
+
+    public BackfillService(SyncBackfillRepository backfillRepository, TransactionTemplate transactionTemplate) {
+        this.backfillRepository = backfillRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /** Longest history a backfill may reach back. */
+    public int maxDays() {
+        return maxDays;
+    }
+
+    /**
+     * Imports the last {@code days} days that lie before {@code coveredFrom}. An active
+     * backfill is widened, a failed one resumes from its cursor, and a completed one only
+     * fetches the days older than it already reached.
+     */
+    @Transactional
+    public SyncBackfill start(String userId, UserHealthConnection.HealthProvider provider, int days, LocalDate coveredFrom) {
+        LocalDate oldest = LocalDate.now().minusDays(days);
+        LocalDateTime now = LocalDateTime.now();
+
+        SyncBackfill backfill = backfillRepository.findByUserIdAndProvider(userId, provider).orElse(null);
+        if (backfill == null) {
+            SyncBackfill created = new SyncBackfill();
+            created.setUserId(userId);
+            created.setProvider(provider);
+            created.setOldestDate(oldest);
+            created.setCursorDate(coveredFrom);
+            created.setStatus(coveredFrom.isAfter(oldest) ? SyncBackfill.Status.ACTIVE : SyncBackfill.Status.COMPLETED);
+            created.setNextRunAt(now);
+            created.setUpdatedAt(now);
+            // Another start for the connection (e.g. an initial sync and a manual request) may
+            // have inserted the row since the lookup; that row is then widened below instead
+            if (backfillRepository.insertIfAbsent(created)) {
+                logger.info("Backfill for user {} and provider {} covers {} to {}", userId, provider, oldest, coveredFrom);
+                return created;
+            }
+            backfill = backfillRepository.findByUserIdAndProvider(userId, provider).orElseThrow();
+        }
+
+        if (backfill.getStatus() == SyncBackfill.Status.COMPLETED) {
+            if (!oldest.isBefore(backfill.getOldestDate())) {
+                return backfill;
+            }
+            backfill.setCursorDate(backfill.getOldestDate());
+            backfill.setOldestDate(oldest);
+        } else if (oldest.isBefore(backfill.getOldestDate())) {
+            backfill.setOldestDate(oldest);
+        }
+
+        if (backfill.getStatus() == SyncBackfill.Status.FAILED) {
+            backfill.setFailures(0);
+            backfill.setErrorMessage(null);
+        }
+        backfill.setStatus(backfill.getCursorDate().isAfter(backfill.getOldestDate())
+                ? SyncBackfill.Status.ACTIVE : SyncBackfill.Status.COMPLETED);
+        backfill.setNextRunAt(now);
+        backfill.setUpdatedAt(now);
+        logger.info("Backfill for user {} and provider {} covers {} to {}", userId, provider,
+                backfill.getOldestDate(), backfill.getCursorDate());
+        return backfillRepository.save(backfill);
+    }
+
+    /**
+     * Queues the history before an initial sync's window, if enabled
+     * ({@code app.health.backfill.initial-days} > 0). Runs {@link #start} in a transaction
+     * of its own, since a call from within this class bypasses the transactional proxy.
+     */
+    public void startAfterInitialSync(String userId, UserHealthConnection.HealthProvider provider, LocalDate windowStart) {
+        if (initialDays <= 0) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    start(userId, provider, Math.min(initialDays, maxDays), windowStart));
+        } catch (Exception e) {
+            logger.error("Failed to start backfill for user {} and provider {}: {}", userId, provider, e.getMessage());
+        }
+    }
+
+    public Optional<SyncBackfill> find(String userId, UserHealthConnection.HealthProvider provider) {
+        return backfillRepository.findByUserIdAndProvider(userId, provider);
+    }
+}
@@ -0,0 +1,108 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.UserHealthConnectionRepository;
+import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Bounded, TTL-evicted cache of the connection state a sync needs, including the
+ * decrypted tokens. Both TTLs default to more than the hourly periodic sync interval,
+ * so the hourly syncs of a connection skip the connection lookup and both AES-GCM
+ * decrypts. Decrypted tokens are keyed by connection id and the token ciphertexts, so
+ * a token rotation can never serve a stale plaintext and they can be kept longer.
+ *
+ * <p>Connection state changed outside this service (a user disconnecting or
+ * reconnecting) stays stale for up to the connection TTL. A sync may run on the old
+ * tokens meanwhile; {@link CachedConnection#accessCiphertext()} lets the failure
+ * handling tell whether the stored tokens are still the ones that were rejected.
+ */
+@Component
+public class ConnectionCache {
+    private final UserHealthConnectionRepository connectionRepository;
+    private final EncryptionUtil encryptionUtil;
+    private final SyncMetrics syncMetrics;
+    private final Cache<ConnectionKey, CachedConnection> connections;
+    private final Cache<TokenKey, DecryptedTokens> tokens;
+
+    public ConnectionCache(UserHealthConnectionRepository connectionRepository,
+                           EncryptionUtil encryptionUtil,
+                           MeterRegistry meterRegistry,
+                           SyncMetrics syncMetrics,
+                           @Value("${app.health.sync.connection-cache.max-size:50000}") long maxSize,
+                           @Value("${app.health.sync.connection-cache.ttl-seconds:3900}") long ttlSeconds,
+                           @Value("${app.health.sync.connection-cache.token-ttl-seconds:7200}") long tokenTtlSeconds) {
+        this.connectionRepository = connectionRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.syncMetrics = syncMetrics;
+        this.connections = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofSeconds(tokenTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, connections, "health_sync_connections");
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "health_sync_tokens");
+    }
+
+    public Optional<CachedConnection> get(String userId, UserHealthConnection.HealthProvider provider) {
+        return Optional.ofNullable(connections.get(new ConnectionKey(userId, provider), this::load));
+    }
+
+    /** Moves the cached watermark forward after a successful sync. */
+    public void recordSynced(String userId, UserHealthConnection.HealthProvider provider, LocalDateTime lastSyncedAt) {
+        connections.asMap().computeIfPresent(new ConnectionKey(userId, provider),
+                (key, cached) -> cached.withLastSyncedAt(lastSyncedAt));
+    }
+
+    public void invalidate(String userId, UserHealthConnection.HealthProvider provider) {
+        connections.invalidate(new ConnectionKey(userId, provider));
+    }
+
+    private CachedConnection load(ConnectionKey key) {
+        return connectionRepository.findByUserIdAndProvider(key.userId(), key.provider())
+                .map(connection -> {
+                    DecryptedTokens decrypted = tokens.get(
+                            new TokenKey(connection.getId(), connection.getAccessToken(), connection.getRefreshToken()),
+                            tokenKey -> syncMetrics.time(SyncMetrics.Stage.TOKEN_DECRYPT, key.provider(), () -> new DecryptedTokens(
+                                    encryptionUtil.decrypt(tokenKey.accessCiphertext()),
+                                    tokenKey.refreshCiphertext() != null ? encryptionUtil.decrypt(tokenKey.refreshCiphertext()) : null)));
+                    return new CachedConnection(connection.getId(), connection.getUserId(), connection.getProvider(),
+                            connection.getStatus(), connection.getLastSyncedAt(),
+                            decrypted.accessToken(), decrypted.refreshToken(), connection.getAccessToken());
+                })
+                .orElse(null);
+    }
+
+    public record CachedConnection(String id,
+                                   String userId,
+                                   UserHealthConnection.HealthProvider provider,
+                                   UserHealthConnection.ConnectionStatus status,
+                                   LocalDateTime lastSyncedAt,
+                                   String accessToken,
+                                   String refreshToken,
+                                   String accessCiphertext) {
+        CachedConnection withLastSyncedAt(LocalDateTime watermark) {
+            return new CachedConnection(id, userId, provider, status, watermark, accessToken, refreshToken, accessCiphertext);
+        }
+    }
+
+    private record ConnectionKey(String userId, UserHealthConnection.HealthProvider provider) { }
+
+    private record TokenKey(String connectionId, String accessCiphertext, String refreshCiphertext) { }
+
+    private record DecryptedTokens(String accessToken, String refreshToken) { }
+}
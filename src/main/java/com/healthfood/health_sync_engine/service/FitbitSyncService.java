@@ -6,115 +6,443 @@ import com.healthfood.health_sync_engine.model.HealthMetricDaily;
 import com.healthfood.health_sync_engine.model.UserHealthConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 @Service
 public class FitbitSyncService {
     private static final Logger logger = LoggerFactory.getLogger(FitbitSyncService.class);
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
-    private static final String FITBIT_API_URL = "https://api.fitbit.com/1";
+    private final ProviderRateLimiter rateLimiter;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final SyncMetrics syncMetrics;
 
-    public FitbitSyncService() {
-        this.httpClient = HttpClient.newHttpClient();
+    // Time-series resources that together cover the fields of the daily summary
+    private static final String STEPS = "steps";
+    private static final String CALORIES = "calories";
+    private static final String DISTANCE = "distance";
+    private static final String VERY_ACTIVE_MINUTES = "minutesVeryActive";
+    private static final String FAIRLY_ACTIVE_MINUTES = "minutesFairlyActive";
+    private static final String HEART = "heart";
+    private static final List<String> RANGE_RESOURCES = List.of(
+            STEPS, CALORIES, DISTANCE, VERY_ACTIVE_MINUTES, FAIRLY_ACTIVE_MINUTES, HEART);
+    // Range rejections that mean the resource itself is unavailable, not that Fitbit is failing
+    private static final Set<Integer> FALLBACK_STATUSES = Set.of(400, 403, 404);
+
+    @Value("${app.fitbit.api-url:https://api.fitbit.com/1}")
+    private String apiUrl;
+
+    // Longest span the time-series endpoints accept (heart rate is capped at one year)
+    @Value("${app.fitbit.max-window-days:365}")
+    private int maxWindowDays;
+
+    @Value("${app.fitbit.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    // Per-day fallback calls charged at once; has to stay below what every lane's budget
+    // can grant in one go, which for backfills is half the 150/h user bucket
+    @Value("${app.fitbit.fallback-chunk-days:30}")
+    private int fallbackChunkDays;
+
+    public FitbitSyncService(ProviderRateLimiter rateLimiter, ProviderCircuitBreaker circuitBreaker, SyncMetrics syncMetrics) {
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.syncMetrics = syncMetrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
         this.objectMapper = new ObjectMapper();
     }
 
-    public List<HealthMetricDaily> fetchActivity(String accessToken, LocalDateTime start, LocalDateTime end, String userId) {
+    /** Number of API calls a regular (range-based) sync spends from the user's quota. */
+    public int requestsPerSync() {
+        return RANGE_RESOURCES.size();
+    }
+
+    /** Longest window fetched with one set of range calls; longer windows are fetched in chunks. */
+    public int maxWindowDays() {
+        return maxWindowDays;
+    }
+
+    /**
+     * Fetches the window one chunk at a time. The caller pays for the first chunk's range
+     * calls ({@link #requestsPerSync()}); further chunks and per-day fallbacks are charged
+     * to {@code budget} before they are sent.
+     *
+     * @throws ProviderRateLimitException when the budget can't cover the extra calls
+     */
+    public List<HealthMetricDaily> fetchActivity(String accessToken, LocalDateTime start, LocalDateTime end, String userId,
+                                                 ProviderBudget budget) {
         List<HealthMetricDaily> metrics = new ArrayList<>();
-        LocalDate startDate = start.toLocalDate();
-        LocalDate endDate = end.toLocalDate();
+        boolean first = true;
+        for (SyncWindow chunk : new SyncWindow(start, end).split(maxWindowDays)) {
+            if (!first) {
+                budget.acquire(UserHealthConnection.HealthProvider.FITBIT, requestsPerSync());
+            }
+            first = false;
+            metrics.addAll(fetchChunk(accessToken, chunk.start().toLocalDate(), chunk.end().toLocalDate(), userId, budget));
+        }
+        return metrics;
+    }
+
+    private List<HealthMetricDaily> fetchChunk(String accessToken, LocalDate startDate, LocalDate endDate, String userId,
+                                               ProviderBudget budget) {
+        // One time-series call per resource covers the whole chunk
+        List<HealthMetricDaily> ranged = fetchRange(accessToken, startDate, endDate, userId);
+        if (ranged != null) {
+            return ranged;
+        }
+
+        // One call per day, so the fallback can cost far more than the range calls did. It is
+        // charged in sub-chunks, since a long chunk's days could exceed the bucket's capacity
+        // and never be granted at once
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        logger.warn("Fitbit range resource unavailable for user {}, falling back to {} per-day summaries", userId, days);
+        List<HealthMetricDaily> metrics = new ArrayList<>();
+        for (LocalDate from = startDate; !from.isAfter(endDate); from = from.plusDays(fallbackChunkDays)) {
+            LocalDate to = from.plusDays(fallbackChunkDays - 1L);
+            if (to.isAfter(endDate)) {
+                to = endDate;
+            }
+            budget.acquire(UserHealthConnection.HealthProvider.FITBIT, (int) ChronoUnit.DAYS.between(from, to) + 1);
+            metrics.addAll(fetchDailySummaries(accessToken, from, to, userId));
+        }
+        return metrics;
+    }
+
+    /**
+     * Fetches every range resource concurrently and merges them per day.
+     * Returns null when a resource is rejected with 400/403/404 so the caller can fall back
+     * to per-day summaries; any other error status or an I/O failure is thrown as a
+     * {@link ProviderException}, leaving it to the retry topics and the circuit breaker.
+     */
+    private List<HealthMetricDaily> fetchRange(String accessToken, LocalDate startDate, LocalDate endDate, String userId) {
+        String from = startDate.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        String to = endDate.format(DateTimeFormatter.ISO_LOCAL_DATE);
+
+        Map<String, CompletableFuture<HttpResponse<byte[]>>> responses = new TreeMap<>();
+        for (String resource : RANGE_RESOURCES) {
+            String url = String.format("%s/user/-/activities/%s/date/%s/%s.json", apiUrl, resource, from, to);
+            responses.put(resource, httpClient.sendAsync(buildRequest(url, accessToken), HttpResponse.BodyHandlers.ofByteArray()));
+        }
+
+        Map<LocalDate, HealthMetricDaily> byDate = new TreeMap<>();
+        Map<LocalDate, Integer> activeMinutes = new TreeMap<>();
+        boolean complete = true;
+        ProviderException failure = null;
+        try {
+            for (Map.Entry<String, CompletableFuture<HttpResponse<byte[]>>> entry : responses.entrySet()) {
+                String resource = entry.getKey();
+                try {
+                    HttpResponse<byte[]> response = entry.getValue().join();
+                    recordCall(response);
+                    checkQuota(response, userId);
+                    if (response.statusCode() == 401) {
+                        syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.AUTH_REVOKED);
+                        throw new ProviderException(UserHealthConnection.HealthProvider.FITBIT, ProviderException.Kind.AUTH, 401, "AUTH_REVOKED");
+                    }
+                    if (response.statusCode() != 200) {
+                        logger.warn("Fitbit API returned status {} for user {} on range resource {}", response.statusCode(), userId, resource);
+                        syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.HTTP_ERROR);
+                        if (FALLBACK_STATUSES.contains(response.statusCode())) {
+                            complete = false;
+                        } else if (failure == null) {
+                            failure = new ProviderException(UserHealthConnection.HealthProvider.FITBIT,
+                                    ProviderException.kindOf(response.statusCode()), response.statusCode(),
+                                    "Fitbit API returned status " + response.statusCode() + " for " + resource);
+                        }
+                        continue;
+                    }
+
+                    JsonNode series = objectMapper.readTree(bodyAsString(response)).path("activities-" + resource);
+                    for (JsonNode entryNode : series) {
+                        LocalDate date = LocalDate.parse(entryNode.path("dateTime").asText());
+                        HealthMetricDaily metric = byDate.computeIfAbsent(date, d -> newMetric(d, userId));
+                        JsonNode value = entryNode.path("value");
+                        switch (resource) {
+                            case STEPS -> metric.setSteps(String.valueOf(value.asInt()));
+                            case CALORIES -> metric.setCalories(String.valueOf(value.asInt()));
+                            case DISTANCE -> metric.setDistance(String.valueOf(value.asDouble()));
+                            case VERY_ACTIVE_MINUTES, FAIRLY_ACTIVE_MINUTES -> activeMinutes.merge(date, value.asInt(0), Integer::sum);
+                            case HEART -> {
+                                if (value.has("restingHeartRate")) {
+                                    metric.setHeartRate(String.valueOf(value.path("restingHeartRate").asInt()));
+                                }
+                            }
+                            default -> { }
+                        }
+                    }
+                } catch (CompletionException | IOException e) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("Failed to fetch Fitbit {} series for user {}: {}", resource, userId, cause.getMessage());
+                    if (e instanceof CompletionException) {
+                        circuitBreaker.record(UserHealthConnection.HealthProvider.FITBIT, true);
+                    }
+                    syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.HTTP_ERROR);
+                    if (failure == null) {
+                        // A timeout, reset connection or truncated body; a later attempt may well succeed
+                        failure = new ProviderException(UserHealthConnection.HealthProvider.FITBIT, ProviderException.Kind.TRANSIENT, 0,
+                                "Fitbit " + resource + " request failed: " + cause.getMessage(), cause);
+                    }
+                }
+            }
+        } catch (ProviderRateLimitException | ProviderException e) {
+            // Throttled or revoked: the remaining calls would only spend quota on the same answer
+            responses.values().forEach(response -> response.cancel(true));
+            throw e;
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (!complete) {
+            return null;
+        }
+        activeMinutes.forEach((date, minutes) -> byDate.get(date).setActiveMinutes(String.valueOf(minutes)));
+        return new ArrayList<>(byDate.values());
+    }
+
+    /**
+     * Per-day fallback. Requests are issued asynchronously with at most
+     * {@code maxConcurrentRequests} in flight for this user. Days the provider rejects
+     * (4xx) are left out; a 5xx or I/O error on any day fails the whole sync as transient,
+     * so it is retried rather than stored with gaps. A 429 or 401 stops the fallback: no
+     * further days are sent and the requests still in flight are cancelled.
+     */
+    private List<HealthMetricDaily> fetchDailySummaries(String accessToken, LocalDate startDate, LocalDate endDate, String userId) {
+        Semaphore permits = new Semaphore(maxConcurrentRequests);
+        Map<LocalDate, CompletableFuture<HealthMetricDaily>> pending = new TreeMap<>();
+        Queue<CompletableFuture<?>> sends = new ConcurrentLinkedQueue<>();
+        AtomicReference<RuntimeException> stop = new AtomicReference<>();
 
-        // Fitbit API requires day-by-day fetching for detailed summary if we want consistent structure
-        // Iterating through dates
         for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            permits.acquireUninterruptibly();
+            if (stop.get() != null) {
+                break;
+            }
+            DayRequest request = fetchDailySummary(accessToken, date, userId);
+            sends.add(request.send());
+            pending.put(date, request.summary().whenComplete((metric, error) -> {
+                RuntimeException stopping = stopsFallback(error);
+                if (stopping != null && stop.compareAndSet(null, stopping)) {
+                    sends.forEach(send -> send.cancel(true));
+                }
+                permits.release();
+            }));
+        }
+        if (stop.get() != null) {
+            // Sends dispatched while the first stop was cancelling the others
+            sends.forEach(send -> send.cancel(true));
+            throw stop.get();
+        }
+
+        List<HealthMetricDaily> metrics = new ArrayList<>();
+        ProviderException failure = null;
+        for (Map.Entry<LocalDate, CompletableFuture<HealthMetricDaily>> entry : pending.entrySet()) {
             try {
-                HealthMetricDaily metric = fetchDailySummary(accessToken, date, userId);
+                HealthMetricDaily metric = entry.getValue().join();
                 if (metric != null) {
                     metrics.add(metric);
                 }
-            } catch (Exception e) {
-                logger.error("Failed to fetch Fitbit data for user {} on date {}: {}", userId, date, e.getMessage());
+            } catch (CompletionException | CancellationException e) {
+                if (stop.get() != null) {
+                    throw stop.get();
+                }
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.error("Failed to fetch Fitbit data for user {} on date {}: {}", userId, entry.getKey(), cause.getMessage());
+                ProviderException providerException = cause instanceof ProviderException known ? known
+                        : new ProviderException(UserHealthConnection.HealthProvider.FITBIT, ProviderException.classify(cause), 0,
+                                "Fitbit request failed: " + cause.getMessage(), cause);
+                if (failure == null) {
+                    failure = providerException;
+                }
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
         return metrics;
     }
 
-    private HealthMetricDaily fetchDailySummary(String accessToken, LocalDate date, String userId) throws IOException, InterruptedException {
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = String.format("%s/user/-/activities/date/%s.json", FITBIT_API_URL, dateStr);
+    /** The throttle or auth failure that ends a per-day fallback, or null for any other outcome. */
+    private static RuntimeException stopsFallback(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ProviderRateLimitException rateLimited) {
+            return rateLimited;
+        }
+        if (cause instanceof ProviderException providerException && providerException.getKind() == ProviderException.Kind.AUTH) {
+            return providerException;
+        }
+        return null;
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Authorization", "Bearer " + accessToken)
-                .GET()
-                .build();
+    /** The raw HTTP exchange, kept to cancel it, and the summary parsed from its response. */
+    private record DayRequest(CompletableFuture<HttpResponse<byte[]>> send, CompletableFuture<HealthMetricDaily> summary) { }
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    private DayRequest fetchDailySummary(String accessToken, LocalDate date, String userId) {
+        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        String url = String.format("%s/user/-/activities/date/%s.json", apiUrl, dateStr);
 
-        if (response.statusCode() == 200) {
-            JsonNode root = objectMapper.readTree(response.body());
-            JsonNode summary = root.path("summary");
+        CompletableFuture<HttpResponse<byte[]>> send = httpClient.sendAsync(buildRequest(url, accessToken), HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<HealthMetricDaily> summary = send
+                .whenComplete((response, error) -> {
+                    // A cancelled request says nothing about Fitbit's health
+                    if (error != null && !(error instanceof CancellationException)) {
+                        circuitBreaker.record(UserHealthConnection.HealthProvider.FITBIT, true);
+                    }
+                })
+                .thenApply(response -> {
+                    recordCall(response);
+                    checkQuota(response, userId);
+                    if (response.statusCode() != 200) {
+                        logger.warn("Fitbit API returned status {} for user {} on date {}", response.statusCode(), userId, date);
+                        if (response.statusCode() == 401) {
+                            syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.AUTH_REVOKED);
+                            throw new ProviderException(UserHealthConnection.HealthProvider.FITBIT, ProviderException.Kind.AUTH, 401, "AUTH_REVOKED");
+                        }
+                        syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.HTTP_ERROR);
+                        if (ProviderException.kindOf(response.statusCode()) == ProviderException.Kind.TRANSIENT) {
+                            throw new ProviderException(UserHealthConnection.HealthProvider.FITBIT, ProviderException.Kind.TRANSIENT,
+                                    response.statusCode(), "Fitbit API returned status " + response.statusCode());
+                        }
+                        return null;
+                    }
+                    try {
+                        return parseDailySummary(bodyAsString(response), date, userId);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+        return new DayRequest(send, summary);
+    }
 
-            if (!summary.isMissingNode()) {
-                HealthMetricDaily metric = new HealthMetricDaily();
-                metric.setUserId(userId);
-                metric.setDate(date.atStartOfDay());
-                metric.setSourceProvider(UserHealthConnection.HealthProvider.FITBIT);
+    /** Parses one /activities/date/{date}.json body; null when it has no summary. */
+    HealthMetricDaily parseDailySummary(String body, LocalDate date, String userId) throws IOException {
+        JsonNode summary = objectMapper.readTree(body).path("summary");
+        if (summary.isMissingNode()) {
+            return null;
+        }
 
-                // Steps
-                if (summary.has("steps")) {
-                    metric.setSteps(String.valueOf(summary.path("steps").asInt()));
-                }
+        HealthMetricDaily metric = newMetric(date, userId);
 
-                // Calories
-                if (summary.has("caloriesOut")) {
-                    metric.setCalories(String.valueOf(summary.path("caloriesOut").asInt()));
-                }
+        // Steps
+        if (summary.has("steps")) {
+            metric.setSteps(String.valueOf(summary.path("steps").asInt()));
+        }
 
-                // Distance
-                if (summary.has("distances")) {
-                    JsonNode distances = summary.path("distances");
-                    if (distances.isArray()) {
-                        for (JsonNode d : distances) {
-                            if (d.path("activity").asText().equals("total")) {
-                                metric.setDistance(String.valueOf(d.path("distance").asDouble()));
-                                break;
-                            }
-                        }
+        // Calories
+        if (summary.has("caloriesOut")) {
+            metric.setCalories(String.valueOf(summary.path("caloriesOut").asInt()));
+        }
+
+        // Distance
+        if (summary.has("distances")) {
+            JsonNode distances = summary.path("distances");
+            if (distances.isArray()) {
+                for (JsonNode d : distances) {
+                    if (d.path("activity").asText().equals("total")) {
+                        metric.setDistance(String.valueOf(d.path("distance").asDouble()));
+                        break;
                     }
                 }
+            }
+        }
 
-                // Active Minutes
-                int veryActive = summary.path("veryActiveMinutes").asInt(0);
-                int fairlyActive = summary.path("fairlyActiveMinutes").asInt(0);
-                metric.setActiveMinutes(String.valueOf(veryActive + fairlyActive));
+        // Active Minutes
+        int veryActive = summary.path("veryActiveMinutes").asInt(0);
+        int fairlyActive = summary.path("fairlyActiveMinutes").asInt(0);
+        metric.setActiveMinutes(String.valueOf(veryActive + fairlyActive));
 
-                // Heart Rate (resting)
-                if (summary.has("restingHeartRate")) {
-                    metric.setHeartRate(String.valueOf(summary.path("restingHeartRate").asInt()));
-                }
+        // Heart Rate (resting)
+        if (summary.has("restingHeartRate")) {
+            metric.setHeartRate(String.valueOf(summary.path("restingHeartRate").asInt()));
+        }
 
-                return metric;
-            }
-        } else {
-            logger.warn("Fitbit API returned status {} for user {} on date {}", response.statusCode(), userId, date);
-            if (response.statusCode() == 401) {
-                throw new RuntimeException("AUTH_REVOKED");
-            }
+        return metric;
+    }
+
+    private HealthMetricDaily newMetric(LocalDate date, String userId) {
+        HealthMetricDaily metric = new HealthMetricDaily();
+        metric.setUserId(userId);
+        metric.setDate(date.atStartOfDay());
+        metric.setSourceProvider(UserHealthConnection.HealthProvider.FITBIT);
+        return metric;
+    }
+
+    /** Counts the response towards the circuit breaker; only 5xx means Fitbit itself is struggling. */
+    private void recordCall(HttpResponse<?> response) {
+        circuitBreaker.record(UserHealthConnection.HealthProvider.FITBIT, response.statusCode() >= 500);
+    }
+
+    /**
+     * Feeds Fitbit's per-user quota headers into the rate limiter and turns a 429
+     * into a {@link ProviderRateLimitException} carrying the reset delay.
+     */
+    private void checkQuota(HttpResponse<?> response, String userId) {
+        OptionalLong remaining = response.headers().firstValueAsLong("Fitbit-Rate-Limit-Remaining");
+        OptionalLong reset = response.headers().firstValueAsLong("Fitbit-Rate-Limit-Reset");
+        if (remaining.isPresent()) {
+            rateLimiter.recordQuota(UserHealthConnection.HealthProvider.FITBIT, userId,
+                    remaining.getAsLong(), reset.orElse(3600));
+        }
+        if (response.statusCode() == 429) {
+            long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(reset.orElse(3600));
+            Duration delay = Duration.ofSeconds(retryAfter);
+            rateLimiter.recordThrottled(UserHealthConnection.HealthProvider.FITBIT, userId, delay);
+            syncMetrics.providerError(UserHealthConnection.HealthProvider.FITBIT, SyncMetrics.ProviderError.RATE_LIMITED);
+            throw new ProviderRateLimitException(UserHealthConnection.HealthProvider.FITBIT, delay);
+        }
+    }
+
+    private HttpRequest buildRequest(String url, String accessToken) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Authorization", "Bearer " + accessToken)
+                .header("Accept-Encoding", "gzip")
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private String bodyAsString(HttpResponse<byte[]> response) throws IOException {
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzipped) {
+            return new String(response.body(), StandardCharsets.UTF_8);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
         }
-        return null;
     }
 }
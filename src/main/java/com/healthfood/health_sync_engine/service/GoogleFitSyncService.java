@@ -1,7 +1,9 @@
 package com.healthfood.health_sync_engine.service;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.fitness.Fitness;
 import com.google.api.services.fitness.model.AggregateBucket;
@@ -18,16 +20,38 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class GoogleFitSyncService {
     private static final Logger logger = LoggerFactory.getLogger(GoogleFitSyncService.class);
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+
+    // Requested data types and the aggregate types they come back as
+    private static final Map<String, MetricField> FIELDS_BY_TYPE = Map.of(
+            "com.google.step_count.delta", MetricField.STEPS,
+            "com.google.calories.expended", MetricField.CALORIES,
+            "com.google.distance.delta", MetricField.DISTANCE,
+            "com.google.active_minutes", MetricField.ACTIVE_MINUTES,
+            "com.google.heart_rate.bpm", MetricField.HEART_RATE,
+            "com.google.heart_rate.summary", MetricField.HEART_RATE,
+            "com.google.oxygen_saturation", MetricField.BLOOD_OXYGEN,
+            "com.google.oxygen_saturation.summary", MetricField.BLOOD_OXYGEN);
+    private static final Map<String, MetricField> UNLISTED_TYPES = new ConcurrentHashMap<>();
+
+    private final HttpTransport httpTransport;
+    private final ProviderRateLimiter rateLimiter;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final SyncMetrics syncMetrics;
 
     @Value("${google.client.id}")
     private String clientId;
@@ -35,33 +59,96 @@ public class GoogleFitSyncService {
     @Value("${google.client.secret}")
     private String clientSecret;
 
-    public SyncResult fetchActivity(String accessToken, String refreshToken, LocalDateTime start, LocalDateTime end, String userId) {
-        List<String> dataTypes = new ArrayList<>(List.of(
-                "com.google.step_count.delta",
-                "com.google.calories.expended",
-                "com.google.distance.delta",
-                "com.google.active_minutes",
-                "com.google.heart_rate.bpm",
-                "com.google.oxygen_saturation"
-        ));
-
-        return fetchWithRetry(accessToken, refreshToken, start, end, userId, dataTypes);
+    @Value("${app.google-fit.root-url:https://fitness.googleapis.com/}")
+    private String rootUrl;
+
+    @Value("${app.google-fit.token-url:https://oauth2.googleapis.com/token}")
+    private String tokenUrl;
+
+    // Longest span requested in one aggregate call; longer windows are fetched in chunks
+    @Value("${app.google-fit.max-window-days:90}")
+    private int maxWindowDays;
+
+    @Value("${app.google-fit.http.connect-timeout-ms:10000}")
+    private int connectTimeoutMs;
+
+    @Value("${app.google-fit.http.read-timeout-ms:30000}")
+    private int readTimeoutMs;
+
+    public GoogleFitSyncService(HttpTransport googleFitHttpTransport, ProviderRateLimiter rateLimiter,
+                                ProviderCircuitBreaker circuitBreaker, SyncMetrics syncMetrics) {
+        this.httpTransport = googleFitHttpTransport;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.syncMetrics = syncMetrics;
+    }
+
+    /** Number of API calls a sync spends from the quota (one aggregate request). */
+    public int requestsPerSync() {
+        return 1;
+    }
+
+    /** Longest window fetched with one aggregate request; longer windows are fetched in chunks. */
+    public int maxWindowDays() {
+        return maxWindowDays;
+    }
+
+    /**
+     * Fetches the window one chunk at a time, passing tokens refreshed by one chunk on
+     * to the next. The caller pays for the first aggregate call ({@link #requestsPerSync()});
+     * further chunks and permission-downgrade retries are charged to {@code budget}.
+     *
+     * @throws ProviderException when a chunk can't be fetched
+     * @throws ProviderRateLimitException when the budget can't cover the extra calls
+     */
+    public SyncResult fetchActivity(String accessToken, String refreshToken, LocalDateTime start, LocalDateTime end, String userId,
+                                    ProviderBudget budget) {
+        List<HealthMetricDaily> metrics = new ArrayList<>();
+        String currentAccessToken = accessToken;
+        String currentRefreshToken = refreshToken;
+        boolean first = true;
+        for (SyncWindow chunk : new SyncWindow(start, end).split(maxWindowDays)) {
+            if (!first) {
+                budget.acquire(UserHealthConnection.HealthProvider.GOOGLE_FIT, requestsPerSync());
+            }
+            first = false;
+            List<String> dataTypes = new ArrayList<>(List.of(
+                    "com.google.step_count.delta",
+                    "com.google.calories.expended",
+                    "com.google.distance.delta",
+                    "com.google.active_minutes",
+                    "com.google.heart_rate.bpm",
+                    "com.google.oxygen_saturation"
+            ));
+            SyncResult result = fetchWithRetry(currentAccessToken, currentRefreshToken, chunk.start(), chunk.end(), userId, dataTypes, budget);
+            metrics.addAll(result.getMetrics());
+            currentAccessToken = result.getNewAccessToken();
+            currentRefreshToken = result.getNewRefreshToken();
+        }
+        return new SyncResult(metrics, currentAccessToken, currentRefreshToken);
     }
 
-    private SyncResult fetchWithRetry(String accessToken, String refreshToken, LocalDateTime start, LocalDateTime end, String userId, List<String> dataTypes) {
+    private SyncResult fetchWithRetry(String accessToken, String refreshToken, LocalDateTime start, LocalDateTime end, String userId,
+                                      List<String> dataTypes, ProviderBudget budget) {
         try {
+            // Only the credential is per user; transport and JSON factory are shared
             GoogleCredential credential = new GoogleCredential.Builder()
-                    .setTransport(GoogleNetHttpTransport.newTrustedTransport())
-                    .setJsonFactory(GsonFactory.getDefaultInstance())
+                    .setTransport(httpTransport)
+                    .setJsonFactory(JSON_FACTORY)
                     .setClientSecrets(clientId, clientSecret)
+                    .setTokenServerEncodedUrl(tokenUrl)
                     .build()
                     .setAccessToken(accessToken)
                     .setRefreshToken(refreshToken);
 
-            Fitness fitness = new Fitness.Builder(
-                    GoogleNetHttpTransport.newTrustedTransport(),
-                    GsonFactory.getDefaultInstance(),
-                    credential)
+            HttpRequestInitializer initializer = request -> {
+                credential.initialize(request);
+                request.setConnectTimeout(connectTimeoutMs);
+                request.setReadTimeout(readTimeoutMs);
+            };
+
+            Fitness fitness = new Fitness.Builder(httpTransport, JSON_FACTORY, initializer)
+                    .setRootUrl(rootUrl)
                     .setApplicationName("HealthAndFood")
                     .build();
 
@@ -81,73 +168,30 @@ public class GoogleFitSyncService {
 
             logger.info("Executing Google Fit aggregate request for user: {} with types: {}", userId, dataTypes);
             AggregateResponse response = fitness.users().dataset().aggregate("me", request).execute();
+            circuitBreaker.record(UserHealthConnection.HealthProvider.GOOGLE_FIT, false);
             
             // Check if token was refreshed
             String newAccessToken = credential.getAccessToken(); // Library updates this
             // GoogleCredential generally doesn't get a new refresh token, but we check anyway if available
             String newRefreshToken = credential.getRefreshToken(); 
 
-            List<HealthMetricDaily> metrics = new ArrayList<>();
-
-            if (response != null && response.getBucket() != null) {
-                for (AggregateBucket bucket : response.getBucket()) {
-                    HealthMetricDaily metric = new HealthMetricDaily();
-                    metric.setUserId(userId);
-                    // Truncate to start of day (midnight) for idempotency
-                    LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(bucket.getStartTimeMillis()), ZoneId.systemDefault());
-                    metric.setDate(dateTime.toLocalDate().atStartOfDay());
-                    metric.setSourceProvider(UserHealthConnection.HealthProvider.GOOGLE_FIT);
-
-                    if (bucket.getDataset() != null) {
-                        for (Dataset dataset : bucket.getDataset()) {
-                            if (dataset.getPoint() != null) {
-                                for (DataPoint point : dataset.getPoint()) {
-                                    String type = point.getDataTypeName();
-                                    if (type == null || type.isEmpty()) {
-                                        type = dataset.getDataSourceId();
-                                    }
-                                    if (type == null) type = "";
-
-                                    if (type.contains("step_count")) {
-                                        int val = point.getValue().get(0).getIntVal();
-                                        int current = Integer.parseInt(metric.getSteps() != null ? metric.getSteps() : "0");
-                                        metric.setSteps(String.valueOf(current + val));
-                                        logger.debug("Bucket {} steps increased by {} to {}", metric.getDate(), val, metric.getSteps());
-                                    } else if (type.contains("calories")) {
-                                        double val = point.getValue().get(0).getFpVal();
-                                        double current = Double.parseDouble(metric.getCalories() != null ? metric.getCalories() : "0.0");
-                                        metric.setCalories(String.valueOf(current + val));
-                                    } else if (type.contains("distance")) {
-                                        double val = point.getValue().get(0).getFpVal();
-                                        double current = Double.parseDouble(metric.getDistance() != null ? metric.getDistance() : "0.0");
-                                        metric.setDistance(String.valueOf(current + val));
-                                    } else if (type.contains("active_minutes")) {
-                                        int val = point.getValue().get(0).getIntVal();
-                                        int current = Integer.parseInt(metric.getActiveMinutes() != null ? metric.getActiveMinutes() : "0");
-                                        metric.setActiveMinutes(String.valueOf(current + val));
-                                    } else if (type.contains("heart_rate")) {
-                                        double val = point.getValue().get(0).getFpVal();
-                                        metric.setHeartRate(String.valueOf(val)); 
-                                    } else if (type.contains("oxygen_saturation")) {
-                                        double val = point.getValue().get(0).getFpVal();
-                                        metric.setBloodOxygen(String.valueOf(val));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    metrics.add(metric);
-                    logger.info("Bucket for {}: Steps={}, Calories={}, Minutes={}, HeartRate={}, SpO2={}", 
-                        metric.getDate(), metric.getSteps(), metric.getCalories(), metric.getActiveMinutes(), metric.getHeartRate(), metric.getBloodOxygen());
-                }
-            }
-            
+            List<HealthMetricDaily> metrics = parseBuckets(response, userId);
+
             return new SyncResult(metrics, newAccessToken, newRefreshToken);
 
         } catch (com.google.api.client.googleapis.json.GoogleJsonResponseException e) {
+            circuitBreaker.record(UserHealthConnection.HealthProvider.GOOGLE_FIT, e.getStatusCode() >= 500);
+            if (isRateLimited(e)) {
+                String retryAfter = e.getHeaders() != null ? e.getHeaders().getRetryAfter() : null;
+                Duration delay = Duration.ofSeconds(retryAfter != null && retryAfter.matches("\\d+") ? Long.parseLong(retryAfter) : 60);
+                rateLimiter.recordThrottled(UserHealthConnection.HealthProvider.GOOGLE_FIT, userId, delay);
+                syncMetrics.providerError(UserHealthConnection.HealthProvider.GOOGLE_FIT, SyncMetrics.ProviderError.RATE_LIMITED);
+                throw new ProviderRateLimitException(UserHealthConnection.HealthProvider.GOOGLE_FIT, delay);
+            }
             if (e.getStatusCode() == 403 && dataTypes.size() > 1) {
                 String message = e.getDetails().getMessage();
                 logger.warn("Permission denied for some Google Fit data: {}. Retrying with fewer types.", message);
+                syncMetrics.providerError(UserHealthConnection.HealthProvider.GOOGLE_FIT, SyncMetrics.ProviderError.PERMISSION_DOWNGRADE);
                 
                 List<String> nextTypes = new ArrayList<>(dataTypes);
                 boolean removed = false;
@@ -161,17 +205,170 @@ public class GoogleFitSyncService {
                 if (!removed) {
                     nextTypes.remove("com.google.distance.delta");
                 }
-                
-                return fetchWithRetry(accessToken, refreshToken, start, end, userId, nextTypes);
+
+                // Each retry is another aggregate call against the quota
+                budget.acquire(UserHealthConnection.HealthProvider.GOOGLE_FIT, requestsPerSync());
+                return fetchWithRetry(accessToken, refreshToken, start, end, userId, nextTypes, budget);
             }
-            logger.error("Google Fit API error: {} - {}", e.getStatusCode(), e.getDetails() != null ? e.getDetails().getMessage() : e.getMessage());
-            return new SyncResult(Collections.emptyList(), accessToken, refreshToken);
-        } catch (Exception e) {
-            logger.error("Unexpected error fetching Google Fit data: {}", e.getMessage());
-            return new SyncResult(Collections.emptyList(), accessToken, refreshToken);
+            String message = e.getDetails() != null ? e.getDetails().getMessage() : e.getMessage();
+            logger.error("Google Fit API error: {} - {}", e.getStatusCode(), message);
+            ProviderException.Kind kind = ProviderException.kindOf(e.getStatusCode());
+            syncMetrics.providerError(UserHealthConnection.HealthProvider.GOOGLE_FIT,
+                    kind == ProviderException.Kind.AUTH ? SyncMetrics.ProviderError.AUTH_REVOKED : SyncMetrics.ProviderError.HTTP_ERROR);
+            throw new ProviderException(UserHealthConnection.HealthProvider.GOOGLE_FIT, kind, e.getStatusCode(),
+                    kind == ProviderException.Kind.AUTH ? "AUTH_REVOKED" : "Google Fit API error " + e.getStatusCode() + ": " + message, e);
+        } catch (com.google.api.client.auth.oauth2.TokenResponseException e) {
+            // A rejected refresh (invalid_grant) means the grant was revoked; a 5xx is the token server's problem
+            boolean serverError = e.getStatusCode() >= 500;
+            circuitBreaker.record(UserHealthConnection.HealthProvider.GOOGLE_FIT, serverError);
+            logger.error("Google token refresh failed for user {}: {} {}", userId, e.getStatusCode(),
+                    e.getDetails() != null ? e.getDetails().getError() : e.getMessage());
+            syncMetrics.providerError(UserHealthConnection.HealthProvider.GOOGLE_FIT,
+                    serverError ? SyncMetrics.ProviderError.HTTP_ERROR : SyncMetrics.ProviderError.AUTH_REVOKED);
+            throw new ProviderException(UserHealthConnection.HealthProvider.GOOGLE_FIT,
+                    serverError ? ProviderException.Kind.TRANSIENT : ProviderException.Kind.AUTH, e.getStatusCode(),
+                    serverError ? "Google token refresh failed: " + e.getStatusCode() : "AUTH_REVOKED", e);
+        } catch (IOException e) {
+            // Connect or read timeout, reset connection
+            circuitBreaker.record(UserHealthConnection.HealthProvider.GOOGLE_FIT, true);
+            logger.error("I/O error fetching Google Fit data for user {}: {}", userId, e.getMessage());
+            syncMetrics.providerError(UserHealthConnection.HealthProvider.GOOGLE_FIT, SyncMetrics.ProviderError.HTTP_ERROR);
+            throw new ProviderException(UserHealthConnection.HealthProvider.GOOGLE_FIT, ProviderException.Kind.TRANSIENT, 0,
+                    "Google Fit request failed: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Turns the daily aggregate buckets into one plaintext metric row per day. Values are
+     * summed into a primitive {@link DayTotals} per bucket, with each dataset's data type
+     * resolved once, and only converted to the entity's representation at the end.
+     */
+    List<HealthMetricDaily> parseBuckets(AggregateResponse response, String userId) {
+        if (response == null || response.getBucket() == null) {
+            return new ArrayList<>();
+        }
+
+        List<HealthMetricDaily> metrics = new ArrayList<>(response.getBucket().size());
+        DayTotals totals = new DayTotals();
+        for (AggregateBucket bucket : response.getBucket()) {
+            totals.reset();
+            if (bucket.getDataset() != null) {
+                for (Dataset dataset : bucket.getDataset()) {
+                    if (dataset.getPoint() == null || dataset.getPoint().isEmpty()) continue;
+                    // An aggregate dataset holds points of a single data type
+                    MetricField field = resolveField(dataset.getPoint().get(0).getDataTypeName(), dataset.getDataSourceId());
+                    if (field == MetricField.UNKNOWN) continue;
+                    for (DataPoint point : dataset.getPoint()) {
+                        if (point.getValue() == null || point.getValue().isEmpty()) continue;
+                        totals.add(field, point.getValue().get(0));
+                    }
+                }
+            }
+
+            // Truncate to start of day (midnight) for idempotency
+            LocalDateTime day = LocalDateTime.ofInstant(Instant.ofEpochMilli(bucket.getStartTimeMillis()), ZoneId.systemDefault())
+                    .toLocalDate().atStartOfDay();
+            HealthMetricDaily metric = totals.toMetric(userId, day);
+            metrics.add(metric);
+            logger.debug("Bucket for {}: Steps={}, Calories={}, Minutes={}, HeartRate={}, SpO2={}",
+                    metric.getDate(), metric.getSteps(), metric.getCalories(), metric.getActiveMinutes(), metric.getHeartRate(), metric.getBloodOxygen());
+        }
+        logger.info("Parsed {} daily Google Fit buckets for user {}", metrics.size(), userId);
+        return metrics;
+    }
+
+    private static MetricField resolveField(String dataTypeName, String dataSourceId) {
+        String type = dataTypeName != null && !dataTypeName.isEmpty() ? dataTypeName : dataSourceId;
+        if (type == null) return MetricField.UNKNOWN;
+        MetricField field = FIELDS_BY_TYPE.get(type);
+        return field != null ? field : UNLISTED_TYPES.computeIfAbsent(type, MetricField::match);
+    }
+
+    /** Metric a Google Fit data type contributes to. */
+    private enum MetricField {
+        STEPS, CALORIES, DISTANCE, ACTIVE_MINUTES, HEART_RATE, BLOOD_OXYGEN, UNKNOWN;
+
+        /** Substring match for names missing from the lookup table (e.g. data source ids). */
+        static MetricField match(String type) {
+            if (type.contains("step_count")) return STEPS;
+            if (type.contains("calories")) return CALORIES;
+            if (type.contains("distance")) return DISTANCE;
+            if (type.contains("active_minutes")) return ACTIVE_MINUTES;
+            if (type.contains("heart_rate")) return HEART_RATE;
+            if (type.contains("oxygen_saturation")) return BLOOD_OXYGEN;
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * One day's values as primitives. Counters and distances are summed; heart rate and
+     * SpO2 keep the last reported value (the daily average of a summary type).
+     */
+    private static final class DayTotals {
+        private long steps;
+        private double calories;
+        private double distance;
+        private long activeMinutes;
+        private double heartRate;
+        private double bloodOxygen;
+        private final boolean[] present = new boolean[MetricField.values().length];
+
+        void reset() {
+            steps = 0;
+            calories = 0;
+            distance = 0;
+            activeMinutes = 0;
+            heartRate = 0;
+            bloodOxygen = 0;
+            Arrays.fill(present, false);
+        }
+
+        void add(MetricField field, com.google.api.services.fitness.model.Value value) {
+            switch (field) {
+                case STEPS -> steps += intVal(value);
+                case CALORIES -> calories += fpVal(value);
+                case DISTANCE -> distance += fpVal(value);
+                case ACTIVE_MINUTES -> activeMinutes += intVal(value);
+                case HEART_RATE -> heartRate = fpVal(value);
+                case BLOOD_OXYGEN -> bloodOxygen = fpVal(value);
+                default -> { return; }
+            }
+            present[field.ordinal()] = true;
+        }
+
+        HealthMetricDaily toMetric(String userId, LocalDateTime day) {
+            HealthMetricDaily metric = new HealthMetricDaily();
+            metric.setUserId(userId);
+            metric.setDate(day);
+            metric.setSourceProvider(UserHealthConnection.HealthProvider.GOOGLE_FIT);
+            if (present[MetricField.STEPS.ordinal()]) metric.setSteps(String.valueOf(steps));
+            if (present[MetricField.CALORIES.ordinal()]) metric.setCalories(String.valueOf(calories));
+            if (present[MetricField.DISTANCE.ordinal()]) metric.setDistance(String.valueOf(distance));
+            if (present[MetricField.ACTIVE_MINUTES.ordinal()]) metric.setActiveMinutes(String.valueOf(activeMinutes));
+            if (present[MetricField.HEART_RATE.ordinal()]) metric.setHeartRate(String.valueOf(heartRate));
+            if (present[MetricField.BLOOD_OXYGEN.ordinal()]) metric.setBloodOxygen(String.valueOf(bloodOxygen));
+            return metric;
+        }
+
+        private static long intVal(com.google.api.services.fitness.model.Value value) {
+            return value.getIntVal() != null ? value.getIntVal() : 0;
+        }
+
+        private static double fpVal(com.google.api.services.fitness.model.Value value) {
+            return value.getFpVal() != null ? value.getFpVal() : 0;
+        }
+    }
+
+    private boolean isRateLimited(com.google.api.client.googleapis.json.GoogleJsonResponseException e) {
+        if (e.getStatusCode() == 429) return true;
+        // Per-user quota errors come back as 403 with a rateLimitExceeded reason
+        if (e.getStatusCode() == 403 && e.getDetails() != null && e.getDetails().getErrors() != null) {
+            return e.getDetails().getErrors().stream()
+                    .anyMatch(error -> error.getReason() != null && error.getReason().toLowerCase().contains("ratelimitexceeded"));
+        }
+        return false;
+    }
+
     public static class SyncResult {
         private final List<HealthMetricDaily> metrics;
         private final String newAccessToken;
@@ -0,0 +1,62 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+/**
+ * Keeps the monthly partitions of {@code health_metrics_daily} in place: from
+ * {@code months-back} (the backfill window) to {@code months-ahead} of the current month,
+ * so syncs and backfills never write to the default partition. With
+ * {@code retention-months} set, older partitions are detached and moved to the
+ * {@code health_archive} schema, which keeps the live table to the retained months.
+ * Rollups of archived months are kept; a rollup rebuild leaves them alone.
+ */
+@Service
+public class MetricPartitionMaintenance {
+    private static final Logger logger = LoggerFactory.getLogger(MetricPartitionMaintenance.class);
+
+    private final HealthMetricDailyRepository metricRepository;
+
+    @Value("${app.health.metrics.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${app.health.metrics.partitions.months-back:37}")
+    private int monthsBack;
+
+    /** Months kept in the live table, including the current one; 0 keeps everything. */
+    @Value("${app.health.metrics.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    public MetricPartitionMaintenance(HealthMetricDailyRepository metricRepository) {
+        this.metricRepository = metricRepository;
+    }
+
+    /** Runs at startup and then every {@code interval-ms}; safe to run on every instance. */
+    @Scheduled(fixedDelayString = "${app.health.metrics.partitions.interval-ms:21600000}")
+    public void maintain() {
+        try {
+            LocalDate thisMonth = LocalDate.now().withDayOfMonth(1);
+            int back = retentionMonths > 0 ? Math.min(monthsBack, retentionMonths - 1) : monthsBack;
+            int created = 0;
+            for (int i = -back; i <= monthsAhead; i++) {
+                if (metricRepository.ensurePartition(thisMonth.plusMonths(i))) {
+                    created++;
+                }
+            }
+            int archived = retentionMonths > 0
+                    ? metricRepository.archivePartitionsBefore(thisMonth.minusMonths(retentionMonths - 1))
+                    : 0;
+            if (created > 0 || archived > 0) {
+                logger.info("health_metrics_daily partitions: {} created, {} archived", created, archived);
+            }
+        } catch (Exception e) {
+            logger.error("Partition maintenance failed: {}", e.getMessage());
+        }
+    }
+}
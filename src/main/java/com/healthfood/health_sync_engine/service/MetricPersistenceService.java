@@ -0,0 +1,156 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.repository.OutboxEventRepository;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encrypts and stores the daily metric rows produced by one sync, skipping days whose
+ * values haven't changed since the last write. The {@code health.data.ingested} event
+ * for the changed days and the rollup adjustments are written in the same transaction.
+ */
+@Service
+public class MetricPersistenceService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricPersistenceService.class);
+
+    private final HealthMetricDailyRepository metricRepository;
+    private final MetricPayloadCodec metricPayloadCodec;
+    private final OutboxEventRepository outboxEventRepository;
+    private final MetricRollupService metricRollupService;
+    private final SyncMetrics syncMetrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.health.ingested.topic}")
+    private String ingestedTopic;
+
+    public MetricPersistenceService(HealthMetricDailyRepository metricRepository,
+                                    MetricPayloadCodec metricPayloadCodec,
+                                    OutboxEventRepository outboxEventRepository,
+                                    MetricRollupService metricRollupService,
+                                    SyncMetrics syncMetrics) {
+        this.metricRepository = metricRepository;
+        this.metricPayloadCodec = metricPayloadCodec;
+        this.outboxEventRepository = outboxEventRepository;
+        this.metricRollupService = metricRollupService;
+        this.syncMetrics = syncMetrics;
+    }
+
+    /**
+     * Seals and upserts the rows whose values differ from what is stored, as decided by
+     * comparing keyed fingerprints of the plaintext. Unchanged days are neither
+     * re-encrypted nor written.
+     *
+     * @return the days that were written, in input order
+     */
+    @Transactional
+    public List<LocalDate> persist(String userId, UserHealthConnection.HealthProvider provider, List<HealthMetricDaily> metrics) {
+        if (metrics.isEmpty()) {
+            return List.of();
+        }
+
+        // The last value per day wins, as in the upsert
+        Map<LocalDateTime, HealthMetricDaily> byDate = new LinkedHashMap<>();
+        for (HealthMetricDaily metric : metrics) {
+            byDate.put(metric.getDate(), metric);
+        }
+        LocalDateTime windowStart = Collections.min(byDate.keySet());
+        LocalDateTime windowEnd = Collections.max(byDate.keySet());
+
+        // Held until commit, so the previous values read here are still current when the rollups are adjusted
+        metricRollupService.lock(userId, provider);
+        Map<LocalDateTime, HealthMetricDaily> stored = syncMetrics.time(SyncMetrics.Stage.CHANGE_DETECTION, provider,
+                () -> metricRepository.findStoredRows(userId, provider, windowStart, windowEnd));
+
+        long sealStart = System.nanoTime();
+        List<HealthMetricDaily> changed = new ArrayList<>(byDate.size());
+        List<MetricRollupService.DayChange> dayChanges = new ArrayList<>(byDate.size());
+        for (HealthMetricDaily metric : byDate.values()) {
+            MetricValues values = MetricValues.of(metric);
+            byte[] hash = metricPayloadCodec.fingerprint(values);
+            HealthMetricDaily previous = stored.get(metric.getDate());
+            if (previous != null && Arrays.equals(hash, previous.getContentHash())) {
+                continue;
+            }
+            dayChanges.add(new MetricRollupService.DayChange(metric.getDate().toLocalDate(), previousValues(previous), values));
+
+            // Seal the whole row once; the legacy per-field columns are cleared so the
+            // upsert also migrates rows still stored in the old format
+            metric.setContentHash(hash);
+            metric.setPayload(metricPayloadCodec.seal(metric, values));
+            metric.setSteps(null);
+            metric.setCalories(null);
+            metric.setDistance(null);
+            metric.setActiveMinutes(null);
+            metric.setHeartRate(null);
+            metric.setBloodOxygen(null);
+            metric.setSleepHours(null);
+            changed.add(metric);
+        }
+        syncMetrics.record(SyncMetrics.Stage.METRIC_ENCRYPT, provider, System.nanoTime() - sealStart);
+        int unchanged = byDate.size() - changed.size();
+        syncMetrics.rows(provider, changed.size(), unchanged);
+
+        if (changed.isEmpty()) {
+            logger.info("No changed daily records for user {} ({} unchanged)", userId, unchanged);
+            return List.of();
+        }
+
+        // Single batched INSERT ... ON CONFLICT instead of a lookup and save per day
+        List<LocalDate> changedDates = changed.stream().map(metric -> metric.getDate().toLocalDate()).toList();
+        int written = syncMetrics.time(SyncMetrics.Stage.DB_UPSERT, provider, () -> {
+            int rows = metricRepository.upsertAll(changed);
+            metricRollupService.applyChanges(userId, provider, dayChanges);
+            outboxEventRepository.enqueue(ingestedTopic, userId, ingestedEvent(userId, provider, changedDates));
+            return rows;
+        });
+        logger.info("Upserted {} encrypted daily records for user {} ({} unchanged)", written, userId, unchanged);
+        return changedDates;
+    }
+
+    /** Values currently stored for a day, or null if there are none or they can't be read. */
+    private MetricValues previousValues(HealthMetricDaily stored) {
+        if (stored == null) {
+            return null;
+        }
+        try {
+            return metricPayloadCodec.open(stored);
+        } catch (RuntimeException e) {
+            // Counted as a new day; a rollup rebuild corrects the period if it drifts
+            logger.warn("Could not read stored metric row {}: {}", stored.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Payload of {@code health.data.ingested}; {@code date} is kept for existing consumers. */
+    private String ingestedEvent(String userId, UserHealthConnection.HealthProvider provider, List<LocalDate> changedDates) {
+        try {
+            return objectMapper.writeValueAsString(Map.of(
+                    "userId", userId,
+                    "provider", provider.name(),
+                    "date", LocalDateTime.now().toString(),
+                    "changedDates", changedDates.stream().map(LocalDate::toString).toList()
+            ));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize ingested event", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Serves decrypted daily metrics for a user and date range. Rows are read with one
+ * range query and decoded in parallel for large ranges. Results are cached per user
+ * (a few recent ranges each) until that user's data is written again, on any instance
+ * (see {@link com.healthfood.health_sync_engine.consumer.MetricCacheInvalidationListener}).
+ */
+@Service
+public class MetricQueryService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricQueryService.class);
+
+    // Below this many rows the fork/join overhead outweighs the decrypt work
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final HealthMetricDailyRepository metricRepository;
+    private final MetricPayloadCodec metricPayloadCodec;
+    private final Cache<String, UserRanges> cache;
+    private final int rangesPerUser;
+
+    public MetricQueryService(HealthMetricDailyRepository metricRepository,
+                              MetricPayloadCodec metricPayloadCodec,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.health.metrics.read-cache.max-users:10000}") long maxUsers,
+                              @Value("${app.health.metrics.read-cache.ranges-per-user:8}") int rangesPerUser,
+                              @Value("${app.health.metrics.read-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.metricRepository = metricRepository;
+        this.metricPayloadCodec = metricPayloadCodec;
+        this.rangesPerUser = rangesPerUser;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "health_metrics_reads");
+    }
+
+    /** Days from {@code from} to {@code to} inclusive, optionally for one provider. */
+    public List<DailyMetric> find(String userId, UserHealthConnection.HealthProvider provider, LocalDate from, LocalDate to) {
+        RangeKey key = new RangeKey(provider, from, to);
+        UserRanges ranges = cache.get(userId, id -> new UserRanges(rangesPerUser));
+        List<DailyMetric> cached = ranges.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // If the user is invalidated meanwhile, this lands in the detached UserRanges and is never served
+        List<DailyMetric> loaded = load(userId, provider, from, to);
+        ranges.put(key, loaded);
+        return loaded;
+    }
+
+    /** Drops everything cached for the user on this instance; call after their rows change. */
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    private List<DailyMetric> load(String userId, UserHealthConnection.HealthProvider provider, LocalDate from, LocalDate to) {
+        List<HealthMetricDaily> rows = provider == null
+                ? metricRepository.findByUserIdAndDateBetweenOrderByDateAscSourceProviderAsc(
+                        userId, from.atStartOfDay(), to.atStartOfDay())
+                : metricRepository.findByUserIdAndSourceProviderAndDateBetweenOrderByDateAsc(
+                        userId, provider, from.atStartOfDay(), to.atStartOfDay());
+
+        // AES-GCM per row is the dominant cost; ordered streams keep the date order
+        return (rows.size() >= PARALLEL_THRESHOLD ? rows.parallelStream() : rows.stream())
+                .map(this::decode)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private DailyMetric decode(HealthMetricDaily row) {
+        try {
+            return new DailyMetric(row.getDate().toLocalDate(), row.getSourceProvider(), metricPayloadCodec.open(row));
+        } catch (RuntimeException e) {
+            logger.error("Skipping unreadable metric row {} for user {}: {}", row.getId(), row.getUserId(), e.getMessage());
+            return null;
+        }
+    }
+
+    public record DailyMetric(LocalDate date,
+                              UserHealthConnection.HealthProvider provider,
+                              MetricValues values) { }
+
+    private record RangeKey(UserHealthConnection.HealthProvider provider, LocalDate from, LocalDate to) { }
+
+    /** The most recently used ranges of one user. */
+    private static final class UserRanges {
+        private final Map<RangeKey, List<DailyMetric>> ranges;
+
+        UserRanges(int capacity) {
+            this.ranges = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<RangeKey, List<DailyMetric>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized List<DailyMetric> get(RangeKey key) {
+            return ranges.get(key);
+        }
+
+        synchronized void put(RangeKey key, List<DailyMetric> metrics) {
+            ranges.put(key, metrics);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.MetricTotals;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.repository.HealthMetricRollupRepository;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains weekly and monthly totals of the daily metrics. A sync adjusts only the
+ * periods containing the days it changed, by removing each day's previous values and
+ * adding its new ones; a period without a rollup yet is summed from its daily rows
+ * instead. {@link #rebuild} recomputes a user's rollups from the daily rows.
+ */
+@Service
+public class MetricRollupService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricRollupService.class);
+    // Days read by a rebuild; it starts at the archive cutoff instead once there is one
+    private static final LocalDateTime REBUILD_FROM = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime REBUILD_TO = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final HealthMetricRollupRepository rollupRepository;
+    private final HealthMetricDailyRepository metricRepository;
+    private final MetricPayloadCodec metricPayloadCodec;
+
+    // Same setting as MetricPartitionMaintenance: months kept in the live table, 0 keeps everything
+    @Value("${app.health.metrics.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    public MetricRollupService(HealthMetricRollupRepository rollupRepository,
+                               HealthMetricDailyRepository metricRepository,
+                               MetricPayloadCodec metricPayloadCodec) {
+        this.rollupRepository = rollupRepository;
+        this.metricRepository = metricRepository;
+        this.metricPayloadCodec = metricPayloadCodec;
+    }
+
+    /** One day written by a sync; {@code previous} is null for a new day. */
+    public record DayChange(LocalDate date, MetricValues previous, MetricValues current) { }
+
+    /**
+     * Takes the per-user lock that keeps daily writes and rollup updates of concurrent
+     * syncs and rebuilds from interleaving. Must be called inside the writing transaction,
+     * before the previous values are read.
+     */
+    public void lock(String userId, UserHealthConnection.HealthProvider provider) {
+        rollupRepository.lock(userId, provider);
+    }
+
+    /**
+     * Applies the changes to the affected rollups; runs in the caller's transaction, after
+     * the changed days were written.
+     */
+    @Transactional
+    public void applyChanges(String userId, UserHealthConnection.HealthProvider provider, List<DayChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Map<PeriodKey, MetricTotals> deltas = new LinkedHashMap<>();
+        for (DayChange change : changes) {
+            for (HealthMetricRollup.Period period : HealthMetricRollup.Period.values()) {
+                MetricTotals delta = deltas.computeIfAbsent(
+                        new PeriodKey(period, period.startOf(change.date())), key -> new MetricTotals());
+                if (change.previous() != null) {
+                    delta.remove(change.previous());
+                }
+                delta.add(change.current());
+            }
+        }
+
+        Map<PeriodKey, HealthMetricRollup> stored = findStored(userId, provider, deltas.keySet());
+        // A delta is only correct against a stored total: a period without one may hold days
+        // written before rollups existed, so it is summed from all of its daily rows
+        List<PeriodKey> missing = deltas.keySet().stream().filter(key -> !stored.containsKey(key)).toList();
+        if (!missing.isEmpty()) {
+            Map<PeriodKey, MetricTotals> recomputed = sumDailyRows(userId, provider, missing);
+            for (PeriodKey key : missing) {
+                deltas.put(key, recomputed.getOrDefault(key, new MetricTotals()));
+            }
+        }
+
+        List<HealthMetricRollup> updated = merge(userId, provider, deltas, stored);
+        rollupRepository.upsertAll(updated);
+        logger.debug("Adjusted {} rollups for user {} and provider {}", updated.size(), userId, provider);
+    }
+
+    /**
+     * Recomputes the rollups of a user and provider from the daily rows. Periods starting
+     * before the archive cutoff keep their stored rollups, since some or all of their days
+     * are no longer in the live table.
+     */
+    @Transactional
+    public int rebuild(String userId, UserHealthConnection.HealthProvider provider) {
+        lock(userId, provider);
+
+        LocalDate cutoff = archiveCutoff();
+        // Rows before the cutoff only feed periods that are kept, so they aren't read (or decrypted)
+        LocalDateTime from = cutoff != null ? cutoff.atStartOfDay() : REBUILD_FROM;
+        Map<PeriodKey, MetricTotals> totals = new LinkedHashMap<>();
+        for (HealthMetricDaily row : metricRepository.findStoredRows(userId, provider, from, REBUILD_TO).values()) {
+            MetricValues values = open(row);
+            if (values == null) continue;
+            LocalDate day = row.getDate().toLocalDate();
+            for (HealthMetricRollup.Period period : HealthMetricRollup.Period.values()) {
+                LocalDate start = period.startOf(day);
+                if (cutoff != null && start.isBefore(cutoff)) continue;
+                totals.computeIfAbsent(new PeriodKey(period, start), key -> new MetricTotals()).add(values);
+            }
+        }
+
+        if (cutoff == null) {
+            rollupRepository.deleteForUser(userId, provider);
+        } else {
+            rollupRepository.deleteForUser(userId, provider, cutoff);
+        }
+        List<HealthMetricRollup> rebuilt = merge(userId, provider, totals, Map.of());
+        rollupRepository.upsertAll(rebuilt);
+        logger.info("Rebuilt {} rollups for user {} and provider {}", rebuilt.size(), userId, provider);
+        return rebuilt.size();
+    }
+
+    /** Rollups of a user whose period starts between {@code from} and {@code to}, decoded. */
+    public List<RollupView> find(String userId, UserHealthConnection.HealthProvider provider,
+                                 HealthMetricRollup.Period period, LocalDate from, LocalDate to) {
+        List<HealthMetricRollup> rollups = provider == null
+                ? rollupRepository.findByUserIdAndPeriodAndPeriodStartBetweenOrderByPeriodStartAscSourceProviderAsc(
+                        userId, period, period.startOf(from), to)
+                : rollupRepository.findByUserIdAndSourceProviderAndPeriodAndPeriodStartBetweenOrderByPeriodStartAsc(
+                        userId, provider, period, period.startOf(from), to);
+
+        List<RollupView> views = new ArrayList<>(rollups.size());
+        for (HealthMetricRollup rollup : rollups) {
+            MetricTotals totals = metricPayloadCodec.openTotals(rollup);
+            views.add(new RollupView(rollup.getPeriod(), rollup.getPeriodStart(), rollup.getSourceProvider(),
+                    totals.days(), totals.sums(), totals.averages()));
+        }
+        return views;
+    }
+
+    /**
+     * First day whose period can be rebuilt from the live table: the later of the end of
+     * the newest archived partition and the configured retention cutoff (which still holds
+     * if archived partitions have since been dropped). Null while nothing is archived.
+     */
+    private LocalDate archiveCutoff() {
+        LocalDate cutoff = metricRepository.archivedBefore();
+        if (retentionMonths > 0) {
+            LocalDate retained = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths - 1);
+            if (cutoff == null || retained.isAfter(cutoff)) {
+                cutoff = retained;
+            }
+        }
+        return cutoff;
+    }
+
+    /** Stored rollups of the given periods. */
+    private Map<PeriodKey, HealthMetricRollup> findStored(String userId, UserHealthConnection.HealthProvider provider,
+                                                          Collection<PeriodKey> keys) {
+        LocalDate from = null;
+        LocalDate to = null;
+        for (PeriodKey key : keys) {
+            if (from == null || key.start().isBefore(from)) from = key.start();
+            if (to == null || key.start().isAfter(to)) to = key.start();
+        }
+        Map<PeriodKey, HealthMetricRollup> stored = new HashMap<>();
+        for (HealthMetricRollup rollup : rollupRepository.findRange(userId, provider, from, to)) {
+            PeriodKey key = new PeriodKey(rollup.getPeriod(), rollup.getPeriodStart());
+            if (keys.contains(key)) {
+                stored.put(key, rollup);
+            }
+        }
+        return stored;
+    }
+
+    /** Totals of the given periods from the stored daily rows. */
+    private Map<PeriodKey, MetricTotals> sumDailyRows(String userId, UserHealthConnection.HealthProvider provider,
+                                                      List<PeriodKey> keys) {
+        LocalDate from = null;
+        LocalDate to = null;
+        for (PeriodKey key : keys) {
+            LocalDate end = key.period().nextStart(key.start());
+            if (from == null || key.start().isBefore(from)) from = key.start();
+            if (to == null || end.isAfter(to)) to = end;
+        }
+        Set<PeriodKey> wanted = new HashSet<>(keys);
+        Map<PeriodKey, MetricTotals> totals = new HashMap<>();
+        for (HealthMetricDaily row : metricRepository.findStoredRows(userId, provider,
+                from.atStartOfDay(), to.atStartOfDay().minusNanos(1)).values()) {
+            MetricValues values = open(row);
+            if (values == null) continue;
+            LocalDate day = row.getDate().toLocalDate();
+            for (HealthMetricRollup.Period period : HealthMetricRollup.Period.values()) {
+                PeriodKey key = new PeriodKey(period, period.startOf(day));
+                if (wanted.contains(key)) {
+                    totals.computeIfAbsent(key, k -> new MetricTotals()).add(values);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /** Values of a stored row, or null if it can't be read. */
+    private MetricValues open(HealthMetricDaily row) {
+        try {
+            return metricPayloadCodec.open(row);
+        } catch (RuntimeException e) {
+            logger.error("Skipping unreadable metric row {} in rollup: {}", row.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Adds each delta to its stored rollup, or to nothing if there is none, and seals the result. */
+    private List<HealthMetricRollup> merge(String userId, UserHealthConnection.HealthProvider provider,
+                                           Map<PeriodKey, MetricTotals> deltas,
+                                           Map<PeriodKey, HealthMetricRollup> stored) {
+        List<HealthMetricRollup> merged = new ArrayList<>(deltas.size());
+        for (Map.Entry<PeriodKey, MetricTotals> entry : deltas.entrySet()) {
+            HealthMetricRollup rollup = stored.get(entry.getKey());
+            MetricTotals totals = new MetricTotals();
+            if (rollup != null) {
+                totals = metricPayloadCodec.openTotals(rollup);
+            } else {
+                rollup = new HealthMetricRollup();
+                rollup.setUserId(userId);
+                rollup.setSourceProvider(provider);
+                rollup.setPeriod(entry.getKey().period());
+                rollup.setPeriodStart(entry.getKey().start());
+            }
+            totals.add(entry.getValue());
+            rollup.setPayload(metricPayloadCodec.sealTotals(rollup, totals));
+            merged.add(rollup);
+        }
+        return merged;
+    }
+
+    public record RollupView(HealthMetricRollup.Period period,
+                             LocalDate periodStart,
+                             UserHealthConnection.HealthProvider provider,
+                             int days,
+                             MetricValues totals,
+                             MetricValues averages) { }
+
+    private record PeriodKey(HealthMetricRollup.Period period, LocalDate start) { }
+}
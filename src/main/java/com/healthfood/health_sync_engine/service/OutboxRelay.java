@@ -0,0 +1,117 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.OutboxEvent;
+import com.healthfood.health_sync_engine.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes outbox rows to Kafka. Each batch is locked with SKIP LOCKED, sent as one
+ * burst of keyed records (the producer batches and compresses them), and only the rows
+ * the broker acknowledged are deleted, in the same transaction. Delivery is at least
+ * once: a crash between acknowledgement and commit re-sends the batch, and every record
+ * carries its outbox id in the {@code outbox-id} header so consumers can drop repeats.
+ */
+@Service
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    static final String OUTBOX_ID_HEADER = "outbox-id";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter published;
+    private final Counter failed;
+    private final Timer batchTimer;
+
+    @Value("${app.outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.outbox.relay.send-timeout-seconds:30}")
+    private long sendTimeoutSeconds;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       KafkaTemplate<String, String> kafkaTemplate,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.published = Counter.builder("health.outbox.events")
+                .description("Outbox events relayed to Kafka")
+                .tag("result", "published")
+                .register(meterRegistry);
+        this.failed = Counter.builder("health.outbox.events")
+                .description("Outbox events relayed to Kafka")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("health.outbox.publish")
+                .description("Time to publish and delete one outbox batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /** Drains the outbox batch by batch until it is empty or a send fails. */
+    @Scheduled(fixedDelayString = "${app.outbox.relay.interval-ms:500}")
+    public void relay() {
+        int relayed;
+        do {
+            relayed = batchTimer.record(() -> transactionTemplate.execute(status -> relayBatch()));
+        } while (relayed == batchSize);
+    }
+
+    /** @return number of events published, or 0 if any send failed */
+    private int relayBatch() {
+        List<OutboxEvent> events = outboxEventRepository.lockBatch(batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<SendResult<String, String>>> sends = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            ProducerRecord<String, String> record = new ProducerRecord<>(event.getTopic(), event.getMessageKey(), event.getPayload());
+            record.headers().add(OUTBOX_ID_HEADER, event.getId().toString().getBytes(StandardCharsets.UTF_8));
+            sends.add(kafkaTemplate.send(record));
+        }
+        // Don't wait out linger.ms; the whole batch is already queued
+        kafkaTemplate.flush();
+
+        List<Long> acknowledged = new ArrayList<>(events.size());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(sendTimeoutSeconds);
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                acknowledged.add(events.get(i).getId());
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Failed to publish outbox event {}: {}", events.get(i).getId(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        outboxEventRepository.deletePublished(acknowledged);
+        published.increment(acknowledged.size());
+        failed.increment(events.size() - acknowledged.size());
+        logger.debug("Relayed {} of {} outbox events", acknowledged.size(), events.size());
+        return acknowledged.size() == events.size() ? events.size() : 0;
+    }
+}
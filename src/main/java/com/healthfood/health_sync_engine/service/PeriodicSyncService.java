@@ -1,7 +1,6 @@
 package com.healthfood.health_sync_engine.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.healthfood.health_sync_engine.model.UserHealthConnection;
 import com.healthfood.health_sync_engine.repository.UserHealthConnectionRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -11,45 +10,114 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 public class PeriodicSyncService {
     private static final Logger logger = LoggerFactory.getLogger(PeriodicSyncService.class);
 
+    /**
+     * One slot per minute: each connection is synced once an hour, in the minute its userId
+     * hashes to. Baked into the sync_slot column (V5).
+     */
+    private static final int SLOTS_PER_HOUR = 60;
+
     private final UserHealthConnectionRepository connectionRepository;
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
 
-    @Value("${app.health.sync.requested.topic:health.sync.requested}")
-    private String syncRequestedTopic;
+    // Own topic, so the hourly fan-out never queues in front of interactive requests
+    @Value("${app.health.sync.periodic.topic:health.sync.periodic}")
+    private String periodicTopic;
+
+    @Value("${app.health.sync.periodic.page-size:500}")
+    private int pageSize;
 
     /**
-     * Periodic sync every hour.
-     * Cron: 0 seconds, 0 minutes, all hours, all days, all months, all weekdays
+     * Hourly sync, spread across the hour.
+     * Cron: 0 seconds, every minute. Each run emits only the connections whose
+     * userId hashes to the current minute, so every user keeps a stable offset
+     * within the hour and the load is even instead of a burst at minute zero.
      */
-    @Scheduled(cron = "0 0 * * * *")
+    @Scheduled(cron = "${app.health.sync.periodic.cron:0 * * * * *}")
     public void triggerPeriodicSync() {
-        logger.info("Starting scheduled periodic health sync for all connected users...");
-
-        List<UserHealthConnection> activeConnections = connectionRepository.findByStatus(UserHealthConnection.ConnectionStatus.CONNECTED);
-        logger.info("Found {} active connections to sync", activeConnections.size());
-
-        for (UserHealthConnection connection : activeConnections) {
-            try {
-                String payload = objectMapper.writeValueAsString(Map.of(
-                        "userId", connection.getUserId(),
-                        "provider", connection.getProvider().name(),
-                        "isInitialSync", false
-                ));
-
-                logger.debug("Emitting sync request for user {} on provider {}", connection.getUserId(), connection.getProvider());
-                kafkaTemplate.send(syncRequestedTopic, payload);
-            } catch (Exception e) {
-                logger.error("Failed to trigger periodic sync for user {}: {}", connection.getUserId(), e.getMessage());
+        emitDue(LocalDateTime.now());
+    }
+
+    /**
+     * Emits every slot from the one after the shared cursor up to {@code now}'s minute, so
+     * slots missed during a restart or an overrun are emitted late rather than skipped.
+     * More than an hour behind, each slot is emitted once. A minute is claimed on the
+     * cursor before it is emitted, so only one instance emits it.
+     */
+    void emitDue(LocalDateTime now) {
+        LocalDateTime minute = now.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime emittedThrough = connectionRepository.periodicSyncEmittedThrough();
+        LocalDateTime next = emittedThrough == null ? minute : emittedThrough.plusMinutes(1);
+        if (next.isBefore(minute.minusMinutes(SLOTS_PER_HOUR - 1))) {
+            next = minute.minusMinutes(SLOTS_PER_HOUR - 1);
+        }
+        if (next.isBefore(minute)) {
+            logger.info("Catching up periodic sync slots from {} to {}", next, minute);
+        }
+
+        for (; !next.isAfter(minute); next = next.plusMinutes(1)) {
+            if (!connectionRepository.advancePeriodicSync(emittedThrough, next)) {
+                logger.debug("Periodic sync slot for {} already emitted by another instance", next);
+                return;
             }
+            emittedThrough = next;
+            emitSlot(next.getMinute());
+        }
+    }
+
+    private void emitSlot(int slot) {
+        logger.debug("Starting periodic health sync for slot {}", slot);
+
+        int emitted = 0;
+        String afterId = "";
+        while (true) {
+            // Keyset pagination over (sync_slot, id) keeps each page an index range scan and the heap flat
+            List<UserHealthConnectionRepository.SyncTarget> page =
+                    connectionRepository.findConnectedInSlot(slot, afterId, pageSize);
+            if (page.isEmpty()) break;
+
+            List<CompletableFuture<?>> sends = new ArrayList<>(page.size());
+            for (UserHealthConnectionRepository.SyncTarget target : page) {
+                try {
+                    String payload = objectMapper.writeValueAsString(Map.of(
+                            "userId", target.getUserId(),
+                            "provider", target.getProvider(),
+                            "isInitialSync", false
+                    ));
+
+                    logger.debug("Emitting sync request for user {} on provider {}", target.getUserId(), target.getProvider());
+                    sends.add(kafkaTemplate.send(periodicTopic, target.getUserId(), payload)
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    logger.error("Failed to trigger periodic sync for user {}: {}", target.getUserId(), error.getMessage());
+                                }
+                            }));
+                } catch (Exception e) {
+                    logger.error("Failed to trigger periodic sync for user {}: {}", target.getUserId(), e.getMessage());
+                }
+            }
+
+            // Let the producer batch the whole page, then wait once before reading the next one
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+            emitted += page.size();
+            afterId = page.get(page.size() - 1).getId();
+            if (page.size() < pageSize) break;
+        }
+
+        if (emitted > 0) {
+            logger.info("Emitted {} periodic sync requests for slot {}", emitted, slot);
         }
     }
 }
@@ -0,0 +1,34 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.Duration;
+
+/**
+ * Quota a provider fetch charges for calls beyond the ones its caller already paid for,
+ * such as Fitbit's per-day fallback or a Google Fit permission downgrade. Each sync lane
+ * supplies its own, so the extra calls come out of the same share as the sync itself.
+ */
+@FunctionalInterface
+public interface ProviderBudget {
+
+    /**
+     * Takes {@code permits} from the budget.
+     *
+     * @return {@link Duration#ZERO} when granted, otherwise how long to wait before retrying
+     */
+    Duration tryAcquire(int permits);
+
+    /**
+     * Takes {@code permits}, throwing when they aren't available so the sync is deferred
+     * instead of spending quota it doesn't have.
+     *
+     * @throws ProviderRateLimitException when the budget can't cover the calls
+     */
+    default void acquire(UserHealthConnection.HealthProvider provider, int permits) {
+        Duration wait = tryAcquire(permits);
+        if (!wait.isZero()) {
+            throw new ProviderRateLimitException(provider, wait);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One circuit per provider over its last {@code window-size} calls. Once at least
+ * {@code minimum-calls} were made and the share of 5xx and I/O failures reaches the
+ * threshold, the circuit opens and syncs stop calling the provider for
+ * {@code open-seconds}. A few probe syncs are then let through; the circuit closes
+ * once {@code half-open-calls} of their calls succeed and reopens on the first failure.
+ *
+ * <p>4xx responses (auth, quota, bad requests) say nothing about the provider's health
+ * and count as successful calls.
+ */
+@Component
+public class ProviderCircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderCircuitBreaker.class);
+    // How long to wait for the probes of a half-open circuit before asking again
+    private static final Duration PROBE_WAIT = Duration.ofSeconds(5);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final Map<UserHealthConnection.HealthProvider, Circuit> circuits =
+            new EnumMap<>(UserHealthConnection.HealthProvider.class);
+    private final SyncMetrics syncMetrics;
+
+    public ProviderCircuitBreaker(@Value("${app.circuit-breaker.window-size:20}") int windowSize,
+                                  @Value("${app.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                  @Value("${app.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                  @Value("${app.circuit-breaker.open-seconds:30}") long openSeconds,
+                                  @Value("${app.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+                                  SyncMetrics syncMetrics) {
+        this.syncMetrics = syncMetrics;
+        for (UserHealthConnection.HealthProvider provider : new UserHealthConnection.HealthProvider[]{
+                UserHealthConnection.HealthProvider.GOOGLE_FIT, UserHealthConnection.HealthProvider.FITBIT}) {
+            Circuit circuit = new Circuit(provider, windowSize, minimumCalls, failureRateThreshold,
+                    TimeUnit.SECONDS.toNanos(openSeconds), halfOpenCalls);
+            circuits.put(provider, circuit);
+            syncMetrics.circuitState(provider, () -> circuit.state().ordinal());
+        }
+    }
+
+    /**
+     * Whether a sync may call the provider now. In the half-open state each granted
+     * call is one of the probes.
+     *
+     * @return {@link Duration#ZERO} when the call may go ahead, otherwise how long to wait
+     */
+    public Duration checkAvailable(UserHealthConnection.HealthProvider provider) {
+        Circuit circuit = circuits.get(provider);
+        return circuit == null ? Duration.ZERO : Duration.ofNanos(circuit.tryAcquire());
+    }
+
+    /** Records one provider call: {@code failed} for a 5xx response or an I/O error. */
+    public void record(UserHealthConnection.HealthProvider provider, boolean failed) {
+        Circuit circuit = circuits.get(provider);
+        if (circuit != null) {
+            circuit.record(failed);
+        }
+    }
+
+    public State state(UserHealthConnection.HealthProvider provider) {
+        Circuit circuit = circuits.get(provider);
+        return circuit == null ? State.CLOSED : circuit.state();
+    }
+
+    private final class Circuit {
+        private final UserHealthConnection.HealthProvider provider;
+        private final boolean[] outcomes;
+        private final int minimumCalls;
+        private final double failureRateThreshold;
+        private final long openNanos;
+        private final int halfOpenCalls;
+
+        private State state = State.CLOSED;
+        private int next;
+        private int calls;
+        private int failures;
+        private long openUntil;
+        private long probingSince;
+        private int probesGranted;
+        private int probesSucceeded;
+
+        Circuit(UserHealthConnection.HealthProvider provider, int windowSize, int minimumCalls,
+                double failureRateThreshold, long openNanos, int halfOpenCalls) {
+            this.provider = provider;
+            this.outcomes = new boolean[windowSize];
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.openNanos = openNanos;
+            this.halfOpenCalls = halfOpenCalls;
+        }
+
+        synchronized long tryAcquire() {
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                if (now < openUntil) return openUntil - now;
+                transition(State.HALF_OPEN);
+                startProbing(now);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesGranted >= halfOpenCalls) {
+                    // Probes that never reached the provider (e.g. deferred) don't keep the circuit half-open
+                    if (now - probingSince < openNanos) return PROBE_WAIT.toNanos();
+                    startProbing(now);
+                }
+                probesGranted++;
+            }
+            return 0;
+        }
+
+        synchronized void record(boolean failed) {
+            switch (state) {
+                case CLOSED -> {
+                    if (calls == outcomes.length) {
+                        if (outcomes[next]) failures--;
+                    } else {
+                        calls++;
+                    }
+                    outcomes[next] = failed;
+                    if (failed) failures++;
+                    next = (next + 1) % outcomes.length;
+                    if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+                        logger.warn("{} failed {} of the last {} calls", provider, failures, calls);
+                        open();
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (failed) {
+                        logger.warn("{} probe call failed", provider);
+                        open();
+                    } else if (++probesSucceeded >= halfOpenCalls) {
+                        calls = 0;
+                        failures = 0;
+                        next = 0;
+                        transition(State.CLOSED);
+                    }
+                }
+                // Calls started before the circuit opened; they don't extend the open period
+                case OPEN -> { }
+            }
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        private void startProbing(long now) {
+            probingSince = now;
+            probesGranted = 0;
+            probesSucceeded = 0;
+        }
+
+        private void open() {
+            openUntil = System.nanoTime() + openNanos;
+            transition(State.OPEN);
+        }
+
+        private void transition(State to) {
+            if (to == State.OPEN) {
+                logger.warn("{} circuit opened; pausing calls for {}s", provider, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+            } else {
+                logger.info("{} circuit {}", provider, to == State.CLOSED ? "closed" : "half-open, probing");
+            }
+            state = to;
+            syncMetrics.circuitTransition(provider, to.name().toLowerCase(Locale.ROOT));
+        }
+    }
+}
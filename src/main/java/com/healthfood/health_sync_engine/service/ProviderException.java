@@ -0,0 +1,67 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A provider call that failed, classified by what retrying it could achieve.
+ */
+public class ProviderException extends RuntimeException {
+
+    public enum Kind {
+        /** 5xx, timeouts and connection errors; retried with backoff. */
+        TRANSIENT,
+        /** The grant was revoked or the token can't be refreshed; the user has to reconnect. */
+        AUTH,
+        /** Anything a retry would only repeat, e.g. 400 or 404. */
+        PERMANENT
+    }
+
+    private final UserHealthConnection.HealthProvider provider;
+    private final Kind kind;
+    private final int statusCode;
+
+    public ProviderException(UserHealthConnection.HealthProvider provider, Kind kind, int statusCode, String message) {
+        this(provider, kind, statusCode, message, null);
+    }
+
+    public ProviderException(UserHealthConnection.HealthProvider provider, Kind kind, int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.provider = provider;
+        this.kind = kind;
+        this.statusCode = statusCode;
+    }
+
+    public UserHealthConnection.HealthProvider getProvider() { return provider; }
+    public Kind getKind() { return kind; }
+    public int getStatusCode() { return statusCode; }
+
+    /** Kind of a failed HTTP response. */
+    public static Kind kindOf(int statusCode) {
+        if (statusCode == 401) return Kind.AUTH;
+        if (statusCode >= 500 || statusCode == 408) return Kind.TRANSIENT;
+        return Kind.PERMANENT;
+    }
+
+    /**
+     * Kind of any exception thrown during a sync: provider exceptions carry their own,
+     * I/O errors and database errors that may clear up (timeouts, lost connections) are
+     * retried, anything else is permanent.
+     */
+    public static Kind classify(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ProviderException providerException) return providerException.getKind();
+        if (cause instanceof IOException
+                || cause instanceof TransientDataAccessException
+                || cause instanceof DataAccessResourceFailureException
+                || cause instanceof RecoverableDataAccessException) {
+            return Kind.TRANSIENT;
+        }
+        return Kind.PERMANENT;
+    }
+}
@@ -0,0 +1,23 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a provider rejects a call because its quota is exhausted (HTTP 429).
+ * Carries how long the caller should wait before trying again.
+ */
+public class ProviderRateLimitException extends RuntimeException {
+    private final UserHealthConnection.HealthProvider provider;
+    private final Duration retryAfter;
+
+    public ProviderRateLimitException(UserHealthConnection.HealthProvider provider, Duration retryAfter) {
+        super("RATE_LIMITED: " + provider + " retry after " + retryAfter.toSeconds() + "s");
+        this.provider = provider;
+        this.retryAfter = retryAfter;
+    }
+
+    public UserHealthConnection.HealthProvider getProvider() { return provider; }
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,212 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets in front of provider calls, one per app (provider) and one per
+ * user and provider. Buckets refill continuously and are corrected from the
+ * quota headers providers return, so a sync that would run out of budget is
+ * deferred instead of being attempted and failing with 429.
+ *
+ * <p>Backfills draw from a separate, smaller bucket per provider and may only use the
+ * app and user buckets above a reserved share, which stays available to regular syncs.
+ * Periodic syncs likewise leave a smaller share of the app bucket to interactive and
+ * manual syncs, so a user who just connected isn't deferred by the hourly fan-out.
+ */
+@Component
+public class ProviderRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRateLimiter.class);
+    private static final long HOUR_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Map<UserHealthConnection.HealthProvider, TokenBucket> appBuckets =
+            new EnumMap<>(UserHealthConnection.HealthProvider.class);
+    private final Map<UserHealthConnection.HealthProvider, Long> userCapacity =
+            new EnumMap<>(UserHealthConnection.HealthProvider.class);
+    private final Map<UserHealthConnection.HealthProvider, TokenBucket> backfillBuckets =
+            new EnumMap<>(UserHealthConnection.HealthProvider.class);
+    private final ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final double backfillReserve;
+    private final double interactiveReserve;
+
+    public ProviderRateLimiter(@Value("${app.rate-limit.fitbit.user-requests-per-hour:150}") long fitbitUser,
+                               @Value("${app.rate-limit.fitbit.app-requests-per-hour:150000}") long fitbitApp,
+                               @Value("${app.rate-limit.fitbit.backfill-requests-per-hour:15000}") long fitbitBackfill,
+                               @Value("${app.rate-limit.google-fit.user-requests-per-hour:3600}") long googleUser,
+                               @Value("${app.rate-limit.google-fit.app-requests-per-hour:360000}") long googleApp,
+                               @Value("${app.rate-limit.google-fit.backfill-requests-per-hour:36000}") long googleBackfill,
+                               @Value("${app.rate-limit.backfill-reserve:0.5}") double backfillReserve,
+                               @Value("${app.rate-limit.interactive-reserve:0.1}") double interactiveReserve) {
+        userCapacity.put(UserHealthConnection.HealthProvider.FITBIT, fitbitUser);
+        userCapacity.put(UserHealthConnection.HealthProvider.GOOGLE_FIT, googleUser);
+        appBuckets.put(UserHealthConnection.HealthProvider.FITBIT, new TokenBucket(fitbitApp));
+        appBuckets.put(UserHealthConnection.HealthProvider.GOOGLE_FIT, new TokenBucket(googleApp));
+        backfillBuckets.put(UserHealthConnection.HealthProvider.FITBIT, new TokenBucket(fitbitBackfill));
+        backfillBuckets.put(UserHealthConnection.HealthProvider.GOOGLE_FIT, new TokenBucket(googleBackfill));
+        this.backfillReserve = backfillReserve;
+        this.interactiveReserve = interactiveReserve;
+    }
+
+    /**
+     * Takes {@code permits} from both the app and the user bucket.
+     *
+     * @return {@link Duration#ZERO} when granted, otherwise how long to wait before retrying
+     */
+    public Duration tryAcquire(UserHealthConnection.HealthProvider provider, String userId, int permits) {
+        TokenBucket app = appBuckets.get(provider);
+        if (app == null) return Duration.ZERO;
+
+        TokenBucket user = userBucket(provider, userId);
+        long userWait = user.tryAcquire(permits);
+        if (userWait > 0) return Duration.ofNanos(userWait);
+
+        long appWait = app.tryAcquire(permits);
+        if (appWait > 0) {
+            user.refund(permits);
+            return Duration.ofNanos(appWait);
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Like {@link #tryAcquire}, but only while the app bucket stays above the share
+     * reserved for interactive and manual syncs.
+     *
+     * @return {@link Duration#ZERO} when granted, otherwise how long to wait before retrying
+     */
+    public Duration tryAcquirePeriodic(UserHealthConnection.HealthProvider provider, String userId, int permits) {
+        TokenBucket app = appBuckets.get(provider);
+        if (app == null) return Duration.ZERO;
+
+        TokenBucket user = userBucket(provider, userId);
+        long userWait = user.tryAcquire(permits);
+        if (userWait > 0) return Duration.ofNanos(userWait);
+
+        long appWait = app.tryAcquire(permits, interactiveReserve * app.capacity);
+        if (appWait > 0) {
+            user.refund(permits);
+            return Duration.ofNanos(appWait);
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Takes {@code permits} for a backfill: from the provider's backfill bucket, and from
+     * the user and app buckets only while they stay above the reserved share.
+     *
+     * @return {@link Duration#ZERO} when granted, otherwise how long to wait before retrying
+     */
+    public Duration tryAcquireBackfill(UserHealthConnection.HealthProvider provider, String userId, int permits) {
+        TokenBucket app = appBuckets.get(provider);
+        TokenBucket backfill = backfillBuckets.get(provider);
+        if (app == null || backfill == null) return Duration.ZERO;
+
+        long backfillWait = backfill.tryAcquire(permits, 0);
+        if (backfillWait > 0) return Duration.ofNanos(backfillWait);
+
+        TokenBucket user = userBucket(provider, userId);
+        long userWait = user.tryAcquire(permits, backfillReserve * userCapacity.get(provider));
+        if (userWait > 0) {
+            backfill.refund(permits);
+            return Duration.ofNanos(userWait);
+        }
+
+        long appWait = app.tryAcquire(permits, backfillReserve * app.capacity);
+        if (appWait > 0) {
+            user.refund(permits);
+            backfill.refund(permits);
+            return Duration.ofNanos(appWait);
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Aligns the user's bucket with the remaining budget reported by the provider,
+     * e.g. Fitbit-Rate-Limit-Remaining / Fitbit-Rate-Limit-Reset.
+     */
+    public void recordQuota(UserHealthConnection.HealthProvider provider, String userId, long remaining, long resetSeconds) {
+        if (!appBuckets.containsKey(provider)) return;
+        userBucket(provider, userId).sync(remaining, TimeUnit.SECONDS.toNanos(Math.max(0, resetSeconds)));
+    }
+
+    /** Blocks the user's bucket after the provider answered 429. */
+    public void recordThrottled(UserHealthConnection.HealthProvider provider, String userId, Duration retryAfter) {
+        if (!appBuckets.containsKey(provider)) return;
+        logger.warn("{} throttled user {}; pausing calls for {}s", provider, userId, retryAfter.toSeconds());
+        userBucket(provider, userId).sync(0, retryAfter.toNanos());
+    }
+
+    /** Full buckets behave exactly like new ones, so they can be dropped to bound memory. */
+    @Scheduled(fixedDelay = 600_000)
+    public void evictIdleBuckets() {
+        userBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    private TokenBucket userBucket(UserHealthConnection.HealthProvider provider, String userId) {
+        return userBuckets.computeIfAbsent(provider + ":" + userId, k -> new TokenBucket(userCapacity.get(provider)));
+    }
+
+    static final class TokenBucket {
+        private final long capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+        private long blockedUntil;
+
+        TokenBucket(long requestsPerHour) {
+            this.capacity = requestsPerHour;
+            this.refillPerNano = (double) requestsPerHour / HOUR_NANOS;
+            this.tokens = requestsPerHour;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized long tryAcquire(int permits) {
+            return tryAcquire(permits, 0);
+        }
+
+        /** Grants {@code permits} only if at least {@code floor} tokens are left afterwards. */
+        synchronized long tryAcquire(int permits, double floor) {
+            long now = refill();
+            if (now < blockedUntil) return blockedUntil - now;
+            if (tokens - permits >= floor) {
+                tokens -= permits;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((permits + floor - tokens) / refillPerNano));
+        }
+
+        synchronized void refund(int permits) {
+            tokens = Math.min(capacity, tokens + permits);
+        }
+
+        synchronized void sync(long remaining, long resetNanos) {
+            long now = refill();
+            tokens = Math.min(tokens, remaining);
+            if (remaining <= 0) {
+                blockedUntil = Math.max(blockedUntil, now + resetNanos);
+            }
+        }
+
+        synchronized boolean isFull() {
+            long now = refill();
+            return now >= blockedUntil && tokens >= capacity;
+        }
+
+        private long refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            return now;
+        }
+    }
+}
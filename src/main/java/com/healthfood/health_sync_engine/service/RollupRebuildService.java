@@ -0,0 +1,92 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.RollupRebuild;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.RollupRebuildRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Background rollup rebuilds. Rebuilds are queued per connection, or for all connections
+ * at once, and each tick leases a few due ones and recomputes them with
+ * {@link MetricRollupService#rebuild}. A failed rebuild is retried with backoff; one
+ * interrupted by a crash is claimed again when its lease expires.
+ */
+@Service
+public class RollupRebuildService {
+    private static final Logger logger = LoggerFactory.getLogger(RollupRebuildService.class);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(6);
+
+    private final RollupRebuildRepository rebuildRepository;
+    private final MetricRollupService metricRollupService;
+
+    @Value("${app.health.rollups.rebuild.batch-size:10}")
+    private int batchSize;
+
+    @Value("${app.health.rollups.rebuild.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${app.health.rollups.rebuild.max-failures:5}")
+    private int maxFailures;
+
+    @Value("${app.health.rollups.rebuild.retry-delay-seconds:60}")
+    private long retryDelaySeconds;
+
+    public RollupRebuildService(RollupRebuildRepository rebuildRepository, MetricRollupService metricRollupService) {
+        this.rebuildRepository = rebuildRepository;
+        this.metricRollupService = metricRollupService;
+    }
+
+    public void enqueue(String userId, UserHealthConnection.HealthProvider provider) {
+        rebuildRepository.enqueue(userId, provider);
+    }
+
+    /** Queues a rebuild of every connection; returns how many were queued. */
+    public int enqueueAll() {
+        int queued = rebuildRepository.enqueueAll();
+        logger.info("Queued rollup rebuilds for {} connections", queued);
+        return queued;
+    }
+
+    public Optional<RollupRebuild> find(String userId, UserHealthConnection.HealthProvider provider) {
+        return rebuildRepository.findByUserIdAndProvider(userId, provider);
+    }
+
+    /** Drains due rebuilds batch by batch until none are left. */
+    @Scheduled(fixedDelayString = "${app.health.rollups.rebuild.interval-ms:5000}")
+    public void runDue() {
+        List<RollupRebuild> due;
+        do {
+            due = rebuildRepository.claimDue(batchSize, Duration.ofSeconds(leaseSeconds));
+            due.forEach(this::run);
+        } while (due.size() == batchSize);
+    }
+
+    private void run(RollupRebuild rebuild) {
+        try {
+            int rollups = metricRollupService.rebuild(rebuild.getUserId(), rebuild.getProvider());
+            rebuildRepository.complete(rebuild.getId(), rebuild.getLeaseUntil(), rollups, LocalDateTime.now());
+        } catch (Exception e) {
+            int failures = rebuild.getFailures() + 1;
+            boolean exhausted = failures >= maxFailures;
+            Duration delay = Duration.ofSeconds(retryDelaySeconds).multipliedBy(1L << Math.min(failures - 1, 16));
+            if (delay.compareTo(MAX_RETRY_DELAY) > 0) {
+                delay = MAX_RETRY_DELAY;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            rebuildRepository.recordFailure(rebuild.getId(), rebuild.getLeaseUntil(),
+                    exhausted ? RollupRebuild.Status.FAILED : RollupRebuild.Status.PENDING,
+                    e.getMessage(), now.plus(delay), now);
+            logger.error("Rollup rebuild for user {} and provider {} failed{}: {}", rebuild.getUserId(),
+                    rebuild.getProvider(), exhausted ? ", giving up" : "", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.consumer.SyncLane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Re-publishes a sync request once the provider budget is expected to be available again,
+ * to the topic of the lane it came from; manual jobs go to the interactive topic.
+ * Deferred requests live in memory only; if the instance stops first, the next periodic
+ * sync picks the user up.
+ */
+@Service
+public class SyncDeferralService {
+    private static final Logger logger = LoggerFactory.getLogger(SyncDeferralService.class);
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TaskScheduler taskScheduler;
+
+    @Value("${app.health.sync.topic}")
+    private String syncTopic;
+
+    @Value("${app.health.sync.periodic.topic}")
+    private String periodicTopic;
+
+    public SyncDeferralService(KafkaTemplate<String, String> kafkaTemplate, TaskScheduler taskScheduler) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.taskScheduler = taskScheduler;
+    }
+
+    public void defer(String userId, String message, Duration delay, SyncLane lane) {
+        Instant at = Instant.now().plus(delay);
+        String topic = lane == SyncLane.PERIODIC ? periodicTopic : syncTopic;
+        logger.info("Deferring {} sync for user {} until {}", lane.tag(), userId, at);
+        taskScheduler.schedule(() -> kafkaTemplate.send(topic, userId, message), at);
+    }
+}
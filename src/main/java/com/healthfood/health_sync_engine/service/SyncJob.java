@@ -0,0 +1,66 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.consumer.SyncOutcome;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A manually triggered sync and its progress. Fields are written by the job
+ * thread and read by status requests, hence volatile.
+ */
+public class SyncJob {
+    public enum State { QUEUED, RUNNING, COMPLETED }
+
+    private final String id;
+    private final String userId;
+    private final UserHealthConnection.HealthProvider provider;
+    private final boolean initialSync;
+    private final Instant submittedAt = Instant.now();
+    private volatile State state = State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile SyncOutcome outcome;
+
+    public SyncJob(String id, String userId, UserHealthConnection.HealthProvider provider, boolean initialSync) {
+        this.id = id;
+        this.userId = userId;
+        this.provider = provider;
+        this.initialSync = initialSync;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        state = State.RUNNING;
+    }
+
+    void markCompleted(SyncOutcome result) {
+        outcome = result;
+        finishedAt = Instant.now();
+        state = State.COMPLETED;
+    }
+
+    public String getId() { return id; }
+    public String getUserId() { return userId; }
+    public UserHealthConnection.HealthProvider getProvider() { return provider; }
+    public boolean isInitialSync() { return initialSync; }
+    public State getState() { return state; }
+    public Instant getSubmittedAt() { return submittedAt; }
+    public Instant getStartedAt() { return startedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public SyncOutcome getOutcome() { return outcome; }
+
+    /** Time spent waiting for an executor thread, in milliseconds. */
+    public Long getQueuedMillis() {
+        Instant started = startedAt;
+        return started != null ? Duration.between(submittedAt, started).toMillis() : null;
+    }
+
+    /** Time spent running the sync, in milliseconds. */
+    public Long getRunMillis() {
+        Instant started = startedAt;
+        Instant finished = finishedAt;
+        return started != null && finished != null ? Duration.between(started, finished).toMillis() : null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthfood.health_sync_engine.consumer.HealthSyncConsumer;
+import com.healthfood.health_sync_engine.consumer.SyncLane;
+import com.healthfood.health_sync_engine.consumer.SyncOutcome;
+import com.healthfood.health_sync_engine.consumer.SyncRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Runs manually triggered syncs as background jobs on a bounded executor and keeps
+ * their status for a while so callers can poll it.
+ */
+@Service
+public class SyncJobService {
+    private static final Logger logger = LoggerFactory.getLogger(SyncJobService.class);
+
+    private final HealthSyncConsumer healthSyncConsumer;
+    private final ThreadPoolTaskExecutor syncJobExecutor;
+    private final Cache<String, SyncJob> jobs;
+
+    public SyncJobService(HealthSyncConsumer healthSyncConsumer,
+                          @Qualifier("syncJobExecutor") ThreadPoolTaskExecutor syncJobExecutor,
+                          @Value("${app.health.sync.jobs.retention-minutes:60}") long retentionMinutes) {
+        this.healthSyncConsumer = healthSyncConsumer;
+        this.syncJobExecutor = syncJobExecutor;
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .build();
+    }
+
+    /**
+     * Queues a sync job.
+     *
+     * @throws TaskRejectedException when the executor is saturated
+     */
+    public SyncJob submit(SyncRequest request) {
+        SyncJob job = new SyncJob(UUID.randomUUID().toString(), request.userId(), request.provider(), request.initialSync());
+        jobs.put(job.getId(), job);
+        try {
+            syncJobExecutor.execute(() -> run(job, request));
+        } catch (TaskRejectedException e) {
+            jobs.invalidate(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<SyncJob> find(String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+    private void run(SyncJob job, SyncRequest request) {
+        job.markRunning();
+        try {
+            job.markCompleted(healthSyncConsumer.process(request, SyncLane.MANUAL));
+        } catch (Exception e) {
+            logger.error("Sync job {} failed: {}", job.getId(), e.getMessage());
+            job.markCompleted(new SyncOutcome(SyncOutcome.Status.FAILED, 0, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.consumer.SyncLane;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Meters for the sync pipeline (all but the listener lag are tagged by provider; the
+ * duration, outcomes and listener lag are also tagged by {@link SyncLane}):
+ * <ul>
+ *   <li>{@code health.sync.stage} - time per stage of a sync (histogram)</li>
+ *   <li>{@code health.sync.duration} - end-to-end time per outcome (histogram)</li>
+ *   <li>{@code health.sync.outcomes} - syncs per outcome</li>
+ *   <li>{@code health.sync.rows} - daily rows written vs. skipped as unchanged</li>
+ *   <li>{@code health.sync.provider.errors} - provider responses that degraded a sync</li>
+ *   <li>{@code health.sync.in_flight} - syncs currently running</li>
+ *   <li>{@code health.sync.listener.lag} - age of a request when the listener picks it up</li>
+ *   <li>{@code health.sync.retries} - failed syncs sent to the retry topics, and those that ran out of attempts</li>
+ *   <li>{@code health.provider.circuit.state}, {@code health.provider.circuit.transitions} - provider
+ *       circuit breaker state (0 closed, 1 half-open, 2 open) and its changes</li>
+ *   <li>{@code health.backfill.chunks}, {@code health.backfill.days} - backfill chunks by result, days they changed</li>
+ * </ul>
+ */
+@Component
+public class SyncMetrics {
+
+    public enum Stage {
+        CONNECTION_LOOKUP, TOKEN_DECRYPT, PROVIDER_FETCH, CHANGE_DETECTION, METRIC_ENCRYPT, DB_UPSERT;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /** Provider responses that don't fail the sync outright but are worth alerting on. */
+    public enum ProviderError {
+        /** 403 on some data types; retried with fewer types. */
+        PERMISSION_DOWNGRADE,
+        /** 401; the user's grant is gone. */
+        AUTH_REVOKED,
+        /** Quota exhausted; the sync is deferred. */
+        RATE_LIMITED,
+        /** Any other non-2xx or transport error. */
+        HTTP_ERROR;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    // Upper bound of the histogram buckets; a 30-day Fitbit fallback can take minutes
+    private static final Duration MAX_SYNC_DURATION = Duration.ofMinutes(5);
+
+    private final MeterRegistry meterRegistry;
+    // Registered on first use so providers without server-side sync add no series
+    private final Map<UserHealthConnection.HealthProvider, Map<Stage, Timer>> stageTimers = new ConcurrentHashMap<>();
+    private final Map<UserHealthConnection.HealthProvider, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Timer> durations = new ConcurrentHashMap<>();
+    private final Map<String, Counter> outcomes = new ConcurrentHashMap<>();
+    private final Map<SyncLane, Timer> listenerLag = new ConcurrentHashMap<>();
+
+    public SyncMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T time(Stage stage, UserHealthConnection.HealthProvider provider, Supplier<T> work) {
+        return stageTimer(stage, provider).record(work);
+    }
+
+    public void record(Stage stage, UserHealthConnection.HealthProvider provider, long nanos) {
+        stageTimer(stage, provider).record(Duration.ofNanos(nanos));
+    }
+
+    public void syncStarted(UserHealthConnection.HealthProvider provider) {
+        inFlight(provider).incrementAndGet();
+    }
+
+    /** Ends a sync started with {@link #syncStarted}, counting it under {@code outcome}. */
+    public void syncFinished(UserHealthConnection.HealthProvider provider, SyncLane lane, String outcome, long nanos) {
+        inFlight(provider).decrementAndGet();
+        String key = provider.name() + ':' + lane.tag() + ':' + outcome;
+        durations.computeIfAbsent(key, k -> Timer.builder("health.sync.duration")
+                        .description("End-to-end duration of a sync")
+                        .tag("provider", provider.name())
+                        .tag("lane", lane.tag())
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .maximumExpectedValue(MAX_SYNC_DURATION)
+                        .register(meterRegistry))
+                .record(Duration.ofNanos(nanos));
+        outcomes.computeIfAbsent(key, k -> Counter.builder("health.sync.outcomes")
+                        .description("Syncs by outcome")
+                        .tag("provider", provider.name())
+                        .tag("lane", lane.tag())
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public void rows(UserHealthConnection.HealthProvider provider, int changed, int unchanged) {
+        meterRegistry.counter("health.sync.rows", "provider", provider.name(), "result", "changed").increment(changed);
+        meterRegistry.counter("health.sync.rows", "provider", provider.name(), "result", "unchanged").increment(unchanged);
+    }
+
+    public void providerError(UserHealthConnection.HealthProvider provider, ProviderError error) {
+        meterRegistry.counter("health.sync.provider.errors", "provider", provider.name(), "error", error.tag).increment();
+    }
+
+    /** {@code result}: scheduled, dead_lettered (permanent failure) or exhausted (out of attempts). */
+    public void retry(UserHealthConnection.HealthProvider provider, String result) {
+        meterRegistry.counter("health.sync.retries", "provider", provider.name(), "result", result).increment();
+    }
+
+    public void circuitState(UserHealthConnection.HealthProvider provider, Supplier<Number> state) {
+        Gauge.builder("health.provider.circuit.state", state)
+                .description("Provider circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .tag("provider", provider.name())
+                .register(meterRegistry);
+    }
+
+    public void circuitTransition(UserHealthConnection.HealthProvider provider, String state) {
+        meterRegistry.counter("health.provider.circuit.transitions", "provider", provider.name(), "state", state).increment();
+    }
+
+    public void backfillChunk(UserHealthConnection.HealthProvider provider, String result, int daysChanged) {
+        meterRegistry.counter("health.backfill.chunks", "provider", provider.name(), "result", result).increment();
+        if (daysChanged > 0) {
+            meterRegistry.counter("health.backfill.days", "provider", provider.name()).increment(daysChanged);
+        }
+    }
+
+    public void listenerLag(SyncLane lane, long producedAtMillis) {
+        long lag = System.currentTimeMillis() - producedAtMillis;
+        if (producedAtMillis > 0 && lag >= 0) {
+            listenerLag.computeIfAbsent(lane, l -> Timer.builder("health.sync.listener.lag")
+                            .description("Time between a sync request being produced and the listener receiving it")
+                            .tag("lane", l.tag())
+                            .publishPercentileHistogram()
+                            .maximumExpectedValue(Duration.ofHours(1))
+                            .register(meterRegistry))
+                    .record(Duration.ofMillis(lag));
+        }
+    }
+
+    private Timer stageTimer(Stage stage, UserHealthConnection.HealthProvider provider) {
+        return stageTimers.computeIfAbsent(provider, p -> {
+            Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+            for (Stage each : Stage.values()) {
+                timers.put(each, Timer.builder("health.sync.stage")
+                        .description("Time spent in one stage of a sync")
+                        .tag("provider", p.name())
+                        .tag("stage", each.tag)
+                        .publishPercentileHistogram()
+                        .maximumExpectedValue(MAX_SYNC_DURATION)
+                        .register(meterRegistry));
+            }
+            return timers;
+        }).get(stage);
+    }
+
+    private AtomicInteger inFlight(UserHealthConnection.HealthProvider provider) {
+        return inFlight.computeIfAbsent(provider, p -> {
+            AtomicInteger running = new AtomicInteger();
+            Gauge.builder("health.sync.in_flight", running, AtomicInteger::get)
+                    .description("Syncs currently running")
+                    .tag("provider", p.name())
+                    .register(meterRegistry);
+            return running;
+        });
+    }
+}
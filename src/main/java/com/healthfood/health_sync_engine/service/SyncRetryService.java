@@ -0,0 +1,82 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.RetryTopicHeaders;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hands failed syncs to the retry topics. A transient failure is published to
+ * {@code health.sync.failed} with a backoff timestamp, so its first retry already
+ * waits {@code initial-delay-ms}; from there the retry listener forwards it through
+ * the exponential retry topics and finally the dead-letter topic. Permanent failures
+ * go to the dead-letter topic directly.
+ */
+@Service
+public class SyncRetryService {
+    private static final Logger logger = LoggerFactory.getLogger(SyncRetryService.class);
+
+    /** Set on records this service dead-letters itself, i.e. failures never retried. */
+    public static final String FAILURE_HEADER = "x-sync-failure";
+    /** Error of the failed sync that put the request on the retry topic. */
+    public static final String ERROR_HEADER = "x-sync-error";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final SyncMetrics syncMetrics;
+
+    @Value("${app.health.sync.retry.topic:health.sync.failed}")
+    private String retryTopic;
+
+    @Value("${app.health.sync.retry.initial-delay-ms:30000}")
+    private long initialDelayMs;
+
+    public SyncRetryService(KafkaTemplate<String, String> kafkaTemplate, SyncMetrics syncMetrics) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.syncMetrics = syncMetrics;
+    }
+
+    /** Dead-letter topic, named the way the retry topic configuration derives it. */
+    public String deadLetterTopic() {
+        return retryTopic + "-dlt";
+    }
+
+    public void retry(String userId, UserHealthConnection.HealthProvider provider, String message, String error) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(retryTopic, userId, message);
+        // Same encoding the retry topic listener adapter reads back
+        record.headers().add(RetryTopicHeaders.DEFAULT_HEADER_BACKOFF_TIMESTAMP,
+                BigInteger.valueOf(System.currentTimeMillis() + initialDelayMs).toByteArray());
+        record.headers().add(ERROR_HEADER, bytes(error));
+        send(record, userId);
+        syncMetrics.retry(provider, "scheduled");
+        logger.info("Scheduled retry of {} sync for user {} in {} ms: {}", provider, userId, initialDelayMs, error);
+    }
+
+    public void deadLetter(String userId, UserHealthConnection.HealthProvider provider,
+                           String message, ProviderException.Kind failure, String error) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(deadLetterTopic(), userId, message);
+        record.headers().add(FAILURE_HEADER, bytes(failure.name()));
+        record.headers().add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, bytes(error));
+        send(record, userId);
+        syncMetrics.retry(provider, "dead_lettered");
+    }
+
+    private void send(ProducerRecord<String, String> record, String userId) {
+        kafkaTemplate.send(record).whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Failed to publish failed sync for user {} to {}: {}", userId, record.topic(), error.getMessage());
+            }
+        });
+    }
+
+    private static byte[] bytes(String value) {
+        return (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+    }
+}
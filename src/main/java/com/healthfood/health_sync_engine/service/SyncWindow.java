@@ -0,0 +1,34 @@
+package com.healthfood.health_sync_engine.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time range a single sync fetches from a provider. {@code start} is always aligned
+ * to midnight so provider day buckets line up with the stored daily rows.
+ */
+public record SyncWindow(LocalDateTime start, LocalDateTime end) {
+
+    /** True when the daily bucket starting at {@code day} falls inside this window. */
+    public boolean containsDay(LocalDateTime day) {
+        return !day.isBefore(start) && !day.isAfter(end);
+    }
+
+    /**
+     * Consecutive windows of at most {@code maxDays} days covering this one, oldest
+     * first. Every chunk but the last ends just before the next one's midnight, so no
+     * day is fetched twice.
+     */
+    public List<SyncWindow> split(int maxDays) {
+        List<SyncWindow> chunks = new ArrayList<>();
+        LocalDateTime chunkStart = start;
+        while (!chunkStart.isAfter(end)) {
+            LocalDateTime next = chunkStart.plusDays(Math.max(1, maxDays));
+            LocalDateTime chunkEnd = next.isAfter(end) ? end : next.minusNanos(1);
+            chunks.add(new SyncWindow(chunkStart, chunkEnd));
+            chunkStart = next;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,38 @@
+package com.healthfood.health_sync_engine.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Computes the fetch window from the connection's lastSyncedAt watermark.
+ * Incremental syncs start a little before the watermark to pick up data the
+ * provider delivered late, and never reach back further than the maximum span.
+ */
+@Component
+public class SyncWindowPolicy {
+
+    @Value("${app.health.sync.window.initial-days:30}")
+    private int initialDays;
+
+    @Value("${app.health.sync.window.overlap-hours:6}")
+    private long overlapHours;
+
+    @Value("${app.health.sync.window.max-days:30}")
+    private int maxDays;
+
+    public SyncWindow windowFor(LocalDateTime lastSyncedAt, boolean initialSync, LocalDateTime now) {
+        LocalDateTime start;
+        if (initialSync || lastSyncedAt == null) {
+            start = now.minusDays(initialDays);
+        } else {
+            start = lastSyncedAt.minusHours(overlapHours);
+            LocalDateTime earliest = now.minusDays(maxDays);
+            if (start.isBefore(earliest)) {
+                start = earliest;
+            }
+        }
+        return new SyncWindow(start.toLocalDate().atStartOfDay(), now);
+    }
+}
@@ -4,27 +4,46 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
-import java.util.Base64;
-import java.util.HexFormat;
 
+/**
+ * AES-256-GCM for tokens and metric values, stored as {@code hex(iv):hex(tag):hex(data)}.
+ * The key object and SecureRandom are shared; Cipher instances are not thread-safe and
+ * are kept one per thread. Hex encoding and decoding work directly on the cipher
+ * buffers to avoid intermediate copies.
+ */
 @Component
 public class EncryptionUtil {
 
-    private final byte[] key;
     private static final String ALGORITHM = "AES/GCM/NoPadding";
     private static final int TAG_LENGTH_BIT = 128;
+    private static final int TAG_LENGTH = TAG_LENGTH_BIT / 8;
+    private static final int IV_LENGTH = 12;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String FINGERPRINT_ALGORITHM = "HmacSHA256";
+
+    private final SecretKey secretKey;
+    private final SecretKey fingerprintKey;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(EncryptionUtil::newCipher);
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
 
     public EncryptionUtil(@Value("${app.encryption.key:a-very-secret-key-that-is-32-chars-long-!!!}") String secret) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            this.key = digest.digest(secret.getBytes(StandardCharsets.UTF_8));
+            this.secretKey = new SecretKeySpec(digest.digest(secret.getBytes(StandardCharsets.UTF_8)), "AES");
+            // Separate key for fingerprints, derived so the AES key is never used for two purposes
+            Mac derive = Mac.getInstance(FINGERPRINT_ALGORITHM);
+            derive.init(new SecretKeySpec(secretKey.getEncoded(), FINGERPRINT_ALGORITHM));
+            this.fingerprintKey = new SecretKeySpec(
+                    derive.doFinal("metric-fingerprint".getBytes(StandardCharsets.UTF_8)), FINGERPRINT_ALGORITHM);
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize EncryptionUtil", e);
         }
@@ -33,27 +52,23 @@ public class EncryptionUtil {
     public String encrypt(String text) {
         if (text == null) return null;
         try {
-            byte[] iv = new byte[12];
-            new SecureRandom().nextBytes(iv);
+            byte[] iv = new byte[IV_LENGTH];
+            secureRandom.nextBytes(iv);
 
-            SecretKey secretKey = new SecretKeySpec(this.key, "AES");
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH_BIT, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, spec);
-
-            byte[] encrypted = cipher.doFinal(text.getBytes(StandardCharsets.UTF_8));
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
 
             // Java GCM doFinal: [encryptedData][authTag]
-            int tagLength = TAG_LENGTH_BIT / 8;
-            byte[] authTag = new byte[tagLength];
-            byte[] encryptedData = new byte[encrypted.length - tagLength];
-
-            System.arraycopy(encrypted, encrypted.length - tagLength, authTag, 0, tagLength);
-            System.arraycopy(encrypted, 0, encryptedData, 0, encryptedData.length);
-
-            return HexFormat.of().formatHex(iv) + ":" +
-                    HexFormat.of().formatHex(authTag) + ":" +
-                    HexFormat.of().formatHex(encryptedData);
+            byte[] encrypted = cipher.doFinal(text.getBytes(StandardCharsets.UTF_8));
+            int dataLength = encrypted.length - TAG_LENGTH;
+
+            char[] out = new char[(IV_LENGTH + encrypted.length) * 2 + 2];
+            int pos = writeHex(iv, 0, IV_LENGTH, out, 0);
+            out[pos++] = ':';
+            pos = writeHex(encrypted, dataLength, TAG_LENGTH, out, pos);
+            out[pos++] = ':';
+            writeHex(encrypted, 0, dataLength, out, pos);
+            return new String(out);
         } catch (Exception e) {
             throw new RuntimeException("Encryption failed", e);
         }
@@ -64,24 +79,22 @@ public class EncryptionUtil {
             return encryptedText;
         }
 
-        try {
-            String[] parts = encryptedText.split(":");
-            if (parts.length != 3) return encryptedText;
+        int first = encryptedText.indexOf(':');
+        int second = encryptedText.indexOf(':', first + 1);
+        if (second < 0 || encryptedText.indexOf(':', second + 1) >= 0) return encryptedText;
 
-            byte[] iv = HexFormat.of().parseHex(parts[0]);
-            byte[] authTag = HexFormat.of().parseHex(parts[1]);
-            byte[] encryptedData = HexFormat.of().parseHex(parts[2]);
+        try {
+            byte[] iv = readHex(encryptedText, 0, first, new byte[first / 2], 0);
 
-            // Node.js GCM is encryptedData + authTag usually, but here they are split
-            // In Java, Cipher expects encryptedData + authTag concatenated for GCM
-            byte[] combined = new byte[encryptedData.length + authTag.length];
-            System.arraycopy(encryptedData, 0, combined, 0, encryptedData.length);
-            System.arraycopy(authTag, 0, combined, encryptedData.length, authTag.length);
+            // Cipher expects encryptedData + authTag concatenated, so decode both straight into one buffer
+            int tagChars = second - first - 1;
+            int dataChars = encryptedText.length() - second - 1;
+            byte[] combined = new byte[(dataChars + tagChars) / 2];
+            readHex(encryptedText, second + 1, encryptedText.length(), combined, 0);
+            readHex(encryptedText, first + 1, second, combined, dataChars / 2);
 
-            SecretKey secretKey = new SecretKeySpec(this.key, "AES");
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH_BIT, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, spec);
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
 
             byte[] decrypted = cipher.doFinal(combined);
             return new String(decrypted, StandardCharsets.UTF_8);
@@ -89,4 +102,82 @@ public class EncryptionUtil {
             return encryptedText; // Fallback to raw if decryption fails
         }
     }
+
+    /**
+     * Binary form used for whole-row payloads: {@code iv || ciphertext || tag}, with
+     * {@code aad} authenticated but not stored.
+     */
+    public byte[] seal(byte[] plaintext, byte[] aad) {
+        try {
+            byte[] out = new byte[IV_LENGTH + plaintext.length + TAG_LENGTH];
+            byte[] iv = new byte[IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BIT, iv));
+            cipher.updateAAD(aad);
+            cipher.doFinal(plaintext, 0, plaintext.length, out, IV_LENGTH);
+            return out;
+        } catch (Exception e) {
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    /** Reverses {@link #seal}. Unlike {@link #decrypt}, a payload that fails authentication is an error. */
+    public byte[] open(byte[] sealed, byte[] aad) {
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH_BIT, sealed, 0, IV_LENGTH));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+        } catch (Exception e) {
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
+
+    /**
+     * Keyed hash (HMAC-SHA256) of {@code data}. Deterministic, unlike {@link #seal}, so it
+     * can tell whether plaintext changed without storing or decrypting it.
+     */
+    public byte[] fingerprint(byte[] data) {
+        return macs.get().doFinal(data);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(FINGERPRINT_ALGORITHM);
+            mac.init(fingerprintKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    }
+
+    private static int writeHex(byte[] src, int offset, int length, char[] dst, int pos) {
+        for (int i = offset; i < offset + length; i++) {
+            dst[pos++] = HEX_DIGITS[(src[i] >> 4) & 0x0f];
+            dst[pos++] = HEX_DIGITS[src[i] & 0x0f];
+        }
+        return pos;
+    }
+
+    private static byte[] readHex(String src, int from, int to, byte[] dst, int pos) {
+        if (((to - from) & 1) != 0) throw new IllegalArgumentException("Odd hex length");
+        for (int i = from; i < to; i += 2) {
+            int hi = Character.digit(src.charAt(i), 16);
+            int lo = Character.digit(src.charAt(i + 1), 16);
+            if (hi < 0 || lo < 0) throw new IllegalArgumentException("Invalid hex digit");
+            dst[pos++] = (byte) ((hi << 4) | lo);
+        }
+        return dst;
+    }
 }
@@ -0,0 +1,195 @@
+package com.healthfood.health_sync_engine.util;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.MetricTotals;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Row-level storage format for {@link HealthMetricDaily}: all metric values are
+ * encoded into one compact binary record and sealed with a single AES-GCM call,
+ * instead of one IV, tag and hex string per field.
+ *
+ * <p>Plaintext layout (v1): {@code [version][presence mask][fields...]} where
+ * steps and active minutes are unsigned varints and the remaining fields are
+ * IEEE-754 doubles, written only when their mask bit is set. The row identity
+ * (user, date, provider) is bound as associated data so a payload cannot be
+ * copied onto another row.
+ *
+ * <p>Rows written before this format keep their per-field hex ciphertexts;
+ * {@link #open} reads both, and such rows are converted the next time a sync
+ * upserts them.
+ *
+ * <p>Rollup totals use their own layout (v1): {@code [version][days]} followed by
+ * {@code [count][sum]} per field, with the sum present only for a non-zero count.
+ */
+@Component
+public class MetricPayloadCodec {
+    static final byte FORMAT_V1 = 1;
+
+    private static final int STEPS = 1;
+    private static final int CALORIES = 1 << 1;
+    private static final int DISTANCE = 1 << 2;
+    private static final int ACTIVE_MINUTES = 1 << 3;
+    private static final int HEART_RATE = 1 << 4;
+    private static final int BLOOD_OXYGEN = 1 << 5;
+    private static final int SLEEP_HOURS = 1 << 6;
+
+    // version + mask + 2 varints (max 10 bytes each) + 5 doubles
+    private static final int MAX_ENCODED_LENGTH = 2 + 2 * 10 + 5 * Double.BYTES;
+    // version + days varint + (count varint + double) per field
+    private static final int MAX_TOTALS_LENGTH = 1 + 10 + MetricTotals.FIELDS * (10 + Double.BYTES);
+
+    private final EncryptionUtil encryptionUtil;
+
+    public MetricPayloadCodec(EncryptionUtil encryptionUtil) {
+        this.encryptionUtil = encryptionUtil;
+    }
+
+    public byte[] seal(HealthMetricDaily row, MetricValues values) {
+        return encryptionUtil.seal(encode(values), associatedData(row));
+    }
+
+    public byte[] sealTotals(HealthMetricRollup rollup, MetricTotals totals) {
+        return encryptionUtil.seal(encodeTotals(totals), associatedData(rollup));
+    }
+
+    public MetricTotals openTotals(HealthMetricRollup rollup) {
+        return decodeTotals(encryptionUtil.open(rollup.getPayload(), associatedData(rollup)));
+    }
+
+    /** Keyed fingerprint of the values, stored in {@code content_hash} to detect unchanged days. */
+    public byte[] fingerprint(MetricValues values) {
+        return encryptionUtil.fingerprint(encode(values));
+    }
+
+    /** Decodes a row in either the sealed payload format or the legacy per-field format. */
+    public MetricValues open(HealthMetricDaily row) {
+        if (row.getPayload() != null) {
+            return decode(encryptionUtil.open(row.getPayload(), associatedData(row)));
+        }
+        HealthMetricDaily plaintext = new HealthMetricDaily();
+        plaintext.setSteps(encryptionUtil.decrypt(row.getSteps()));
+        plaintext.setCalories(encryptionUtil.decrypt(row.getCalories()));
+        plaintext.setDistance(encryptionUtil.decrypt(row.getDistance()));
+        plaintext.setActiveMinutes(encryptionUtil.decrypt(row.getActiveMinutes()));
+        plaintext.setHeartRate(encryptionUtil.decrypt(row.getHeartRate()));
+        plaintext.setBloodOxygen(encryptionUtil.decrypt(row.getBloodOxygen()));
+        plaintext.setSleepHours(encryptionUtil.decrypt(row.getSleepHours()));
+        return MetricValues.of(plaintext);
+    }
+
+    static byte[] encode(MetricValues values) {
+        byte[] buf = new byte[MAX_ENCODED_LENGTH];
+        int mask = (values.steps() != null ? STEPS : 0)
+                | (values.calories() != null ? CALORIES : 0)
+                | (values.distance() != null ? DISTANCE : 0)
+                | (values.activeMinutes() != null ? ACTIVE_MINUTES : 0)
+                | (values.heartRate() != null ? HEART_RATE : 0)
+                | (values.bloodOxygen() != null ? BLOOD_OXYGEN : 0)
+                | (values.sleepHours() != null ? SLEEP_HOURS : 0);
+        buf[0] = FORMAT_V1;
+        buf[1] = (byte) mask;
+        int pos = 2;
+        if (values.steps() != null) pos = writeVarLong(buf, pos, values.steps());
+        if (values.calories() != null) pos = writeDouble(buf, pos, values.calories());
+        if (values.distance() != null) pos = writeDouble(buf, pos, values.distance());
+        if (values.activeMinutes() != null) pos = writeVarLong(buf, pos, values.activeMinutes());
+        if (values.heartRate() != null) pos = writeDouble(buf, pos, values.heartRate());
+        if (values.bloodOxygen() != null) pos = writeDouble(buf, pos, values.bloodOxygen());
+        if (values.sleepHours() != null) pos = writeDouble(buf, pos, values.sleepHours());
+        return Arrays.copyOf(buf, pos);
+    }
+
+    static MetricValues decode(byte[] buf) {
+        if (buf.length < 2 || buf[0] != FORMAT_V1) {
+            throw new IllegalArgumentException("Unsupported metric payload version");
+        }
+        int mask = buf[1] & 0xff;
+        int[] pos = {2};
+        Long steps = (mask & STEPS) != 0 ? readVarLong(buf, pos) : null;
+        Double calories = (mask & CALORIES) != 0 ? readDouble(buf, pos) : null;
+        Double distance = (mask & DISTANCE) != 0 ? readDouble(buf, pos) : null;
+        Long activeMinutes = (mask & ACTIVE_MINUTES) != 0 ? readVarLong(buf, pos) : null;
+        Double heartRate = (mask & HEART_RATE) != 0 ? readDouble(buf, pos) : null;
+        Double bloodOxygen = (mask & BLOOD_OXYGEN) != 0 ? readDouble(buf, pos) : null;
+        Double sleepHours = (mask & SLEEP_HOURS) != 0 ? readDouble(buf, pos) : null;
+        return new MetricValues(steps, calories, distance, activeMinutes, heartRate, bloodOxygen, sleepHours);
+    }
+
+    static byte[] encodeTotals(MetricTotals totals) {
+        byte[] buf = new byte[MAX_TOTALS_LENGTH];
+        buf[0] = FORMAT_V1;
+        int pos = writeVarLong(buf, 1, totals.days());
+        for (int field = 0; field < MetricTotals.FIELDS; field++) {
+            pos = writeVarLong(buf, pos, totals.count(field));
+            if (totals.count(field) > 0) pos = writeDouble(buf, pos, totals.sum(field));
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    static MetricTotals decodeTotals(byte[] buf) {
+        if (buf.length < 2 || buf[0] != FORMAT_V1) {
+            throw new IllegalArgumentException("Unsupported rollup payload version");
+        }
+        int[] pos = {1};
+        int days = (int) readVarLong(buf, pos);
+        double[] sums = new double[MetricTotals.FIELDS];
+        int[] counts = new int[MetricTotals.FIELDS];
+        for (int field = 0; field < MetricTotals.FIELDS; field++) {
+            counts[field] = (int) readVarLong(buf, pos);
+            if (counts[field] > 0) sums[field] = readDouble(buf, pos);
+        }
+        return new MetricTotals(days, sums, counts);
+    }
+
+    private static byte[] associatedData(HealthMetricRollup rollup) {
+        return (rollup.getUserId() + "|" + rollup.getSourceProvider() + "|" + rollup.getPeriod() + "|" + rollup.getPeriodStart())
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] associatedData(HealthMetricDaily row) {
+        return (row.getUserId() + "|" + row.getDate() + "|" + row.getSourceProvider()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int writeVarLong(byte[] buf, int pos, long value) {
+        // Counts never go negative; clamp so a bad provider value can't blow up the encoding
+        long v = Math.max(0, value);
+        while ((v & ~0x7fL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+
+    private static long readVarLong(byte[] buf, int[] pos) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf[pos[0]++];
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint in metric payload");
+    }
+
+    private static int writeDouble(byte[] buf, int pos, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 7; i >= 0; i--) {
+            buf[pos++] = (byte) (bits >>> (i * 8));
+        }
+        return pos;
+    }
+
+    private static double readDouble(byte[] buf, int[] pos) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buf[pos[0]++] & 0xff);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+}
@@ -0,0 +1,163 @@
+-- Baseline schema. Databases created by the former spring.jpa.hibernate.ddl-auto=update
+-- are brought under Flyway by baseline-on-migrate (baseline version 0) and then run this
+-- script too: every statement is idempotent, and the columns and unique constraints that
+-- ddl-auto never created are added after dropping the duplicate rows they would reject.
+
+DO $$
+BEGIN
+    CREATE TYPE healthprovider AS ENUM ('APPLE_HEALTH', 'FITBIT', 'GOOGLE_FIT', 'MANUAL', 'SAMSUNG_HEALTH');
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (varchar AS healthprovider) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (healthprovider AS varchar) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE TYPE connectionstatus AS ENUM ('CONNECTED', 'DISCONNECTED', 'ERROR');
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (varchar AS connectionstatus) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (connectionstatus AS varchar) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE TYPE healthsyncstatus AS ENUM ('FAILED', 'IDLE', 'SUCCESS', 'SYNCING');
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (varchar AS healthsyncstatus) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$
+BEGIN
+    CREATE CAST (healthsyncstatus AS varchar) WITH INOUT AS IMPLICIT;
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+CREATE TABLE IF NOT EXISTS user_health_connections (
+    id                 varchar(255)     NOT NULL,
+    user_id            varchar(255)     NOT NULL,
+    provider           healthprovider   NOT NULL,
+    access_token       text             NOT NULL,
+    refresh_token      text,
+    status             connectionstatus NOT NULL,
+    last_synced_at     timestamp(6),
+    sync_status        healthsyncstatus,
+    last_sync_duration integer,
+    error_message      text,
+    sync_retry_count   integer,
+    created_at         timestamp(6),
+    updated_at         timestamp(6),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS health_metrics_daily (
+    id              varchar(255)   NOT NULL,
+    user_id         varchar(255)   NOT NULL,
+    date            timestamp(6)   NOT NULL,
+    source_provider healthprovider NOT NULL,
+    steps           varchar(255),
+    calories        varchar(255),
+    distance        varchar(255),
+    active_minutes  varchar(255),
+    heart_rate      varchar(255),
+    blood_oxygen    varchar(255),
+    sleep_hours     varchar(255),
+    created_at      timestamp(6),
+    updated_at      timestamp(6),
+    PRIMARY KEY (id)
+);
+
+ALTER TABLE health_metrics_daily ADD COLUMN IF NOT EXISTS payload bytea;
+ALTER TABLE health_metrics_daily ADD COLUMN IF NOT EXISTS content_hash bytea;
+
+-- ddl-auto enforced neither one row per user, day and provider nor one connection per
+-- user and provider (uk_user_health_connections_user_provider in V2); keep the latest
+DELETE FROM health_metrics_daily d
+USING (
+    SELECT id, row_number() OVER (PARTITION BY user_id, date, source_provider
+                                  ORDER BY updated_at DESC NULLS LAST, created_at DESC NULLS LAST, id DESC) AS rn
+    FROM health_metrics_daily
+) ranked
+WHERE d.id = ranked.id AND ranked.rn > 1;
+
+DELETE FROM user_health_connections c
+USING (
+    SELECT id, row_number() OVER (PARTITION BY user_id, provider
+                                  ORDER BY updated_at DESC NULLS LAST, created_at DESC NULLS LAST, id DESC) AS rn
+    FROM user_health_connections
+) ranked
+WHERE c.id = ranked.id AND ranked.rn > 1;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint
+                   WHERE conrelid = 'health_metrics_daily'::regclass
+                     AND conname = 'uk_health_metrics_daily_user_date_provider') THEN
+        ALTER TABLE health_metrics_daily
+            ADD CONSTRAINT uk_health_metrics_daily_user_date_provider UNIQUE (user_id, date, source_provider);
+    END IF;
+END $$;
+
+CREATE TABLE IF NOT EXISTS health_metric_rollups (
+    id              varchar(255)   NOT NULL,
+    user_id         varchar(255)   NOT NULL,
+    source_provider healthprovider NOT NULL,
+    period          varchar(16)    NOT NULL CHECK (period IN ('WEEK', 'MONTH')),
+    period_start    date           NOT NULL,
+    payload         bytea          NOT NULL,
+    updated_at      timestamp(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_health_metric_rollups_user_provider_period UNIQUE (user_id, source_provider, period, period_start)
+);
+
+CREATE TABLE IF NOT EXISTS sync_backfills (
+    id            varchar(255)   NOT NULL,
+    user_id       varchar(255)   NOT NULL,
+    provider      healthprovider NOT NULL,
+    status        varchar(16)    NOT NULL CHECK (status IN ('ACTIVE', 'COMPLETED', 'FAILED')),
+    oldest_date   date           NOT NULL,
+    cursor_date   date           NOT NULL,
+    chunks_done   integer        NOT NULL,
+    days_changed  integer        NOT NULL,
+    failures      integer        NOT NULL,
+    error_message text,
+    next_run_at   timestamp(6)   NOT NULL,
+    lease_until   timestamp(6),
+    created_at    timestamp(6),
+    updated_at    timestamp(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_sync_backfills_user_provider UNIQUE (user_id, provider)
+);
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY,
+    topic       varchar(255) NOT NULL,
+    message_key varchar(255),
+    payload     text         NOT NULL,
+    created_at  timestamp(6) NOT NULL,
+    PRIMARY KEY (id)
+);
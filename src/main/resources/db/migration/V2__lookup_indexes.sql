@@ -0,0 +1,17 @@
+-- Indexes for the lookups the sync path runs on every request. health_metrics_daily is
+-- covered by its (user_id, date, source_provider) unique constraint, which also serves
+-- the upsert's ON CONFLICT and the per-user range reads.
+
+-- findByUserIdAndProvider on every sync and connection cache miss; one connection per provider
+CREATE UNIQUE INDEX IF NOT EXISTS uk_user_health_connections_user_provider
+    ON user_health_connections (user_id, provider);
+
+-- findByStatus(CONNECTED) and the keyset pages of the periodic fan-out (status = 'CONNECTED' AND id > ?)
+CREATE INDEX IF NOT EXISTS ix_user_health_connections_connected
+    ON user_health_connections (id)
+    WHERE status = 'CONNECTED';
+
+-- claimDue: due active backfills in next_run_at order
+CREATE INDEX IF NOT EXISTS ix_sync_backfills_active_next_run
+    ON sync_backfills (next_run_at)
+    WHERE status = 'ACTIVE';
@@ -0,0 +1,108 @@
+-- Range-partitions health_metrics_daily by month of date. Reads and upserts are always
+-- for one user over a few days, so they touch one or two partitions, and old months
+-- leave the table by detaching their partition instead of a bulk DELETE.
+--
+-- Partitions are named health_metrics_daily_YYYY_MM. Rows outside every partition land
+-- in health_metrics_daily_default and are moved out when their month's partition is
+-- created. MetricPartitionMaintenance keeps partitions ahead of the current month and
+-- archives expired ones through the functions below.
+
+ALTER TABLE health_metrics_daily RENAME TO health_metrics_daily_legacy;
+ALTER TABLE health_metrics_daily_legacy RENAME CONSTRAINT health_metrics_daily_pkey TO health_metrics_daily_legacy_pkey;
+ALTER TABLE health_metrics_daily_legacy
+    RENAME CONSTRAINT uk_health_metrics_daily_user_date_provider TO uk_health_metrics_daily_legacy_user_date_provider;
+
+-- Unique constraints on a partitioned table have to include the partition key
+CREATE TABLE health_metrics_daily (
+    id              varchar(255)   NOT NULL,
+    user_id         varchar(255)   NOT NULL,
+    date            timestamp(6)   NOT NULL,
+    source_provider healthprovider NOT NULL,
+    steps           varchar(255),
+    calories        varchar(255),
+    distance        varchar(255),
+    active_minutes  varchar(255),
+    heart_rate      varchar(255),
+    blood_oxygen    varchar(255),
+    sleep_hours     varchar(255),
+    payload         bytea,
+    content_hash    bytea,
+    created_at      timestamp(6),
+    updated_at      timestamp(6),
+    CONSTRAINT health_metrics_daily_pkey PRIMARY KEY (id, date),
+    CONSTRAINT uk_health_metrics_daily_user_date_provider UNIQUE (user_id, date, source_provider)
+) PARTITION BY RANGE (date);
+
+CREATE TABLE health_metrics_daily_default PARTITION OF health_metrics_daily DEFAULT;
+
+-- Detached partitions are kept here until they are exported or dropped
+CREATE SCHEMA IF NOT EXISTS health_archive;
+
+-- Creates the partition for the month containing month_start, moving any rows of that
+-- month out of the default partition first. Returns false if it already exists.
+CREATE OR REPLACE FUNCTION ensure_health_metrics_daily_partition(month_start date) RETURNS boolean
+LANGUAGE plpgsql AS $$
+DECLARE
+    from_ts timestamp := date_trunc('month', month_start);
+    to_ts timestamp := date_trunc('month', month_start) + interval '1 month';
+    partition_name text := 'health_metrics_daily_' || to_char(from_ts, 'YYYY_MM');
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('health_metrics_daily_partitions'));
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN false;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE health_metrics_daily INCLUDING DEFAULTS)', partition_name);
+    EXECUTE format('WITH moved AS (DELETE FROM health_metrics_daily_default WHERE date >= %L AND date < %L RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', from_ts, to_ts, partition_name);
+    EXECUTE format('ALTER TABLE health_metrics_daily ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, from_ts, to_ts);
+    RETURN true;
+END $$;
+
+-- Detaches the monthly partitions that end on or before cutoff and moves them to the
+-- health_archive schema. Gives up after lock_wait rather than queue writers behind the
+-- detach; the next run picks the partitions up again. Returns the number archived.
+CREATE OR REPLACE FUNCTION archive_health_metrics_daily_partitions(cutoff date, lock_wait text DEFAULT '5s') RETURNS integer
+LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name text;
+    archived integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('health_metrics_daily_partitions'));
+    PERFORM set_config('lock_timeout', lock_wait, true);
+    FOR partition_name IN
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'health_metrics_daily'::regclass
+          AND c.relname ~ '^health_metrics_daily_[0-9]{4}_[0-9]{2}$'
+          AND to_date(substr(c.relname, 22), 'YYYY_MM') + interval '1 month' <= cutoff
+        ORDER BY c.relname
+    LOOP
+        EXECUTE format('ALTER TABLE health_metrics_daily DETACH PARTITION %I', partition_name);
+        EXECUTE format('ALTER TABLE %I SET SCHEMA health_archive', partition_name);
+        archived := archived + 1;
+    END LOOP;
+    RETURN archived;
+END $$;
+
+-- Partitions for the backfill window (up to three years back), a few months ahead and
+-- every month already stored
+SELECT ensure_health_metrics_daily_partition(month::date)
+FROM (
+    SELECT generate_series(date_trunc('month', now()) - interval '37 months',
+                           date_trunc('month', now()) + interval '3 months',
+                           interval '1 month') AS month
+    UNION
+    SELECT DISTINCT date_trunc('month', date) FROM health_metrics_daily_legacy
+) months
+ORDER BY month;
+
+INSERT INTO health_metrics_daily
+    (id, user_id, date, source_provider, steps, calories, distance, active_minutes, heart_rate,
+     blood_oxygen, sleep_hours, payload, content_hash, created_at, updated_at)
+SELECT id, user_id, date, source_provider, steps, calories, distance, active_minutes, heart_rate,
+       blood_oxygen, sleep_hours, payload, content_hash, created_at, updated_at
+FROM health_metrics_daily_legacy;
+
+DROP TABLE health_metrics_daily_legacy;
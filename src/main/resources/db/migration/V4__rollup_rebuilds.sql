@@ -0,0 +1,30 @@
+-- Queue of background rollup rebuilds (RollupRebuildService), claimed with
+-- FOR UPDATE SKIP LOCKED under a lease like sync_backfills.
+
+CREATE TABLE rollup_rebuilds (
+    id            varchar(255)   NOT NULL,
+    user_id       varchar(255)   NOT NULL,
+    provider      healthprovider NOT NULL,
+    status        varchar(16)    NOT NULL CHECK (status IN ('PENDING', 'COMPLETED', 'FAILED')),
+    rollups       integer        NOT NULL,
+    failures      integer        NOT NULL,
+    error_message text,
+    next_run_at   timestamp(6)   NOT NULL,
+    lease_until   timestamp(6),
+    created_at    timestamp(6),
+    updated_at    timestamp(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_rollup_rebuilds_user_provider UNIQUE (user_id, provider)
+);
+
+-- claimDue: due pending rebuilds in next_run_at order
+CREATE INDEX ix_rollup_rebuilds_pending_next_run
+    ON rollup_rebuilds (next_run_at)
+    WHERE status = 'PENDING';
+
+-- Days stored before rollups were maintained are in no rollup yet; rebuild every
+-- existing connection once
+INSERT INTO rollup_rebuilds (id, user_id, provider, status, rollups, failures, next_run_at, created_at, updated_at)
+SELECT gen_random_uuid()::text, user_id, provider, 'PENDING', 0, 0, now(), now(), now()
+FROM user_health_connections
+ON CONFLICT (user_id, provider) DO NOTHING;
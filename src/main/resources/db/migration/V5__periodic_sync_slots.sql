@@ -0,0 +1,21 @@
+-- Minute of the hour each connection is synced in (PeriodicSyncService.SLOTS_PER_HOUR),
+-- stored so the periodic fan-out reads one slot as an index range scan instead of
+-- hashing every connected row on each run. The cast to bigint keeps abs() from
+-- overflowing on hashtext's minimum value.
+ALTER TABLE user_health_connections
+    ADD COLUMN sync_slot smallint GENERATED ALWAYS AS (CAST(mod(abs(CAST(hashtext(user_id) AS bigint)), 60) AS smallint)) STORED;
+
+-- findConnectedInSlot: keyset pages of one slot (status = 'CONNECTED' AND sync_slot = ? AND id > ?)
+CREATE INDEX ix_user_health_connections_connected_slot
+    ON user_health_connections (sync_slot, id)
+    WHERE status = 'CONNECTED';
+
+-- Last minute whose slot was emitted, shared by all instances, so slots missed during a
+-- restart or an overrun are caught up and each minute is emitted by one instance only
+CREATE TABLE periodic_sync_cursor (
+    id              smallint     NOT NULL CHECK (id = 1),
+    emitted_through timestamp(6),
+    PRIMARY KEY (id)
+);
+
+INSERT INTO periodic_sync_cursor (id, emitted_through) VALUES (1, NULL);
@@ -0,0 +1,86 @@
+package com.healthfood.health_sync_engine.consumer;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncCoalescerTest {
+
+    private static final SyncRequest INCREMENTAL = new SyncRequest("user-1", UserHealthConnection.HealthProvider.FITBIT, false);
+    private static final SyncRequest INITIAL = new SyncRequest("user-1", UserHealthConnection.HealthProvider.FITBIT, true);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SyncCoalescer coalescer = new SyncCoalescer(meterRegistry);
+
+    @Test
+    void firstRequestOwnsTheFlightAndDuplicatesAreDropped() {
+        assertThat(coalescer.offer(INCREMENTAL)).isTrue();
+        assertThat(coalescer.offer(INCREMENTAL)).isFalse();
+        assertThat(coalescer.start(INCREMENTAL)).isFalse();
+        assertThat(coalescer.offer(INCREMENTAL)).isFalse();
+
+        assertThat(coalescer.finish(INCREMENTAL)).isNull();
+        assertThat(coalescer.offer(INCREMENTAL)).isTrue();
+        assertThat(coalesced("dropped")).isEqualTo(2);
+    }
+
+    @Test
+    void otherUsersAndProvidersGetTheirOwnFlight() {
+        assertThat(coalescer.offer(INCREMENTAL)).isTrue();
+        assertThat(coalescer.offer(new SyncRequest("user-2", UserHealthConnection.HealthProvider.FITBIT, false))).isTrue();
+        assertThat(coalescer.offer(new SyncRequest("user-1", UserHealthConnection.HealthProvider.GOOGLE_FIT, false))).isTrue();
+    }
+
+    @Test
+    void initialSyncWidensAQueuedIncrementalFlight() {
+        coalescer.offer(INCREMENTAL);
+
+        assertThat(coalescer.offer(INITIAL)).isFalse();
+
+        assertThat(coalescer.start(INCREMENTAL)).isTrue();
+        assertThat(coalescer.finish(INCREMENTAL)).isNull();
+        assertThat(coalesced("widened")).isEqualTo(1);
+    }
+
+    @Test
+    void initialSyncDuringARunningIncrementalOneRunsOnceAfterIt() {
+        coalescer.offer(INCREMENTAL);
+        coalescer.start(INCREMENTAL);
+
+        assertThat(coalescer.offer(INITIAL)).isFalse();
+        assertThat(coalescer.offer(INITIAL)).isFalse();
+
+        assertThat(coalescer.finish(INCREMENTAL)).isTrue();
+        assertThat(coalescer.finish(INCREMENTAL)).isNull();
+        assertThat(coalesced("widened")).isEqualTo(1);
+        assertThat(coalesced("dropped")).isEqualTo(1);
+    }
+
+    @Test
+    void initialFlightAbsorbsEverything() {
+        coalescer.offer(INITIAL);
+
+        assertThat(coalescer.offer(INCREMENTAL)).isFalse();
+        assertThat(coalescer.offer(INITIAL)).isFalse();
+        assertThat(coalescer.start(INITIAL)).isTrue();
+        assertThat(coalescer.finish(INITIAL)).isNull();
+    }
+
+    @Test
+    void abandonedFlightDropsItsFollowUp() {
+        coalescer.offer(INCREMENTAL);
+        coalescer.start(INCREMENTAL);
+        coalescer.offer(INITIAL);
+
+        coalescer.abandon(INCREMENTAL);
+
+        assertThat(coalescer.finish(INCREMENTAL)).isNull();
+        assertThat(coalescer.offer(INCREMENTAL)).isTrue();
+    }
+
+    private double coalesced(String outcome) {
+        return meterRegistry.get("health.sync.coalesced").tag("outcome", outcome).counter().count();
+    }
+}
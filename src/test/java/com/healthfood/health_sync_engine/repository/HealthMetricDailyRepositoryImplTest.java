@@ -0,0 +1,116 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HealthMetricDailyRepositoryImplTest {
+
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static TestDatabases databases;
+    private static JdbcTemplate jdbc;
+    private static HealthMetricDailyRepositoryImpl repository;
+
+    @BeforeAll
+    static void startPostgres() throws Exception {
+        databases = new TestDatabases();
+        jdbc = new JdbcTemplate(databases.createMigrated("upserts"));
+        repository = new HealthMetricDailyRepositoryImpl(jdbc);
+    }
+
+    @AfterAll
+    static void stopPostgres() throws Exception {
+        databases.close();
+    }
+
+    @Test
+    void newDaysAreInsertedAndChangedDaysUpdatedInPlace() {
+        repository.upsertAll(List.of(row("insert", TODAY, "100", 1), row("insert", TODAY.minusDays(1), "200", 2)));
+        String id = idOf("insert", TODAY);
+
+        repository.upsertAll(List.of(row("insert", TODAY, "150", 3)));
+
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM health_metrics_daily WHERE user_id = 'insert'", Integer.class))
+                .isEqualTo(2);
+        assertThat(idOf("insert", TODAY)).isEqualTo(id);
+        assertThat(stepsOf("insert", TODAY)).isEqualTo("150");
+        assertThat(stepsOf("insert", TODAY.minusDays(1))).isEqualTo("200");
+    }
+
+    @Test
+    void unchangedContentHashLeavesTheRowAlone() {
+        repository.upsertAll(List.of(row("unchanged", TODAY, "100", 1)));
+        Timestamp updatedAt = updatedAtOf("unchanged", TODAY);
+
+        // Same hash, so the differing value must not be written
+        repository.upsertAll(List.of(row("unchanged", TODAY, "999", 1)));
+
+        assertThat(stepsOf("unchanged", TODAY)).isEqualTo("100");
+        assertThat(updatedAtOf("unchanged", TODAY)).isEqualTo(updatedAt);
+    }
+
+    @Test
+    void repeatedDayInOneCallKeepsTheLastValue() {
+        int sent = repository.upsertAll(List.of(row("repeated", TODAY, "100", 1), row("repeated", TODAY, "300", 3)));
+
+        assertThat(sent).isEqualTo(1);
+        assertThat(stepsOf("repeated", TODAY)).isEqualTo("300");
+    }
+
+    @Test
+    void callsLargerThanOneBatchStoreEveryRow() {
+        List<HealthMetricDaily> rows = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            rows.add(row("batched", TODAY.minusDays(i), String.valueOf(i), i));
+        }
+
+        assertThat(repository.upsertAll(rows)).isEqualTo(250);
+
+        Map<LocalDateTime, HealthMetricDaily> stored = repository.findStoredRows("batched", FITBIT,
+                TODAY.minusDays(249).atStartOfDay(), TODAY.atStartOfDay());
+        assertThat(stored).hasSize(250);
+        assertThat(stored.get(TODAY.minusDays(249).atStartOfDay()).getContentHash()).containsExactly(249);
+    }
+
+    private static HealthMetricDaily row(String userId, LocalDate date, String steps, int contentHash) {
+        HealthMetricDaily row = new HealthMetricDaily();
+        row.setUserId(userId);
+        row.setDate(date.atStartOfDay());
+        row.setSourceProvider(FITBIT);
+        row.setSteps(steps);
+        row.setPayload(new byte[]{1, 2, 3});
+        row.setContentHash(new byte[]{(byte) contentHash});
+        return row;
+    }
+
+    private static String idOf(String userId, LocalDate date) {
+        return column("id", String.class, userId, date);
+    }
+
+    private static String stepsOf(String userId, LocalDate date) {
+        return column("steps", String.class, userId, date);
+    }
+
+    private static Timestamp updatedAtOf(String userId, LocalDate date) {
+        return column("updated_at", Timestamp.class, userId, date);
+    }
+
+    private static <T> T column(String column, Class<T> type, String userId, LocalDate date) {
+        return jdbc.queryForObject("SELECT " + column + " FROM health_metrics_daily WHERE user_id = ? AND date = ?",
+                type, userId, Timestamp.valueOf(date.atStartOfDay()));
+    }
+}
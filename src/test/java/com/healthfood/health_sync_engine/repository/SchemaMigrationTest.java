@@ -0,0 +1,92 @@
+package com.healthfood.health_sync_engine.repository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaMigrationTest {
+
+    private static TestDatabases databases;
+
+    @BeforeAll
+    static void startPostgres() throws Exception {
+        databases = new TestDatabases();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws Exception {
+        databases.close();
+    }
+
+    @Test
+    void emptyDatabaseIsMigrated() {
+        DataSource dataSource = databases.createMigrated("empty");
+
+        assertThat(appliedVersions(dataSource)).containsExactly("1", "2", "3", "4", "5");
+    }
+
+    @Test
+    void ddlAutoDatabaseIsUpgradedKeepingTheLatestDuplicate() throws Exception {
+        DataSource dataSource = databases.create("ddl_auto");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute(new ClassPathResource("db/ddl-auto-baseline.sql").getContentAsString(StandardCharsets.UTF_8));
+        String today = LocalDate.now().atStartOfDay().toString();
+        jdbc.update("INSERT INTO health_metrics_daily (id, user_id, date, source_provider, steps, updated_at) VALUES "
+                + "('old', 'user-1', ?::timestamp, 'FITBIT', '100', now() - interval '1 day'), "
+                + "('new', 'user-1', ?::timestamp, 'FITBIT', '200', now()), "
+                + "('other', 'user-1', ?::timestamp, 'GOOGLE_FIT', '300', null)", today, today, today);
+        jdbc.update("INSERT INTO user_health_connections (id, user_id, provider, access_token, status, updated_at) VALUES "
+                + "('c-old', 'user-1', 'FITBIT', 'a', 'ERROR', now() - interval '1 day'), "
+                + "('c-new', 'user-1', 'FITBIT', 'b', 'CONNECTED', now())");
+
+        TestDatabases.migrate(dataSource);
+
+        assertThat(appliedVersions(dataSource)).containsExactly("0", "1", "2", "3", "4", "5");
+        assertThat(jdbc.queryForList("SELECT id FROM health_metrics_daily ORDER BY id", String.class))
+                .containsExactly("new", "other");
+        assertThat(jdbc.queryForList("SELECT id FROM user_health_connections", String.class)).containsExactly("c-new");
+        // The upgraded table accepts the upsert the sync path runs
+        jdbc.update("INSERT INTO health_metrics_daily (id, user_id, date, source_provider, payload, content_hash) "
+                + "VALUES ('next', 'user-1', ?::timestamp, 'FITBIT', '\\x00', '\\x01') "
+                + "ON CONFLICT (user_id, date, source_provider) DO UPDATE SET payload = EXCLUDED.payload", today);
+        Map<String, Object> row = jdbc.queryForMap("SELECT id, steps FROM health_metrics_daily WHERE source_provider = 'FITBIT'");
+        assertThat(row).containsEntry("id", "new").containsEntry("steps", "200");
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM rollup_rebuilds", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void connectionsAreSpreadOverIndexedMinuteSlots() {
+        DataSource dataSource = databases.createMigrated("slots");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO user_health_connections (id, user_id, provider, access_token, status) "
+                + "SELECT 'c-' || i, 'user-' || i, 'FITBIT', 'token', 'CONNECTED' FROM generate_series(1, 600) i");
+
+        List<Integer> slots = jdbc.queryForList("SELECT sync_slot FROM user_health_connections", Integer.class);
+        assertThat(slots).allSatisfy(slot -> assertThat(slot).isBetween(0, 59));
+        assertThat(slots.stream().distinct().count()).isGreaterThan(50);
+        // The slot is a pure function of the userId
+        assertThat(jdbc.queryForObject("SELECT bool_and(sync_slot = mod(abs(CAST(hashtext(user_id) AS bigint)), 60)) "
+                + "FROM user_health_connections", Boolean.class)).isTrue();
+
+        // The page query of findConnectedInSlot can be served by the slot index
+        jdbc.execute("SET enable_seqscan = off");
+        String plan = String.join("\n", jdbc.queryForList("EXPLAIN SELECT id, user_id FROM user_health_connections "
+                + "WHERE status = 'CONNECTED' AND sync_slot = 7 AND id > 'c-1' ORDER BY id LIMIT 500", String.class));
+        assertThat(plan).contains("ix_user_health_connections_connected_slot");
+    }
+
+    private static List<String> appliedVersions(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForList(
+                "SELECT version FROM flyway_schema_history WHERE success ORDER BY installed_rank", String.class);
+    }
+}
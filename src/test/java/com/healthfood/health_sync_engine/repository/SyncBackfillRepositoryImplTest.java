@@ -0,0 +1,72 @@
+package com.healthfood.health_sync_engine.repository;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncBackfillRepositoryImplTest {
+
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static TestDatabases databases;
+    private static JdbcTemplate jdbc;
+    private static SyncBackfillRepositoryImpl repository;
+
+    @BeforeAll
+    static void startPostgres() throws Exception {
+        databases = new TestDatabases();
+        jdbc = new JdbcTemplate(databases.createMigrated("backfills"));
+        repository = new SyncBackfillRepositoryImpl(jdbc);
+    }
+
+    @AfterAll
+    static void stopPostgres() throws Exception {
+        databases.close();
+    }
+
+    @Test
+    void secondInsertForAConnectionIsSkipped() {
+        assertThat(repository.insertIfAbsent(backfill("twice", TODAY.minusDays(365)))).isTrue();
+
+        assertThat(repository.insertIfAbsent(backfill("twice", TODAY.minusDays(730)))).isFalse();
+
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM sync_backfills WHERE user_id = 'twice'", Integer.class))
+                .isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT oldest_date FROM sync_backfills WHERE user_id = 'twice'", LocalDate.class))
+                .isEqualTo(TODAY.minusDays(365));
+    }
+
+    @Test
+    void insertedBackfillCanBeClaimed() {
+        SyncBackfill backfill = backfill("claimed", TODAY.minusDays(90));
+        repository.insertIfAbsent(backfill);
+
+        List<SyncBackfill> claimed = repository.claimDue(100, Duration.ofMinutes(5));
+
+        assertThat(claimed).filteredOn(b -> b.getUserId().equals("claimed")).singleElement().satisfies(b -> {
+            assertThat(b.getId()).isEqualTo(backfill.getId());
+            assertThat(b.getProvider()).isEqualTo(FITBIT);
+            assertThat(b.getOldestDate()).isEqualTo(TODAY.minusDays(90));
+            assertThat(b.getCursorDate()).isEqualTo(TODAY.minusDays(30));
+        });
+    }
+
+    private static SyncBackfill backfill(String userId, LocalDate oldest) {
+        SyncBackfill backfill = new SyncBackfill();
+        backfill.setUserId(userId);
+        backfill.setProvider(FITBIT);
+        backfill.setOldestDate(oldest);
+        backfill.setCursorDate(TODAY.minusDays(30));
+        return backfill;
+    }
+}
@@ -0,0 +1,45 @@
+package com.healthfood.health_sync_engine.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+
+/** Databases on an embedded PostgreSQL server, connected the way the application connects. */
+final class TestDatabases implements AutoCloseable {
+    private final EmbeddedPostgres postgres;
+
+    TestDatabases() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+    }
+
+    /** Creates an empty database. */
+    DataSource create(String name) {
+        new JdbcTemplate(postgres.getPostgresDatabase()).execute("CREATE DATABASE " + name);
+        return new DriverManagerDataSource(postgres.getJdbcUrl("postgres", name) + "&stringtype=unspecified", "postgres", "");
+    }
+
+    /** Creates a database and applies the migrations to it. */
+    DataSource createMigrated(String name) {
+        DataSource dataSource = create(name);
+        migrate(dataSource);
+        return dataSource;
+    }
+
+    /** Flyway as configured in application.properties. */
+    static void migrate(DataSource dataSource) {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    @Override
+    public void close() throws Exception {
+        postgres.close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.SyncBackfill;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.SyncBackfillRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BackfillServiceTest {
+
+    private static final String USER = "user-1";
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private final SyncBackfillRepository repository = mock(SyncBackfillRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final BackfillService service = new BackfillService(repository, transactionTemplate);
+    private SyncBackfill stored;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(repository.findByUserIdAndProvider(USER, FITBIT)).thenAnswer(invocation -> Optional.ofNullable(stored));
+        when(repository.save(any(SyncBackfill.class))).thenAnswer(invocation -> stored = invocation.getArgument(0));
+        when(repository.insertIfAbsent(any(SyncBackfill.class))).thenAnswer(invocation -> {
+            if (stored != null) return false;
+            stored = invocation.getArgument(0);
+            return true;
+        });
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void newBackfillImportsTheDaysBeforeTheSyncedWindow() {
+        SyncBackfill backfill = service.start(USER, FITBIT, 365, TODAY.minusDays(30));
+
+        assertThat(backfill.getStatus()).isEqualTo(SyncBackfill.Status.ACTIVE);
+        assertThat(backfill.getCursorDate()).isEqualTo(TODAY.minusDays(30));
+        assertThat(backfill.getOldestDate()).isEqualTo(TODAY.minusDays(365));
+    }
+
+    @Test
+    void backfillCreatedByAConcurrentStartIsWidenedInstead() {
+        SyncBackfill concurrent = backfill(SyncBackfill.Status.ACTIVE, TODAY.minusDays(100), TODAY.minusDays(30));
+        // The lookup misses the row, which is inserted before this start's insert
+        when(repository.findByUserIdAndProvider(USER, FITBIT)).thenReturn(Optional.empty(), Optional.of(concurrent));
+        when(repository.insertIfAbsent(any(SyncBackfill.class))).thenReturn(false);
+
+        SyncBackfill backfill = service.start(USER, FITBIT, 365, TODAY.minusDays(7));
+
+        assertThat(backfill).isSameAs(concurrent);
+        assertThat(backfill.getCursorDate()).isEqualTo(TODAY.minusDays(30));
+        assertThat(backfill.getOldestDate()).isEqualTo(TODAY.minusDays(365));
+        verify(repository).save(concurrent);
+    }
+
+    @Test
+    void initialSyncStartsTheBackfillInATransaction() {
+        ReflectionTestUtils.setField(service, "initialDays", 365);
+        ReflectionTestUtils.setField(service, "maxDays", 1095);
+
+        service.startAfterInitialSync(USER, FITBIT, TODAY.minusDays(30));
+
+        verify(transactionTemplate).executeWithoutResult(any());
+        assertThat(stored.getOldestDate()).isEqualTo(TODAY.minusDays(365));
+        assertThat(stored.getCursorDate()).isEqualTo(TODAY.minusDays(30));
+    }
+
+    @Test
+    void windowAlreadyCoveringTheRangeCompletesRightAway() {
+        SyncBackfill backfill = service.start(USER, FITBIT, 30, TODAY.minusDays(30));
+
+        assertThat(backfill.getStatus()).isEqualTo(SyncBackfill.Status.COMPLETED);
+    }
+
+    @Test
+    void activeBackfillIsWidenedWithoutLosingItsCursor() {
+        stored = backfill(SyncBackfill.Status.ACTIVE, TODAY.minusDays(100), TODAY.minusDays(60));
+
+        SyncBackfill widened = service.start(USER, FITBIT, 365, TODAY);
+
+        assertThat(widened.getStatus()).isEqualTo(SyncBackfill.Status.ACTIVE);
+        assertThat(widened.getCursorDate()).isEqualTo(TODAY.minusDays(60));
+        assertThat(widened.getOldestDate()).isEqualTo(TODAY.minusDays(365));
+    }
+
+    @Test
+    void activeBackfillIsNeverNarrowed() {
+        stored = backfill(SyncBackfill.Status.ACTIVE, TODAY.minusDays(100), TODAY.minusDays(60));
+
+        SyncBackfill backfill = service.start(USER, FITBIT, 30, TODAY);
+
+        assertThat(backfill.getOldestDate()).isEqualTo(TODAY.minusDays(100));
+        assertThat(backfill.getCursorDate()).isEqualTo(TODAY.minusDays(60));
+    }
+
+    @Test
+    void completedBackfillOnlyFetchesOlderDays() {
+        stored = backfill(SyncBackfill.Status.COMPLETED, TODAY.minusDays(365), TODAY.minusDays(365));
+
+        SyncBackfill extended = service.start(USER, FITBIT, 730, TODAY);
+
+        assertThat(extended.getStatus()).isEqualTo(SyncBackfill.Status.ACTIVE);
+        assertThat(extended.getCursorDate()).isEqualTo(TODAY.minusDays(365));
+        assertThat(extended.getOldestDate()).isEqualTo(TODAY.minusDays(730));
+    }
+
+    @Test
+    void completedBackfillCoveringTheRangeIsLeftAlone() {
+        stored = backfill(SyncBackfill.Status.COMPLETED, TODAY.minusDays(365), TODAY.minusDays(365));
+
+        SyncBackfill backfill = service.start(USER, FITBIT, 200, TODAY);
+
+        assertThat(backfill.getStatus()).isEqualTo(SyncBackfill.Status.COMPLETED);
+        assertThat(backfill.getOldestDate()).isEqualTo(TODAY.minusDays(365));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void failedBackfillResumesFromItsCursor() {
+        stored = backfill(SyncBackfill.Status.FAILED, TODAY.minusDays(365), TODAY.minusDays(200));
+        stored.setFailures(5);
+        stored.setErrorMessage("Fitbit API returned status 500");
+
+        SyncBackfill resumed = service.start(USER, FITBIT, 365, TODAY);
+
+        assertThat(resumed.getStatus()).isEqualTo(SyncBackfill.Status.ACTIVE);
+        assertThat(resumed.getCursorDate()).isEqualTo(TODAY.minusDays(200));
+        assertThat(resumed.getFailures()).isZero();
+        assertThat(resumed.getErrorMessage()).isNull();
+    }
+
+    private static SyncBackfill backfill(SyncBackfill.Status status, LocalDate oldest, LocalDate cursor) {
+        SyncBackfill backfill = new SyncBackfill();
+        backfill.setUserId(USER);
+        backfill.setProvider(FITBIT);
+        backfill.setStatus(status);
+        backfill.setOldestDate(oldest);
+        backfill.setCursorDate(cursor);
+        return backfill;
+    }
+}
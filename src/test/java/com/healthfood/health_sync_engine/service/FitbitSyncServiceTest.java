@@ -0,0 +1,120 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FitbitSyncServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    private final SyncMetrics syncMetrics = new SyncMetrics(new SimpleMeterRegistry());
+    private final FitbitSyncService service = new FitbitSyncService(
+            new ProviderRateLimiter(150, 150_000, 15_000, 3600, 360_000, 36_000, 0.5, 0.1),
+            new ProviderCircuitBreaker(10, 4, 0.5, 30, 3, syncMetrics),
+            syncMetrics);
+    private final AtomicInteger dayRequests = new AtomicInteger();
+    private final List<Integer> charged = new CopyOnWriteArrayList<>();
+    private volatile int dayStatus = 200;
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Range resources are unavailable, so every chunk falls back to per-day summaries
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            if (exchange.getRequestURI().getPath().startsWith("/user/-/activities/date/")) {
+                dayRequests.incrementAndGet();
+                if (dayStatus == 429) {
+                    exchange.getResponseHeaders().add("Retry-After", "60");
+                }
+                respond(exchange, dayStatus, "{\"summary\":{\"steps\":100}}");
+            } else {
+                respond(exchange, 403, "{}");
+            }
+        });
+        server.start();
+        ReflectionTestUtils.setField(service, "apiUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(service, "maxWindowDays", 365);
+        ReflectionTestUtils.setField(service, "maxConcurrentRequests", 4);
+        ReflectionTestUtils.setField(service, "fallbackChunkDays", 30);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void fallbackIsChargedInSubChunksTheBudgetCanGrant() {
+        List<HealthMetricDaily> metrics = fetch(START.plusDays(64));
+
+        assertThat(charged).containsExactly(30, 30, 5);
+        assertThat(metrics).hasSize(65);
+        assertThat(dayRequests).hasValue(65);
+    }
+
+    @Test
+    void deniedSubChunkIsNotSent() {
+        assertThatThrownBy(() -> service.fetchActivity("token", START.atStartOfDay(), START.plusDays(64).atStartOfDay(), "user-1",
+                permits -> {
+                    charged.add(permits);
+                    return charged.size() < 2 ? Duration.ZERO : Duration.ofMinutes(10);
+                }))
+                .isInstanceOf(ProviderRateLimitException.class);
+
+        assertThat(dayRequests).hasValue(30);
+    }
+
+    @Test
+    void throttledDayStopsTheFallback() {
+        dayStatus = 429;
+
+        assertThatThrownBy(() -> fetch(START.plusDays(29))).isInstanceOf(ProviderRateLimitException.class);
+
+        // Only the requests already in flight were sent
+        assertThat(dayRequests.get()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void revokedTokenStopsTheFallback() {
+        dayStatus = 401;
+
+        assertThatThrownBy(() -> fetch(START.plusDays(29)))
+                .isInstanceOfSatisfying(ProviderException.class,
+                        e -> assertThat(e.getKind()).isEqualTo(ProviderException.Kind.AUTH));
+
+        assertThat(dayRequests.get()).isLessThanOrEqualTo(4);
+    }
+
+    private List<HealthMetricDaily> fetch(LocalDate end) {
+        return service.fetchActivity("token", START.atStartOfDay(), end.atStartOfDay(), "user-1", permits -> {
+            charged.add(permits);
+            return Duration.ZERO;
+        });
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.google.api.services.fitness.model.AggregateBucket;
+import com.google.api.services.fitness.model.AggregateResponse;
+import com.google.api.services.fitness.model.DataPoint;
+import com.google.api.services.fitness.model.Dataset;
+import com.google.api.services.fitness.model.Value;
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GoogleFitSyncServiceTest {
+
+    private static final String USER = "user-1";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+
+    private final GoogleFitSyncService service = service();
+
+    @Test
+    void pointsOfADayAreSummedPerField() {
+        AggregateResponse response = response(bucket(DAY,
+                dataset("com.google.step_count.delta", intPoint(4000), intPoint(2500)),
+                dataset("com.google.calories.expended", fpPoint(1200.5), fpPoint(300.25)),
+                dataset("com.google.distance.delta", fpPoint(1500.0), fpPoint(250.0)),
+                dataset("com.google.active_minutes", intPoint(20), intPoint(15))));
+
+        List<HealthMetricDaily> metrics = service.parseBuckets(response, USER);
+
+        assertThat(metrics).hasSize(1);
+        HealthMetricDaily metric = metrics.get(0);
+        assertThat(metric.getUserId()).isEqualTo(USER);
+        assertThat(metric.getSourceProvider()).isEqualTo(UserHealthConnection.HealthProvider.GOOGLE_FIT);
+        assertThat(metric.getDate()).isEqualTo(DAY.atStartOfDay());
+        assertThat(metric.getSteps()).isEqualTo("6500");
+        assertThat(metric.getCalories()).isEqualTo("1500.75");
+        assertThat(metric.getDistance()).isEqualTo("1750.0");
+        assertThat(metric.getActiveMinutes()).isEqualTo("35");
+    }
+
+    @Test
+    void heartRateAndOxygenKeepTheLastValue() {
+        AggregateResponse response = response(bucket(DAY,
+                dataset("com.google.heart_rate.summary", fpPoint(70.0), fpPoint(64.5)),
+                dataset("com.google.oxygen_saturation.summary", fpPoint(97.0))));
+
+        HealthMetricDaily metric = service.parseBuckets(response, USER).get(0);
+
+        assertThat(metric.getHeartRate()).isEqualTo("64.5");
+        assertThat(metric.getBloodOxygen()).isEqualTo("97.0");
+    }
+
+    @Test
+    void totalsAreResetBetweenBuckets() {
+        AggregateResponse response = response(
+                bucket(DAY,
+                        dataset("com.google.step_count.delta", intPoint(4000)),
+                        dataset("com.google.heart_rate.summary", fpPoint(70.0))),
+                bucket(DAY.plusDays(1),
+                        dataset("com.google.step_count.delta", intPoint(900))));
+
+        List<HealthMetricDaily> metrics = service.parseBuckets(response, USER);
+
+        assertThat(metrics).extracting(HealthMetricDaily::getDate)
+                .containsExactly(DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay());
+        assertThat(metrics.get(1).getSteps()).isEqualTo("900");
+        // Fields absent from a bucket keep the entity defaults
+        assertThat(metrics.get(1).getHeartRate()).isNull();
+        assertThat(metrics.get(1).getCalories()).isEqualTo("0");
+    }
+
+    @Test
+    void dataSourceIdIsUsedWhenTheTypeNameIsMissing() {
+        Dataset bySource = dataset(null, intPoint(1200));
+        bySource.setDataSourceId("derived:com.google.step_count.delta:com.google.android.gms:estimated_steps");
+        AggregateResponse response = response(bucket(DAY,
+                bySource,
+                dataset("com.google.weight.summary", fpPoint(80.0)),
+                dataset("com.google.step_count.delta"),
+                dataset("com.google.calories.expended", new DataPoint().setDataTypeName("com.google.calories.expended"))));
+
+        HealthMetricDaily metric = service.parseBuckets(response, USER).get(0);
+
+        assertThat(metric.getSteps()).isEqualTo("1200");
+        assertThat(metric.getCalories()).isEqualTo("0");
+    }
+
+    @Test
+    void missingBucketsParseToNoRows() {
+        assertThat(service.parseBuckets(null, USER)).isEmpty();
+        assertThat(service.parseBuckets(new AggregateResponse(), USER)).isEmpty();
+        assertThat(service.parseBuckets(response(bucket(DAY)), USER)).singleElement()
+                .extracting(HealthMetricDaily::getSteps).isEqualTo("0");
+    }
+
+    private static AggregateResponse response(AggregateBucket... buckets) {
+        return new AggregateResponse().setBucket(Arrays.asList(buckets));
+    }
+
+    private static AggregateBucket bucket(LocalDate day, Dataset... datasets) {
+        long start = day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new AggregateBucket()
+                .setStartTimeMillis(start)
+                .setEndTimeMillis(start + 86_400_000L)
+                .setDataset(Arrays.asList(datasets));
+    }
+
+    /** Points of an aggregate dataset all carry the dataset's type. */
+    private static Dataset dataset(String type, DataPoint... points) {
+        for (DataPoint point : points) {
+            if (point.getDataTypeName() == null) point.setDataTypeName(type);
+        }
+        return new Dataset().setPoint(Arrays.asList(points));
+    }
+
+    private static DataPoint intPoint(int value) {
+        return new DataPoint().setValue(List.of(new Value().setIntVal(value)));
+    }
+
+    private static DataPoint fpPoint(double value) {
+        return new DataPoint().setValue(List.of(new Value().setFpVal(value)));
+    }
+
+    private static GoogleFitSyncService service() {
+        SyncMetrics syncMetrics = new SyncMetrics(new SimpleMeterRegistry());
+        ProviderRateLimiter rateLimiter = new ProviderRateLimiter(150, 150000, 15000, 3600, 360000, 36000, 0.5, 0.1);
+        return new GoogleFitSyncService(null, rateLimiter, new ProviderCircuitBreaker(20, 10, 0.5, 30, 3, syncMetrics), syncMetrics);
+    }
+}
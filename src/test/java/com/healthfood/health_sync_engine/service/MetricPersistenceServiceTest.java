@@ -0,0 +1,155 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.repository.OutboxEventRepository;
+import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MetricPersistenceServiceTest {
+
+    private static final String USER = "user-1";
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+    private static final String TOPIC = "health.data.ingested";
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+
+    private final MetricPayloadCodec codec = new MetricPayloadCodec(new EncryptionUtil("test-secret-key-that-is-32-chars-long!!"));
+    private final HealthMetricDailyRepository metricRepository = mock(HealthMetricDailyRepository.class);
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final MetricRollupService metricRollupService = mock(MetricRollupService.class);
+    private final MetricPersistenceService service = new MetricPersistenceService(metricRepository, codec,
+            outboxEventRepository, metricRollupService, new SyncMetrics(new SimpleMeterRegistry()));
+    private final Map<LocalDateTime, HealthMetricDaily> stored = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "ingestedTopic", TOPIC);
+        when(metricRepository.findStoredRows(eq(USER), eq(FITBIT), any(), any())).thenReturn(stored);
+        when(metricRepository.upsertAll(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+    }
+
+    @Test
+    void onlyChangedDaysAreWrittenAndReported() throws Exception {
+        store(DAY, "1000");
+        store(DAY.plusDays(1), "2000");
+
+        List<LocalDate> changedDates = service.persist(USER, FITBIT, List.of(
+                metric(DAY, "1000"), metric(DAY.plusDays(1), "2500"), metric(DAY.plusDays(2), "300")));
+
+        assertThat(changedDates).containsExactly(DAY.plusDays(1), DAY.plusDays(2));
+        List<HealthMetricDaily> written = upserted();
+        assertThat(written).extracting(HealthMetricDaily::getDate)
+                .containsExactly(DAY.plusDays(1).atStartOfDay(), DAY.plusDays(2).atStartOfDay());
+        // Rows are written sealed, without the plaintext columns
+        assertThat(written).allSatisfy(row -> {
+            assertThat(row.getSteps()).isNull();
+            assertThat(row.getPayload()).isNotNull();
+        });
+        assertThat(codec.open(written.get(0)).steps()).isEqualTo(2500L);
+
+        ArgumentCaptor<String> event = ArgumentCaptor.forClass(String.class);
+        verify(outboxEventRepository).enqueue(eq(TOPIC), eq(USER), event.capture());
+        JsonNode payload = new ObjectMapper().readTree(event.getValue());
+        assertThat(payload.get("changedDates")).extracting(JsonNode::asText)
+                .containsExactly(DAY.plusDays(1).toString(), DAY.plusDays(2).toString());
+    }
+
+    @Test
+    void rollupsGetThePreviousAndCurrentValuesOfChangedDays() {
+        store(DAY, "2000");
+
+        service.persist(USER, FITBIT, List.of(metric(DAY, "2500"), metric(DAY.plusDays(1), "300")));
+
+        verify(metricRollupService).lock(USER, FITBIT);
+        verify(metricRollupService).applyChanges(USER, FITBIT, List.of(
+                new MetricRollupService.DayChange(DAY, steps(2000), steps(2500)),
+                new MetricRollupService.DayChange(DAY.plusDays(1), null, steps(300))));
+    }
+
+    @Test
+    void unchangedSyncWritesNothing() {
+        store(DAY, "1000");
+        store(DAY.plusDays(1), "2000");
+
+        List<LocalDate> changedDates = service.persist(USER, FITBIT, List.of(metric(DAY, "1000"), metric(DAY.plusDays(1), "2000")));
+
+        assertThat(changedDates).isEmpty();
+        verify(metricRepository, never()).upsertAll(anyList());
+        verify(metricRollupService, never()).applyChanges(anyString(), any(), anyList());
+        verifyNoInteractions(outboxEventRepository);
+    }
+
+    @Test
+    void lastRowOfADayWins() {
+        List<LocalDate> changedDates = service.persist(USER, FITBIT, List.of(metric(DAY, "100"), metric(DAY, "700")));
+
+        assertThat(changedDates).containsExactly(DAY);
+        List<HealthMetricDaily> written = upserted();
+        assertThat(written).hasSize(1);
+        assertThat(codec.open(written.get(0)).steps()).isEqualTo(700L);
+    }
+
+    @Test
+    void emptyInputSkipsTheRepository() {
+        assertThat(service.persist(USER, FITBIT, List.of())).isEmpty();
+
+        verifyNoInteractions(metricRepository, metricRollupService, outboxEventRepository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<HealthMetricDaily> upserted() {
+        ArgumentCaptor<List<HealthMetricDaily>> rows = ArgumentCaptor.forClass(List.class);
+        verify(metricRepository).upsertAll(rows.capture());
+        return rows.getValue();
+    }
+
+    /** A row as the last write left it: sealed, with the fingerprint of its values. */
+    private void store(LocalDate date, String steps) {
+        HealthMetricDaily row = metric(date, steps);
+        MetricValues values = MetricValues.of(row);
+        row.setId(date.toString());
+        row.setContentHash(codec.fingerprint(values));
+        row.setPayload(codec.seal(row, values));
+        stored.put(row.getDate(), row);
+    }
+
+    private static HealthMetricDaily metric(LocalDate date, String steps) {
+        HealthMetricDaily metric = new HealthMetricDaily();
+        metric.setUserId(USER);
+        metric.setDate(date.atStartOfDay());
+        metric.setSourceProvider(FITBIT);
+        metric.setSteps(steps);
+        return metric;
+    }
+
+    /** Steps plus the entity's zero defaults for the other counters. */
+    private static MetricValues steps(long steps) {
+        return new MetricValues(steps, 0.0, 0.0, 0L, null, null, null);
+    }
+}
@@ -0,0 +1,184 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.MetricTotals;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import com.healthfood.health_sync_engine.repository.HealthMetricDailyRepository;
+import com.healthfood.health_sync_engine.repository.HealthMetricRollupRepository;
+import com.healthfood.health_sync_engine.util.EncryptionUtil;
+import com.healthfood.health_sync_engine.util.MetricPayloadCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetricRollupServiceTest {
+
+    private static final String USER = "user-1";
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+    // Monday; the week of 2024-03-04 lies entirely in March
+    private static final LocalDate MONDAY = LocalDate.of(2024, 3, 4);
+
+    private final MetricPayloadCodec codec = new MetricPayloadCodec(new EncryptionUtil("test-secret-key-that-is-32-chars-long!!"));
+    private final HealthMetricRollupRepository rollupRepository = mock(HealthMetricRollupRepository.class);
+    private final HealthMetricDailyRepository dailyRepository = mock(HealthMetricDailyRepository.class);
+    private final MetricRollupService service = new MetricRollupService(rollupRepository, dailyRepository, codec);
+    private final TreeMap<LocalDateTime, HealthMetricDaily> dailyRows = new TreeMap<>();
+    private final Map<String, HealthMetricRollup> rollups = new TreeMap<>();
+
+    /** Both repositories are backed by the maps above. */
+    @BeforeEach
+    void setUp() {
+        when(rollupRepository.findRange(eq(USER), eq(FITBIT), any(), any())).thenAnswer(invocation -> {
+            LocalDate from = invocation.getArgument(2);
+            LocalDate to = invocation.getArgument(3);
+            return rollups.values().stream()
+                    .filter(r -> !r.getPeriodStart().isBefore(from) && !r.getPeriodStart().isAfter(to))
+                    .toList();
+        });
+        when(rollupRepository.upsertAll(anyList())).thenAnswer(invocation -> {
+            List<HealthMetricRollup> upserted = invocation.getArgument(0);
+            upserted.forEach(r -> rollups.put(r.getPeriod() + "|" + r.getPeriodStart(), r));
+            return upserted.size();
+        });
+        when(rollupRepository.deleteForUser(eq(USER), eq(FITBIT), any(LocalDate.class))).thenAnswer(invocation -> {
+            LocalDate from = invocation.getArgument(2);
+            int before = rollups.size();
+            rollups.values().removeIf(r -> !r.getPeriodStart().isBefore(from));
+            return before - rollups.size();
+        });
+        when(rollupRepository.deleteForUser(USER, FITBIT)).thenAnswer(invocation -> {
+            int before = rollups.size();
+            rollups.clear();
+            return before;
+        });
+        when(dailyRepository.findStoredRows(eq(USER), eq(FITBIT), any(), any())).thenAnswer(invocation ->
+                new TreeMap<>(dailyRows.subMap(invocation.getArgument(2), true, invocation.getArgument(3), true)));
+    }
+
+    @Test
+    void newDaysAreAddedAndChangedDaysReplaced() {
+        write(MONDAY, null, steps(1000));
+        write(MONDAY.plusDays(1), null, steps(2000));
+        write(MONDAY, steps(1000), steps(1500));
+
+        assertThat(totals(HealthMetricRollup.Period.WEEK, MONDAY)).isEqualTo(new Totals(2, 3500L));
+        assertThat(totals(HealthMetricRollup.Period.MONTH, MONDAY.withDayOfMonth(1))).isEqualTo(new Totals(2, 3500L));
+    }
+
+    @Test
+    void dayMissingAFieldIsNotCountedForIt() {
+        write(MONDAY, null, steps(1000));
+        write(MONDAY, steps(1000), new MetricValues(null, 1800.0, null, null, null, null, null));
+
+        HealthMetricRollup week = rollup(HealthMetricRollup.Period.WEEK, MONDAY);
+        assertThat(codec.openTotals(week).days()).isEqualTo(1);
+        assertThat(codec.openTotals(week).sums()).isEqualTo(new MetricValues(null, 1800.0, null, null, null, null, null));
+    }
+
+    @Test
+    void periodWithoutRollupIsSummedFromAllItsDailyRows() {
+        // Days stored before rollups existed
+        store(MONDAY, steps(100));
+        store(MONDAY.plusDays(1), steps(200));
+
+        write(MONDAY.plusDays(2), null, steps(300));
+
+        assertThat(totals(HealthMetricRollup.Period.WEEK, MONDAY)).isEqualTo(new Totals(3, 600L));
+        assertThat(totals(HealthMetricRollup.Period.MONTH, MONDAY.withDayOfMonth(1))).isEqualTo(new Totals(3, 600L));
+    }
+
+    @Test
+    void dayIsCountedInItsIsoWeekAndCalendarMonth() {
+        // Sunday 2024-03-03 belongs to the week starting Monday 2024-02-26
+        write(LocalDate.of(2024, 3, 3), null, steps(700));
+
+        assertThat(totals(HealthMetricRollup.Period.WEEK, LocalDate.of(2024, 2, 26))).isEqualTo(new Totals(1, 700L));
+        assertThat(totals(HealthMetricRollup.Period.MONTH, LocalDate.of(2024, 3, 1))).isEqualTo(new Totals(1, 700L));
+        assertThat(rollups).hasSize(2);
+    }
+
+    @Test
+    void rebuildRecomputesFromDailyRows() {
+        write(MONDAY, null, steps(1000));
+        write(MONDAY.plusDays(1), null, steps(2000));
+        // Daily row changed without its rollup being adjusted
+        store(MONDAY.plusDays(1), steps(5000));
+
+        int rebuilt = service.rebuild(USER, FITBIT);
+
+        assertThat(rebuilt).isEqualTo(2);
+        assertThat(totals(HealthMetricRollup.Period.WEEK, MONDAY)).isEqualTo(new Totals(2, 6000L));
+    }
+
+    @Test
+    void rebuildKeepsRollupsOfArchivedMonths() {
+        write(LocalDate.of(2024, 2, 10), null, steps(400));
+        write(LocalDate.of(2024, 2, 29), null, steps(500));
+        write(LocalDate.of(2024, 3, 1), null, steps(600));
+        write(MONDAY, null, steps(1000));
+        // February is moved to the archive; only March is left in the live table
+        dailyRows.keySet().removeIf(date -> date.isBefore(LocalDate.of(2024, 3, 1).atStartOfDay()));
+        when(dailyRepository.archivedBefore()).thenReturn(LocalDate.of(2024, 3, 1));
+        store(MONDAY, steps(1100));
+
+        service.rebuild(USER, FITBIT);
+
+        // Only the live days from the cutoff on are read
+        verify(dailyRepository).findStoredRows(eq(USER), eq(FITBIT), eq(LocalDate.of(2024, 3, 1).atStartOfDay()),
+                argThat(to -> to.getYear() == 9999));
+        assertThat(totals(HealthMetricRollup.Period.MONTH, LocalDate.of(2024, 2, 1))).isEqualTo(new Totals(2, 900L));
+        // The week of 2024-02-26 straddles the cutoff and is kept as it was
+        assertThat(totals(HealthMetricRollup.Period.WEEK, LocalDate.of(2024, 2, 26))).isEqualTo(new Totals(2, 1100L));
+        assertThat(totals(HealthMetricRollup.Period.MONTH, LocalDate.of(2024, 3, 1))).isEqualTo(new Totals(2, 1700L));
+        assertThat(totals(HealthMetricRollup.Period.WEEK, MONDAY)).isEqualTo(new Totals(1, 1100L));
+    }
+
+    /** Stores the day and applies the change, as a sync does. */
+    private void write(LocalDate date, MetricValues previous, MetricValues current) {
+        store(date, current);
+        service.applyChanges(USER, FITBIT, List.of(new MetricRollupService.DayChange(date, previous, current)));
+    }
+
+    private void store(LocalDate date, MetricValues values) {
+        HealthMetricDaily row = new HealthMetricDaily();
+        row.setId(date.toString());
+        row.setUserId(USER);
+        row.setDate(date.atStartOfDay());
+        row.setSourceProvider(FITBIT);
+        row.setPayload(codec.seal(row, values));
+        dailyRows.put(row.getDate(), row);
+    }
+
+    private Totals totals(HealthMetricRollup.Period period, LocalDate start) {
+        MetricTotals totals = codec.openTotals(rollup(period, start));
+        return new Totals(totals.days(), totals.sums().steps());
+    }
+
+    private HealthMetricRollup rollup(HealthMetricRollup.Period period, LocalDate start) {
+        HealthMetricRollup rollup = rollups.get(period + "|" + start);
+        assertThat(rollup).as("%s rollup starting %s", period, start).isNotNull();
+        return rollup;
+    }
+
+    private static MetricValues steps(long steps) {
+        return new MetricValues(steps, null, null, null, null, null, null);
+    }
+
+    private record Totals(int days, Long steps) { }
+}
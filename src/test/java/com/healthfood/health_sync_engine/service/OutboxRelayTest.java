@@ -0,0 +1,128 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.OutboxEvent;
+import com.healthfood.health_sync_engine.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+
+    private static final String TOPIC = "health.data.ingested";
+
+    private final OutboxEventRepository repository = mock(OutboxEventRepository.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, String> kafkaTemplate = mock(KafkaTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxRelay relay = new OutboxRelay(repository, kafkaTemplate, transactionTemplate, meterRegistry);
+    private final List<ProducerRecord<String, String>> sent = new ArrayList<>();
+
+    /** Runs each batch inline and acknowledges every send unless a test says otherwise. */
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", 3);
+        ReflectionTestUtils.setField(relay, "sendTimeoutSeconds", 1L);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Integer>>getArgument(0).doInTransaction(mock(TransactionStatus.class)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(mock(SendResult.class));
+        });
+    }
+
+    @Test
+    void acknowledgedEventsAreDeletedWithTheirIdHeader() {
+        when(repository.lockBatch(3)).thenReturn(List.of(event(1), event(2)));
+
+        relay.relay();
+
+        verify(repository).deletePublished(List.of(1L, 2L));
+        verify(kafkaTemplate).flush();
+        assertThat(sent).extracting(ProducerRecord::key).containsExactly("user-1", "user-2");
+        assertThat(new String(sent.get(1).headers().lastHeader(OutboxRelay.OUTBOX_ID_HEADER).value(), StandardCharsets.UTF_8))
+                .isEqualTo("2");
+        assertThat(events("published")).isEqualTo(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedSendsAreKeptAndStopTheDrain() {
+        when(repository.lockBatch(3)).thenReturn(List.of(event(1), event(2), event(3)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, String> record = invocation.getArgument(0);
+            sent.add(record);
+            return "user-2".equals(record.key())
+                    ? CompletableFuture.failedFuture(new IllegalStateException("broker unavailable"))
+                    : CompletableFuture.completedFuture(mock(SendResult.class));
+        });
+
+        relay.relay();
+
+        // Only the acknowledged rows are deleted; the failed one is re-sent by the next run
+        verify(repository).deletePublished(List.of(1L, 3L));
+        verify(repository, times(1)).lockBatch(anyInt());
+        assertThat(events("published")).isEqualTo(2);
+        assertThat(events("failed")).isEqualTo(1);
+    }
+
+    @Test
+    void fullBatchesAreDrainedUntilAShortOne() {
+        when(repository.lockBatch(3)).thenReturn(List.of(event(1), event(2), event(3)), List.of(event(4)));
+
+        relay.relay();
+
+        verify(repository).deletePublished(List.of(1L, 2L, 3L));
+        verify(repository).deletePublished(List.of(4L));
+        verify(repository, times(2)).lockBatch(3);
+    }
+
+    @Test
+    void emptyOutboxSendsNothing() {
+        when(repository.lockBatch(3)).thenReturn(List.of());
+
+        relay.relay();
+
+        verify(kafkaTemplate, never()).flush();
+        verify(repository, never()).deletePublished(any());
+        assertThat(sent).isEmpty();
+    }
+
+    private double events(String result) {
+        return meterRegistry.get("health.outbox.events").tag("result", result).counter().count();
+    }
+
+    private static OutboxEvent event(long id) {
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setTopic(TOPIC);
+        event.setMessageKey("user-" + id);
+        event.setPayload("{\"userId\":\"user-" + id + "\"}");
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+}
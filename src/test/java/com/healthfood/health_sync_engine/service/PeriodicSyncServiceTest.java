@@ -0,0 +1,132 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthfood.health_sync_engine.repository.UserHealthConnectionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PeriodicSyncServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 15, 14, 30, 7);
+    private static final LocalDateTime MINUTE = LocalDateTime.of(2024, 3, 15, 14, 30);
+
+    private final UserHealthConnectionRepository repository = mock(UserHealthConnectionRepository.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, String> kafkaTemplate = mock(KafkaTemplate.class);
+    private final PeriodicSyncService service = new PeriodicSyncService(repository, kafkaTemplate, new ObjectMapper());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "periodicTopic", "health.sync.periodic");
+        ReflectionTestUtils.setField(service, "pageSize", 2);
+        when(repository.advancePeriodicSync(any(), any())).thenReturn(true);
+        when(repository.findConnectedInSlot(anyInt(), anyString(), anyInt())).thenReturn(List.of());
+        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void slotIsReadInKeysetPages() {
+        when(repository.periodicSyncEmittedThrough()).thenReturn(MINUTE.minusMinutes(1));
+        when(repository.findConnectedInSlot(30, "", 2)).thenReturn(List.of(target("a"), target("b")));
+        when(repository.findConnectedInSlot(30, "b", 2)).thenReturn(List.of(target("c"), target("d")));
+        when(repository.findConnectedInSlot(30, "d", 2)).thenReturn(List.of(target("e")));
+
+        service.emitDue(NOW);
+
+        verify(kafkaTemplate, times(5)).send(eq("health.sync.periodic"), anyString(), anyString());
+        verify(kafkaTemplate).send(eq("health.sync.periodic"), eq("user-e"), anyString());
+        // The short third page is the last one
+        verify(repository, times(3)).findConnectedInSlot(eq(30), anyString(), eq(2));
+    }
+
+    @Test
+    void firstRunEmitsOnlyTheCurrentSlot() {
+        service.emitDue(NOW);
+
+        verify(repository).advancePeriodicSync(null, MINUTE);
+        verify(repository).findConnectedInSlot(30, "", 2);
+        verify(repository, times(1)).findConnectedInSlot(anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void missedSlotsAreCaughtUpOldestFirst() {
+        when(repository.periodicSyncEmittedThrough()).thenReturn(MINUTE.minusMinutes(3));
+
+        service.emitDue(NOW);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).advancePeriodicSync(MINUTE.minusMinutes(3), MINUTE.minusMinutes(2));
+        order.verify(repository).findConnectedInSlot(28, "", 2);
+        order.verify(repository).advancePeriodicSync(MINUTE.minusMinutes(2), MINUTE.minusMinutes(1));
+        order.verify(repository).findConnectedInSlot(29, "", 2);
+        order.verify(repository).advancePeriodicSync(MINUTE.minusMinutes(1), MINUTE);
+        order.verify(repository).findConnectedInSlot(30, "", 2);
+    }
+
+    @Test
+    void catchUpCoversEachSlotOnceAfterALongOutage() {
+        when(repository.periodicSyncEmittedThrough()).thenReturn(MINUTE.minusHours(5));
+
+        service.emitDue(NOW);
+
+        verify(repository, times(60)).findConnectedInSlot(anyInt(), anyString(), anyInt());
+        verify(repository).advancePeriodicSync(MINUTE.minusHours(5), MINUTE.minusMinutes(59));
+        verify(repository).findConnectedInSlot(31, "", 2);
+    }
+
+    @Test
+    void minuteClaimedByAnotherInstanceIsNotEmitted() {
+        when(repository.periodicSyncEmittedThrough()).thenReturn(MINUTE.minusMinutes(1));
+        when(repository.advancePeriodicSync(MINUTE.minusMinutes(1), MINUTE)).thenReturn(false);
+
+        service.emitDue(NOW);
+
+        verify(repository, never()).findConnectedInSlot(anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void cursorAlreadyAtTheCurrentMinuteEmitsNothing() {
+        when(repository.periodicSyncEmittedThrough()).thenReturn(MINUTE);
+
+        service.emitDue(NOW);
+
+        verify(repository, never()).advancePeriodicSync(any(), any());
+    }
+
+    private static UserHealthConnectionRepository.SyncTarget target(String id) {
+        return new UserHealthConnectionRepository.SyncTarget() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public String getUserId() {
+                return "user-" + id;
+            }
+
+            @Override
+            public String getProvider() {
+                return "FITBIT";
+            }
+        };
+    }
+}
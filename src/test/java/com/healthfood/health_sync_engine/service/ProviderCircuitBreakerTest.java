@@ -0,0 +1,108 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderCircuitBreakerTest {
+
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        ProviderCircuitBreaker breaker = breaker(30);
+
+        record(breaker, true, 3);
+
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+        assertThat(breaker.checkAvailable(FITBIT)).isZero();
+    }
+
+    @Test
+    void opensOnceHalfTheCallsFail() {
+        ProviderCircuitBreaker breaker = breaker(30);
+
+        record(breaker, false, 2);
+        record(breaker, true, 2);
+
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+        assertThat(breaker.checkAvailable(FITBIT)).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+        assertThat(breaker.checkAvailable(UserHealthConnection.HealthProvider.GOOGLE_FIT)).isZero();
+    }
+
+    @Test
+    void failuresOutsideTheWindowAreForgotten() {
+        ProviderCircuitBreaker breaker = breaker(30);
+        record(breaker, true, 1);
+        record(breaker, false, 9);
+
+        // The first failure has left the window of 10, so four of ten is below the threshold
+        record(breaker, true, 4);
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+
+        record(breaker, true, 1);
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpenCircuitClosesAfterSuccessfulProbes() {
+        ProviderCircuitBreaker breaker = breaker(0);
+        record(breaker, true, 4);
+
+        assertThat(breaker.checkAvailable(FITBIT)).isZero();
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.HALF_OPEN);
+
+        record(breaker, false, 3);
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+        // The failures from before the circuit opened are gone
+        record(breaker, true, 3);
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedProbeReopensTheCircuit() {
+        ProviderCircuitBreaker breaker = breaker(0);
+        record(breaker, true, 4);
+        breaker.checkAvailable(FITBIT);
+
+        record(breaker, false, 2);
+        record(breaker, true, 1);
+
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void openCircuitIgnoresCallsStartedBeforeIt() {
+        ProviderCircuitBreaker breaker = breaker(30);
+        record(breaker, true, 4);
+
+        assertThat(breaker.checkAvailable(FITBIT)).isPositive();
+        record(breaker, false, 10);
+        assertThat(breaker.state(FITBIT)).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void providersWithoutACircuitAreAlwaysAvailable() {
+        ProviderCircuitBreaker breaker = breaker(30);
+
+        breaker.record(UserHealthConnection.HealthProvider.MANUAL, true);
+
+        assertThat(breaker.checkAvailable(UserHealthConnection.HealthProvider.MANUAL)).isZero();
+        assertThat(breaker.state(UserHealthConnection.HealthProvider.MANUAL)).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+    }
+
+    private static void record(ProviderCircuitBreaker breaker, boolean failed, int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.record(FITBIT, failed);
+        }
+    }
+
+    /** Window of 10 calls, at least 4 of them, opening at 50% failures, closing after 3 probes. */
+    private static ProviderCircuitBreaker breaker(long openSeconds) {
+        return new ProviderCircuitBreaker(10, 4, 0.5, openSeconds, 3, new SyncMetrics(new SimpleMeterRegistry()));
+    }
+}
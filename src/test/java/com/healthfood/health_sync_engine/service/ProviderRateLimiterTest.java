@@ -0,0 +1,109 @@
+package com.healthfood.health_sync_engine.service;
+
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderRateLimiterTest {
+
+    private static final UserHealthConnection.HealthProvider FITBIT = UserHealthConnection.HealthProvider.FITBIT;
+
+    @Test
+    void userBucketDefersOnceItsHourlyBudgetIsSpent() {
+        ProviderRateLimiter limiter = limiter(12, 1000, 1000);
+
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 6)).isZero();
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 6)).isZero();
+        Duration wait = limiter.tryAcquire(FITBIT, "user-1", 6);
+
+        // 12 per hour refill one token every 5 minutes; six of them take about half an hour
+        assertThat(wait).isBetween(Duration.ofMinutes(29), Duration.ofMinutes(30));
+        assertThat(limiter.tryAcquire(FITBIT, "user-2", 6)).isZero();
+    }
+
+    @Test
+    void appBucketIsSharedByAllUsers() {
+        ProviderRateLimiter limiter = limiter(150, 10, 1000);
+
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 6)).isZero();
+        assertThat(limiter.tryAcquire(FITBIT, "user-2", 6)).isPositive();
+        assertThat(limiter.tryAcquire(FITBIT, "user-2", 4)).isZero();
+    }
+
+    @Test
+    void periodicSyncsLeaveTheInteractiveReserve() {
+        // 10% of 100 is kept for interactive and manual syncs
+        ProviderRateLimiter limiter = limiter(150, 100, 1000);
+        for (int i = 0; i < 15; i++) {
+            assertThat(limiter.tryAcquirePeriodic(FITBIT, "user-" + i, 6)).isZero();
+        }
+
+        assertThat(limiter.tryAcquirePeriodic(FITBIT, "user-15", 6)).isPositive();
+        assertThat(limiter.tryAcquire(FITBIT, "user-15", 6)).isZero();
+    }
+
+    @Test
+    void backfillKeepsHalfOfTheUserBucketForRegularSyncs() {
+        ProviderRateLimiter limiter = limiter(12, 1000, 1000);
+
+        assertThat(limiter.tryAcquireBackfill(FITBIT, "user-1", 6)).isZero();
+        assertThat(limiter.tryAcquireBackfill(FITBIT, "user-1", 1)).isPositive();
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 6)).isZero();
+    }
+
+    @Test
+    void backfillIsCappedByItsOwnBucket() {
+        ProviderRateLimiter limiter = limiter(150, 1000, 10);
+
+        assertThat(limiter.tryAcquireBackfill(FITBIT, "user-1", 6)).isZero();
+        assertThat(limiter.tryAcquireBackfill(FITBIT, "user-2", 6)).isPositive();
+        assertThat(limiter.tryAcquire(FITBIT, "user-2", 6)).isZero();
+    }
+
+    @Test
+    void providerQuotaHeadersLowerTheUserBucket() {
+        ProviderRateLimiter limiter = limiter(150, 1000, 1000);
+
+        limiter.recordQuota(FITBIT, "user-1", 4, 600);
+
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 6)).isPositive();
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 4)).isZero();
+    }
+
+    @Test
+    void throttledUserIsBlockedUntilTheReset() {
+        ProviderRateLimiter limiter = limiter(150, 1000, 1000);
+
+        limiter.recordThrottled(FITBIT, "user-1", Duration.ofSeconds(120));
+
+        assertThat(limiter.tryAcquire(FITBIT, "user-1", 1)).isBetween(Duration.ofSeconds(119), Duration.ofSeconds(120));
+        assertThat(limiter.tryAcquire(FITBIT, "user-2", 1)).isZero();
+    }
+
+    @Test
+    void unlimitedProvidersAreNeverDeferred() {
+        ProviderRateLimiter limiter = limiter(1, 1, 1);
+
+        assertThat(limiter.tryAcquire(UserHealthConnection.HealthProvider.MANUAL, "user-1", 100)).isZero();
+        assertThat(limiter.tryAcquireBackfill(UserHealthConnection.HealthProvider.APPLE_HEALTH, "user-1", 100)).isZero();
+    }
+
+    @Test
+    void bucketRefundsAndReportsWhenFull() {
+        ProviderRateLimiter.TokenBucket bucket = new ProviderRateLimiter.TokenBucket(10);
+
+        assertThat(bucket.tryAcquire(10)).isZero();
+        assertThat(bucket.isFull()).isFalse();
+        bucket.refund(10);
+        assertThat(bucket.isFull()).isTrue();
+        // A floor keeps tokens back even though the permits alone would fit
+        assertThat(bucket.tryAcquire(6, 5)).isPositive();
+    }
+
+    private static ProviderRateLimiter limiter(long fitbitUser, long fitbitApp, long fitbitBackfill) {
+        return new ProviderRateLimiter(fitbitUser, fitbitApp, fitbitBackfill, 3600, 360000, 36000, 0.5, 0.1);
+    }
+}
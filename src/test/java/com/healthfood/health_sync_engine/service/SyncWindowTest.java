@@ -0,0 +1,77 @@
+package com.healthfood.health_sync_engine.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncWindowTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 15, 14, 30);
+
+    @Test
+    void windowWithinTheLimitIsOneChunk() {
+        SyncWindow window = new SyncWindow(LocalDate.of(2024, 3, 1).atStartOfDay(), NOW);
+
+        assertThat(window.split(30)).containsExactly(window);
+    }
+
+    @Test
+    void longWindowIsSplitIntoConsecutiveChunksOldestFirst() {
+        SyncWindow window = new SyncWindow(LocalDate.of(2024, 1, 1).atStartOfDay(), NOW);
+
+        List<SyncWindow> chunks = window.split(30);
+
+        assertThat(chunks).containsExactly(
+                new SyncWindow(LocalDate.of(2024, 1, 1).atStartOfDay(), LocalDate.of(2024, 1, 31).atStartOfDay().minusNanos(1)),
+                new SyncWindow(LocalDate.of(2024, 1, 31).atStartOfDay(), LocalDate.of(2024, 3, 1).atStartOfDay().minusNanos(1)),
+                new SyncWindow(LocalDate.of(2024, 3, 1).atStartOfDay(), NOW));
+        // Each day falls in exactly one chunk
+        LocalDateTime day = LocalDate.of(2024, 1, 31).atStartOfDay();
+        assertThat(chunks.stream().filter(chunk -> chunk.containsDay(day))).hasSize(1);
+    }
+
+    @Test
+    void windowOfExactlyTheLimitIsNotSplit() {
+        SyncWindow window = new SyncWindow(LocalDate.of(2024, 3, 1).atStartOfDay(),
+                LocalDate.of(2024, 3, 31).atStartOfDay().minusNanos(1));
+
+        assertThat(window.split(30)).containsExactly(window);
+    }
+
+    @Test
+    void incrementalSyncStartsBeforeTheWatermarkAtMidnight() {
+        SyncWindow window = policy().windowFor(LocalDateTime.of(2024, 3, 15, 3, 0), false, NOW);
+
+        // Six hours of overlap reach into the previous day
+        assertThat(window).isEqualTo(new SyncWindow(LocalDate.of(2024, 3, 14).atStartOfDay(), NOW));
+    }
+
+    @Test
+    void staleWatermarkIsCappedAtTheMaximumSpan() {
+        SyncWindow window = policy().windowFor(LocalDateTime.of(2023, 6, 1, 0, 0), false, NOW);
+
+        assertThat(window.start()).isEqualTo(LocalDate.of(2024, 2, 14).atStartOfDay());
+    }
+
+    @Test
+    void initialSyncIgnoresTheWatermark() {
+        SyncWindowPolicy policy = policy();
+
+        assertThat(policy.windowFor(NOW.minusHours(1), true, NOW).start()).isEqualTo(LocalDate.of(2024, 3, 8).atStartOfDay());
+        assertThat(policy.windowFor(null, false, NOW).start()).isEqualTo(LocalDate.of(2024, 3, 8).atStartOfDay());
+    }
+
+    /** 7 initial days, 6 hours of overlap, at most 30 days back. */
+    private static SyncWindowPolicy policy() {
+        SyncWindowPolicy policy = new SyncWindowPolicy();
+        ReflectionTestUtils.setField(policy, "initialDays", 7);
+        ReflectionTestUtils.setField(policy, "overlapHours", 6L);
+        ReflectionTestUtils.setField(policy, "maxDays", 30);
+        return policy;
+    }
+}
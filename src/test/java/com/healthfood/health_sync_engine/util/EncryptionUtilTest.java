@@ -0,0 +1,97 @@
+package com.healthfood.health_sync_engine.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EncryptionUtilTest {
+
+    private static final String SECRET = "test-secret-key-that-is-32-chars-long!!";
+    private static final String REFRESH_TOKEN = "1//0g-refresh-token-\u00c4\u00d6";
+
+    private final EncryptionUtil encryptionUtil = new EncryptionUtil(SECRET);
+
+    @Test
+    void decryptsTokensWrittenByTheOriginalImplementation() {
+        // Encrypted with the HexFormat-based EncryptionUtil the service started with
+        assertThat(encryptionUtil.decrypt("abc294fd6f73198983c6e4e1:15ca2bf116727a04ebbd0f12aa2c3820:"
+                + "bc89ba35e8e45992d081637b180829eb94df0dd26744afe2e7d8f9"))
+                .isEqualTo("ya29.a0AfB_byC-access-token");
+        assertThat(encryptionUtil.decrypt("39c727c1c8856a2271a73b09:5317bd0ed37ef8635cc0baeea80b84d0:"
+                + "3a93f5dc992667cd7d6432d774a6ae66c7659c0284659a48"))
+                .isEqualTo(REFRESH_TOKEN);
+    }
+
+    @Test
+    void encryptsInTheOriginalFormat() throws Exception {
+        String encrypted = encryptionUtil.encrypt(REFRESH_TOKEN);
+
+        assertThat(encrypted).matches("[0-9a-f]{24}:[0-9a-f]{32}:[0-9a-f]+");
+        assertThat(originalDecrypt(encrypted)).isEqualTo(REFRESH_TOKEN);
+    }
+
+    @Test
+    void valuesThatAreNotCiphertextArePassedThrough() {
+        assertThat(encryptionUtil.decrypt(null)).isNull();
+        assertThat(encryptionUtil.decrypt("plain-token")).isEqualTo("plain-token");
+        assertThat(encryptionUtil.decrypt("a:b")).isEqualTo("a:b");
+        assertThat(encryptionUtil.decrypt("zz:yy:xx")).isEqualTo("zz:yy:xx");
+        String otherKey = new EncryptionUtil("another-secret-key-that-is-32-chars!!").encrypt("token");
+        assertThat(encryptionUtil.decrypt(otherKey)).isEqualTo(otherKey);
+    }
+
+    @Test
+    void sealedPayloadIsIvCiphertextAndTagBoundToTheAad() {
+        byte[] plaintext = "payload".getBytes(StandardCharsets.UTF_8);
+        byte[] aad = "user-1|2024-03-04|FITBIT".getBytes(StandardCharsets.UTF_8);
+
+        byte[] sealed = encryptionUtil.seal(plaintext, aad);
+
+        assertThat(sealed).hasSize(12 + plaintext.length + 16);
+        assertThat(encryptionUtil.open(sealed, aad)).isEqualTo(plaintext);
+        assertThatThrownBy(() -> encryptionUtil.open(sealed, "user-2|2024-03-04|FITBIT".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void fingerprintIsHmacSha256UnderTheDerivedKey() throws Exception {
+        byte[] data = "steps=100".getBytes(StandardCharsets.UTF_8);
+        byte[] aesKey = MessageDigest.getInstance("SHA-256").digest(SECRET.getBytes(StandardCharsets.UTF_8));
+        byte[] fingerprintKey = hmac(aesKey, "metric-fingerprint".getBytes(StandardCharsets.UTF_8));
+
+        // Stored content hashes stay comparable only while this derivation is unchanged
+        assertThat(encryptionUtil.fingerprint(data)).isEqualTo(hmac(fingerprintKey, data));
+        assertThat(new EncryptionUtil(SECRET).fingerprint(data)).isEqualTo(encryptionUtil.fingerprint(data));
+    }
+
+    /** Decryption as the original implementation did it, with HexFormat and split buffers. */
+    private static String originalDecrypt(String encrypted) throws Exception {
+        String[] parts = encrypted.split(":");
+        byte[] iv = HexFormat.of().parseHex(parts[0]);
+        byte[] tag = HexFormat.of().parseHex(parts[1]);
+        byte[] data = HexFormat.of().parseHex(parts[2]);
+        byte[] combined = new byte[data.length + tag.length];
+        System.arraycopy(data, 0, combined, 0, data.length);
+        System.arraycopy(tag, 0, combined, data.length, tag.length);
+
+        byte[] key = MessageDigest.getInstance("SHA-256").digest(SECRET.getBytes(StandardCharsets.UTF_8));
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+        return new String(cipher.doFinal(combined), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+}
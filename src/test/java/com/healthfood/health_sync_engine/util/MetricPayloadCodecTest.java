@@ -0,0 +1,112 @@
+package com.healthfood.health_sync_engine.util;
+
+import com.healthfood.health_sync_engine.model.HealthMetricDaily;
+import com.healthfood.health_sync_engine.model.HealthMetricRollup;
+import com.healthfood.health_sync_engine.model.MetricTotals;
+import com.healthfood.health_sync_engine.model.MetricValues;
+import com.healthfood.health_sync_engine.model.UserHealthConnection;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricPayloadCodecTest {
+
+    private final EncryptionUtil encryptionUtil = new EncryptionUtil("test-secret-key-that-is-32-chars-long!!");
+    private final MetricPayloadCodec codec = new MetricPayloadCodec(encryptionUtil);
+
+    @Test
+    void sealedRowRoundTrips() {
+        HealthMetricDaily row = row(LocalDate.of(2024, 3, 1));
+        MetricValues values = new MetricValues(12_345L, 2100.5, 8.25, 42L, 61.0, 97.5, 7.25);
+
+        row.setPayload(codec.seal(row, values));
+
+        assertThat(codec.open(row)).isEqualTo(values);
+    }
+
+    @Test
+    void absentFieldsStayAbsent() {
+        HealthMetricDaily row = row(LocalDate.of(2024, 3, 1));
+        MetricValues values = new MetricValues(500L, null, null, null, 58.0, null, null);
+
+        row.setPayload(codec.seal(row, values));
+
+        assertThat(codec.open(row)).isEqualTo(values);
+        // version + mask + two-byte varint + one double
+        assertThat(MetricPayloadCodec.encode(values)).hasSize(2 + 2 + Double.BYTES);
+    }
+
+    @Test
+    void payloadIsBoundToItsRow() {
+        HealthMetricDaily row = row(LocalDate.of(2024, 3, 1));
+        HealthMetricDaily otherDay = row(LocalDate.of(2024, 3, 2));
+        otherDay.setPayload(codec.seal(row, new MetricValues(1L, null, null, null, null, null, null)));
+
+        assertThatThrownBy(() -> codec.open(otherDay)).hasMessageContaining("Decryption failed");
+    }
+
+    @Test
+    void legacyRowIsReadFromPerFieldCiphertexts() {
+        HealthMetricDaily row = row(LocalDate.of(2023, 12, 31));
+        row.setSteps(encryptionUtil.encrypt("9876"));
+        row.setCalories(encryptionUtil.encrypt("1850.5"));
+        row.setDistance(encryptionUtil.encrypt("6.4"));
+        row.setActiveMinutes(encryptionUtil.encrypt("35"));
+        row.setHeartRate(encryptionUtil.encrypt("64"));
+        row.setBloodOxygen(null);
+        row.setSleepHours(null);
+
+        assertThat(codec.open(row)).isEqualTo(new MetricValues(9876L, 1850.5, 6.4, 35L, 64.0, null, null));
+    }
+
+    @Test
+    void legacyRowKeepsPlaintextFieldsAsTheyAre() {
+        // Rows from before field encryption hold the plain number
+        HealthMetricDaily row = row(LocalDate.of(2023, 12, 31));
+        row.setSteps("1200");
+        row.setActiveMinutes("12.6");
+
+        MetricValues values = codec.open(row);
+
+        assertThat(values.steps()).isEqualTo(1200L);
+        assertThat(values.activeMinutes()).isEqualTo(13L);
+    }
+
+    @Test
+    void totalsRoundTrip() {
+        MetricTotals totals = new MetricTotals();
+        totals.add(new MetricValues(1000L, 1500.0, null, 30L, 60.0, null, null));
+        totals.add(new MetricValues(3000L, 2500.0, 2.5, 10L, null, null, null));
+        HealthMetricRollup rollup = new HealthMetricRollup();
+        rollup.setUserId("user-1");
+        rollup.setSourceProvider(UserHealthConnection.HealthProvider.FITBIT);
+        rollup.setPeriod(HealthMetricRollup.Period.WEEK);
+        rollup.setPeriodStart(LocalDate.of(2024, 2, 26));
+
+        rollup.setPayload(codec.sealTotals(rollup, totals));
+        MetricTotals opened = codec.openTotals(rollup);
+
+        assertThat(opened.days()).isEqualTo(2);
+        assertThat(opened.sums()).isEqualTo(new MetricValues(4000L, 4000.0, 2.5, 40L, 60.0, null, null));
+        assertThat(opened.averages()).isEqualTo(new MetricValues(2000L, 2000.0, 2.5, 20L, 60.0, null, null));
+    }
+
+    @Test
+    void rejectsUnknownPayloadVersion() {
+        assertThatThrownBy(() -> MetricPayloadCodec.decode(new byte[] {9, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MetricPayloadCodec.decodeTotals(new byte[] {9, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HealthMetricDaily row(LocalDate date) {
+        HealthMetricDaily row = new HealthMetricDaily();
+        row.setUserId("user-1");
+        row.setDate(date.atStartOfDay());
+        row.setSourceProvider(UserHealthConnection.HealthProvider.FITBIT);
+        return row;
+    }
+}
@@ -0,0 +1,13 @@
+-- Schema created by spring.jpa.hibernate.ddl-auto=update from the entities before Flyway
+-- was introduced, as logged by Hibernate 6.6 on PostgreSQL
+create type HealthProvider as enum ('APPLE_HEALTH','FITBIT','GOOGLE_FIT','MANUAL','SAMSUNG_HEALTH');
+create cast (varchar as HealthProvider) with inout as implicit;
+create cast (HealthProvider as varchar) with inout as implicit;
+create type ConnectionStatus as enum ('CONNECTED','DISCONNECTED','ERROR');
+create cast (varchar as ConnectionStatus) with inout as implicit;
+create cast (ConnectionStatus as varchar) with inout as implicit;
+create type HealthSyncStatus as enum ('FAILED','IDLE','SUCCESS','SYNCING');
+create cast (varchar as HealthSyncStatus) with inout as implicit;
+create cast (HealthSyncStatus as varchar) with inout as implicit;
+create table health_metrics_daily (id varchar(255) not null, active_minutes varchar(255), blood_oxygen varchar(255), calories varchar(255), created_at timestamp(6), date timestamp(6) not null, distance varchar(255), heart_rate varchar(255), sleep_hours varchar(255), source_provider HealthProvider not null, steps varchar(255), updated_at timestamp(6), user_id varchar(255) not null, primary key (id));
+create table user_health_connections (id varchar(255) not null, access_token TEXT not null, created_at timestamp(6), error_message TEXT, last_sync_duration integer, last_synced_at timestamp(6), provider HealthProvider not null, refresh_token TEXT, status ConnectionStatus not null, sync_retry_count integer, sync_status HealthSyncStatus, updated_at timestamp(6), user_id varchar(255) not null, primary key (id));